@@ -0,0 +1,72 @@
+package net.dbd.demode.benchmark;
+
+import net.dbd.demode.pak.PakIndexCache;
+import net.dbd.demode.service.DbdPakManager;
+import net.dbd.demode.service.DbdPathService;
+import net.dbd.demode.service.FileMetadataManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Start-up cost of the pak manager: loading the indexes of all paks (parsed, or from a warm index cache) and merging
+ * them.
+ *
+ * @author Nicky Ramone
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DbdPakManagerBenchmark {
+
+    public enum IndexCache {COLD, WARM}
+
+    private static final int NUM_PAKS = 8;
+    private static final int ENTRIES_PER_PAK = 5000;
+
+    @Param({"COLD", "WARM"})
+    private IndexCache indexCache;
+
+    private Path dir;
+    private Path dbdHome;
+    private Path cacheDir;
+    private final FileMetadataManager fileMetadataManager = new FileMetadataManager();
+    private final DbdPathService dbdPathService = new DbdPathService();
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("demode-bench");
+        dbdHome = PakFixtures.createDbdHome(dir.resolve("dbd"), NUM_PAKS, ENTRIES_PER_PAK,
+                PakFixtures.EntrySizes.TINY, PakFixtures.Compression.MIXED);
+        cacheDir = dir.resolve("cache");
+
+        if (indexCache == IndexCache.WARM) {
+            createPakManager();
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void clearIndexCache() throws Exception {
+        if (indexCache == IndexCache.COLD) {
+            PakFixtures.delete(cacheDir);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        PakFixtures.delete(dir);
+    }
+
+
+    @Benchmark
+    public DbdPakManager createPakManager() throws Exception {
+        return new DbdPakManager(fileMetadataManager, dbdPathService, new PakIndexCache(cacheDir), dbdHome);
+    }
+
+}
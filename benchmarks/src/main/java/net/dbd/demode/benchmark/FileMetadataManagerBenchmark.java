@@ -0,0 +1,82 @@
+package net.dbd.demode.benchmark;
+
+import net.dbd.demode.service.FileMetadataManager;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writing and reading the metadata of extracted files, either in the manifest or in extended attributes.
+ * Scores are per file.
+ *
+ * @author Nicky Ramone
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FileMetadataManagerBenchmark {
+
+    public enum Storage {MANIFEST, XATTR}
+
+    private static final int NUM_FILES = 1000;
+    private static final String HASH = "0123456789abcdef0123456789abcdef01234567";
+
+    @Param({"MANIFEST", "XATTR"})
+    private Storage storage;
+
+    private Path dir;
+    private final List<Path> files = new ArrayList<>();
+    private FileMetadataManager fileMetadataManager;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("demode-bench");
+
+        for (int i = 0; i < NUM_FILES; i++) {
+            Path file = dir.resolve("dir" + i % 10).resolve("file" + i + ".uasset");
+            Files.createDirectories(file.getParent());
+            Files.write(file, new byte[64]);
+            files.add(file);
+        }
+
+        fileMetadataManager = new FileMetadataManager();
+        if (storage == Storage.MANIFEST) {
+            fileMetadataManager.setManifestRoot(dir);
+        }
+        writeHashes();
+        fileMetadataManager.flush();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        fileMetadataManager.setManifestRoot(null);
+        PakFixtures.delete(dir);
+    }
+
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_FILES)
+    public void writeHashes() {
+        for (Path file : files) {
+            fileMetadataManager.writeHash(file, HASH);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(NUM_FILES)
+    public void readMetadata(Blackhole blackhole) {
+        for (Path file : files) {
+            blackhole.consume(fileMetadataManager.readMetadata(file));
+        }
+    }
+
+}
@@ -0,0 +1,93 @@
+package net.dbd.demode.benchmark;
+
+import net.dbd.demode.pak.PakBlockCache;
+import net.dbd.demode.pak.PakEntryChannel;
+import net.dbd.demode.pak.PakFile;
+import net.dbd.demode.pak.domain.PakEntry;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads from big compressed entries (16 to 64 MB) without extracting them: small reads at random positions, which only
+ * inflate the block they fall in, against reading a whole entry.
+ *
+ * @author Nicky Ramone
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PakEntryChannelBenchmark {
+
+    private static final int NUM_ENTRIES = 4;
+    private static final int READ_SIZE = 4 * 1024;
+
+    @Param({"0", "16777216"})
+    private long blockCacheCapacity;
+
+    private Path dir;
+    private FileChannel pakChannel;
+    private List<PakEntry> entries;
+    private PakBlockCache blockCache;
+    private final Random random = new Random(0);
+    private final ByteBuffer readBuffer = ByteBuffer.allocate(READ_SIZE);
+    private final ByteBuffer wholeEntryBuffer = ByteBuffer.allocate(1024 * 1024);
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("demode-bench");
+        Path pakPath = dir.resolve("pakchunk0-WindowsNoEditor.pak");
+        PakFixtures.writePak(pakPath.toFile(), NUM_ENTRIES, PakFixtures.EntrySizes.LARGE,
+                PakFixtures.Compression.COMPRESSED, 0);
+
+        entries = new PakFile(pakPath.toFile()).getIndex().getEntries();
+        pakChannel = FileChannel.open(pakPath, StandardOpenOption.READ);
+        blockCache = new PakBlockCache(blockCacheCapacity);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        pakChannel.close();
+        PakFixtures.delete(dir);
+    }
+
+
+    @Benchmark
+    public int randomRead() throws Exception {
+        PakEntry entry = entries.get(random.nextInt(NUM_ENTRIES));
+
+        try (PakEntryChannel channel = new PakEntryChannel(pakChannel, entry, blockCache)) {
+            channel.position((long) (random.nextDouble() * (entry.getSize() - READ_SIZE)));
+            readBuffer.clear();
+            return channel.read(readBuffer);
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long readWholeEntry() throws Exception {
+        PakEntry entry = entries.get(random.nextInt(NUM_ENTRIES));
+        long total = 0;
+
+        try (PakEntryChannel channel = new PakEntryChannel(pakChannel, entry, blockCache)) {
+            int numBytesRead;
+            while ((numBytesRead = channel.read(wholeEntryBuffer.clear())) > 0) {
+                total += numBytesRead;
+            }
+        }
+
+        return total;
+    }
+
+}
@@ -0,0 +1,69 @@
+package net.dbd.demode.benchmark;
+
+import net.dbd.demode.pak.ExtractionOptions;
+import net.dbd.demode.pak.PakExtractor;
+import net.dbd.demode.pak.PakFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extraction of a whole pak of raw or compressed entries (about 60 MB of data). Files are overwritten on every call,
+ * so the output stays in the page cache and this measures the extractor rather than the disk.
+ *
+ * @author Nicky Ramone
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class PakExtractorBenchmark {
+
+    private static final int NUM_ENTRIES = 500;
+
+    @Param({"RAW", "COMPRESSED"})
+    private PakFixtures.Compression compression;
+
+    @Param({"false", "true"})
+    private boolean pipelined;
+
+    private Path dir;
+    private PakFile pakFile;
+    private List<Path> filePaths;
+    private Path outputPath;
+    private ExtractionOptions options;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("demode-bench");
+        Path pakPath = dir.resolve("pakchunk0-WindowsNoEditor.pak");
+        PakFixtures.writePak(pakPath.toFile(), NUM_ENTRIES, PakFixtures.EntrySizes.REALISTIC, compression, 0);
+
+        pakFile = new PakFile(pakPath.toFile());
+        filePaths = new ArrayList<>(pakFile.getFilePaths());
+        outputPath = dir.resolve("out/DeadByDaylight/Content/Paks");
+        Files.createDirectories(outputPath);
+
+        options = new ExtractionOptions();
+        options.setPipelined(pipelined);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        PakFixtures.delete(dir);
+    }
+
+
+    @Benchmark
+    public void extract() throws Exception {
+        new PakExtractor(options).extract(pakFile, filePaths, outputPath);
+    }
+
+}
@@ -0,0 +1,84 @@
+package net.dbd.demode.benchmark;
+
+import lombok.experimental.UtilityClass;
+import net.dbd.demode.pak.PakGenerator;
+import net.dbd.demode.pak.PakGeneratorOptions;
+import net.dbd.demode.service.DbdPathService;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Generated paks (and fake DBD installations around them) for the benchmarks, see {@link PakGenerator}.
+ *
+ * @author Nicky Ramone
+ */
+@UtilityClass
+public class PakFixtures {
+
+    public enum Compression {
+        RAW(0), COMPRESSED(1), MIXED(0.5);
+
+        private final double compressedRatio;
+
+        Compression(double compressedRatio) {
+            this.compressedRatio = compressedRatio;
+        }
+    }
+
+    public enum EntrySizes {
+        /* like in the paks of the game: mostly small files and a few big ones */
+        REALISTIC,
+        /* for benchmarks about the index, where the data doesn't matter */
+        TINY,
+        /* for benchmarks about reading inside an entry */
+        LARGE
+    }
+
+    private static final String PAK_FILENAME_FORMAT = "pakchunk%d-WindowsNoEditor.pak";
+    private static final DbdPathService dbdPathService = new DbdPathService();
+
+
+    /**
+     * @return the home directory of the fake installation.
+     */
+    public Path createDbdHome(Path dir, int numPaks, int entriesPerPak, EntrySizes entrySizes, Compression compression)
+            throws IOException {
+
+        Files.createDirectories(dir.resolve(dbdPathService.getPaksRelativePath()));
+        Files.createFile(dbdPathService.getExeFilePath(dir));
+
+        for (int i = 0; i < numPaks; i++) {
+            File pakFile = dbdPathService.getPakFilePath(dir, String.format(PAK_FILENAME_FORMAT, i)).toFile();
+            writePak(pakFile, entriesPerPak, entrySizes, compression, i);
+        }
+
+        return dir;
+    }
+
+    public void writePak(File file, int numEntries, EntrySizes entrySizes, Compression compression, long seed)
+            throws IOException {
+
+        PakGeneratorOptions options = new PakGeneratorOptions();
+        options.setNumEntries(numEntries);
+        options.setCompressedRatio(compression.compressedRatio);
+
+        if (entrySizes == EntrySizes.TINY) {
+            options.setMedianEntrySize(64);
+            options.setMaxEntrySize(256);
+        } else if (entrySizes == EntrySizes.LARGE) {
+            options.setMedianEntrySize(32 * 1024 * 1024);
+            options.setMinEntrySize(16 * 1024 * 1024);
+        }
+
+        new PakGenerator(options).generate(file, seed);
+    }
+
+    public void delete(Path dir) throws IOException {
+        FileUtils.deleteDirectory(dir.toFile());
+    }
+
+}
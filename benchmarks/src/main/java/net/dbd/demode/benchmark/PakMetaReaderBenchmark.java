@@ -0,0 +1,61 @@
+package net.dbd.demode.benchmark;
+
+import net.dbd.demode.pak.PakMetaReader;
+import net.dbd.demode.pak.domain.Pak;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the footer and the whole index of a pak, into a compact and into a regular index.
+ *
+ * @author Nicky Ramone
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PakMetaReaderBenchmark {
+
+    @Param({"1000", "20000"})
+    private int numEntries;
+
+    private Path dir;
+    private File pakFile;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("demode-bench");
+        pakFile = dir.resolve("pakchunk0-WindowsNoEditor.pak").toFile();
+        PakFixtures.writePak(pakFile, numEntries, PakFixtures.EntrySizes.TINY, PakFixtures.Compression.MIXED, 0);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        PakFixtures.delete(dir);
+    }
+
+
+    @Benchmark
+    public Pak parse() {
+        return PakMetaReader.parse(pakFile);
+    }
+
+    @Benchmark
+    public Pak parseRegularIndex() {
+        return PakMetaReader.parse(pakFile, Path.of("./"), false);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Object parseInfo() {
+        return PakMetaReader.parseInfo(pakFile);
+    }
+
+}
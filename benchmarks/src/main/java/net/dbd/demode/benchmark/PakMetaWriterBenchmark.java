@@ -0,0 +1,50 @@
+package net.dbd.demode.benchmark;
+
+import net.dbd.demode.pak.PakFile;
+import net.dbd.demode.pak.PakMetaWriter;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rewriting of the index and footer of a pak. The metadata doesn't change, so the pak stays the same between calls.
+ *
+ * @author Nicky Ramone
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PakMetaWriterBenchmark {
+
+    @Param({"1000", "20000"})
+    private int numEntries;
+
+    private Path dir;
+    private PakFile pakFile;
+
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        dir = Files.createTempDirectory("demode-bench");
+        Path pakPath = dir.resolve("pakchunk0-WindowsNoEditor.pak");
+        PakFixtures.writePak(pakPath.toFile(), numEntries, PakFixtures.EntrySizes.TINY, PakFixtures.Compression.MIXED, 0);
+        pakFile = new PakFile(pakPath.toFile());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        PakFixtures.delete(dir);
+    }
+
+
+    @Benchmark
+    public void writeMetadata() throws Exception {
+        PakMetaWriter.writeMetadata(pakFile);
+    }
+
+}
@@ -30,7 +30,10 @@ public class Boot {
         }
     }
 
-    private static void configureLogger() throws URISyntaxException {
+    /**
+     * Logs go to the directory of the app, so this must be called before any logger is created.
+     */
+    static void configureLogger() throws URISyntaxException {
         URI execUri = Boot.class.getProtectionDomain().getCodeSource().getLocation().toURI();
         Path appHome = new File(execUri).toPath().getParent();
         System.setProperty("app.home", appHome.toString());
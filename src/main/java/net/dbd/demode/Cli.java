@@ -0,0 +1,440 @@
+package net.dbd.demode;
+
+import net.dbd.demode.pak.ExtractionStats;
+import net.dbd.demode.pak.PakFile;
+import net.dbd.demode.service.*;
+import net.dbd.demode.service.DbdUnpacker.EventType;
+import net.dbd.demode.service.DbdUnpacker.UnpackMonitor;
+import net.dbd.demode.service.FileCleaner.CleanerMonitor;
+import net.dbd.demode.service.FileVerifier.VerifyMonitor;
+import net.dbd.demode.util.format.NumberFormatUtil;
+import net.dbd.demode.util.lang.OperationAbortedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless entry point, for using the unpacker without the UI (on a server, from a scheduled job, etc.).
+ * <p>
+ * Progress goes to stderr and, when the command finishes, a JSON summary goes to stdout. Ctrl+C aborts the command
+ * cleanly, so an interrupted unpack can be resumed later with unpack-missing.
+ * <p>
+ * Exit codes: 0 if the command succeeded, 1 if it failed or was aborted, 2 for invalid arguments, 3 if verify found
+ * missing or corrupted files (and they were not repaired).
+ *
+ * @author Nicky Ramone
+ */
+public class Cli {
+
+    private static final String USAGE = String.join("\n",
+            "Usage: java -cp <demode jar> net.dbd.demode.Cli <command> <dbd home> [options]",
+            "Commands:",
+            "  unpack-all              extract every file",
+            "  unpack-missing          extract the files that are missing or were modified",
+            "  verify                  hash every extracted file and compare it with the paks",
+            "  clean                   delete every file extracted by this app",
+            "Options:",
+            "  --parallelism N         paks extracted at the same time (default: 1)",
+            "  --scan-parallelism N    files checked or verified at the same time (default: number of CPUs)",
+            "  --buffer-size SIZE      copy and inflate buffer of each extractor (default: 8K)",
+            "  --pipelined             overlap reads, inflating and writes",
+            "  --inflate-workers N     inflating threads of each pipelined extractor (default: number of CPUs)",
+            "  --queue-capacity N      chunks buffered between pipeline stages (default: 64)",
+            "  --memory-mapped         read the paks through memory-mapped views",
+            "  --parallel-blocks       inflate the blocks of big files concurrently",
+            "  --verify-integrity      check the hash of every entry while extracting it",
+            "  --deep-verify           hash every file when looking for modified ones (unpack-missing)",
+            "  --manifest              keep file metadata in a manifest instead of extended attributes",
+            "  --repair                extract the missing and corrupted files again (verify)",
+            "  --quiet                 don't report progress",
+            "Sizes are in bytes, or with a K, M or G suffix (powers of 1024).");
+
+    private static final Set<String> FLAGS = Set.of("--pipelined", "--memory-mapped", "--parallel-blocks",
+            "--verify-integrity", "--deep-verify", "--manifest", "--repair", "--quiet");
+    private static final Set<String> COUNT_OPTIONS = Set.of("--parallelism", "--scan-parallelism", "--inflate-workers",
+            "--queue-capacity");
+    private static final Set<String> SIZE_OPTIONS = Set.of("--buffer-size");
+    private static final long PROGRESS_INTERVAL_MILLIS = 2000;
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 30;
+    private static final int EXIT_FAILURE = 1;
+    private static final int EXIT_INVALID_ARGUMENTS = 2;
+    private static final int EXIT_VERIFY_FAILED = 3;
+    private static final double MB = 1000 * 1000;
+
+    private static Logger log;
+    private static volatile Runnable abortAction;
+    private static volatile boolean shuttingDown;
+    private static final CountDownLatch finished = new CountDownLatch(1);
+
+
+    public enum Status {COMPLETED, ABORTED, FAILED}
+
+    /**
+     * What is printed at the end. Sections of the steps that didn't run are left out.
+     */
+    private static final class Summary {
+        private String command;
+        private Path dbdHome;
+        private Status status;
+        private long elapsedMillis;
+        private VerifySummary verify;
+        private UnpackSummary unpack;
+        private CleanSummary clean;
+        private String error;
+    }
+
+    private static final class UnpackSummary {
+        private final long files;
+        private final long bytes;
+        private final long elapsedMillis;
+        private final double throughputMBps;
+        private final List<PakSummary> paks = new ArrayList<>();
+
+        UnpackSummary(ExtractionStats stats) {
+            files = stats.getFilesExtracted();
+            bytes = stats.getBytesExtracted();
+            elapsedMillis = stats.getStartTime() != null ? stats.elapsedMillis() : 0;
+            throughputMBps = throughput(bytes, elapsedMillis);
+        }
+    }
+
+    private static final class PakSummary {
+        private final String pak;
+        private final long files;
+        private final long bytes;
+        private final long elapsedMillis;
+        private final double throughputMBps;
+
+        PakSummary(PakFile pakFile, ExtractionStats stats) {
+            pak = pakFile.getFile().getName();
+            files = stats.getFilesExtracted();
+            bytes = stats.getBytesExtracted();
+            elapsedMillis = stats.elapsedMillis();
+            throughputMBps = throughput(bytes, elapsedMillis);
+        }
+    }
+
+    private static final class VerifySummary {
+        private final long files;
+        private final long bytes;
+        private final long missing;
+        private final long corrupted;
+        private final long elapsedMillis;
+        private final double throughputMBps;
+
+        VerifySummary(VerifyMonitor monitor) {
+            files = monitor.getFilesVerified();
+            bytes = monitor.getBytesVerified();
+            missing = monitor.getFilesMissing();
+            corrupted = monitor.getFilesCorrupted();
+            elapsedMillis = monitor.getElapsedMillis();
+            throughputMBps = throughput(bytes, elapsedMillis);
+        }
+    }
+
+    private static final class CleanSummary {
+        private final long filesScanned;
+        private final long filesDeleted;
+        private final long bytesFreed;
+
+        CleanSummary(CleanerMonitor monitor) {
+            filesScanned = monitor.getTotalFiles();
+            filesDeleted = monitor.getFilesDeleted();
+            bytesFreed = monitor.getBytesFreed();
+        }
+    }
+
+
+    public static void main(String[] args) {
+        Map<String, String> options;
+
+        try {
+            options = parseOptions(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(EXIT_INVALID_ARGUMENTS);
+            return;
+        }
+
+        Summary summary = new Summary();
+        summary.command = args[0];
+        summary.dbdHome = Path.of(args[1]).toAbsolutePath().normalize();
+        int exitCode = 0;
+        long startTime = System.nanoTime();
+
+        try {
+            Boot.configureLogger();
+            log = LoggerFactory.getLogger(Cli.class);
+            Runtime.getRuntime().addShutdownHook(new Thread(Cli::abortOnShutdown));
+
+            exitCode = run(summary, options);
+        } catch (InvalidDbdHomePathException e) {
+            summary.status = Status.FAILED;
+            summary.error = "Could not find DBD installed in: " + summary.dbdHome;
+            exitCode = EXIT_FAILURE;
+        } catch (InsufficientDiskSpaceException e) {
+            summary.status = Status.FAILED;
+            summary.error = "Not enough free disk space; " + e.getRequiredSpaceInBytes() + " bytes are needed.";
+            exitCode = EXIT_FAILURE;
+        } catch (OperationAbortedException e) {
+            summary.status = Status.ABORTED;
+            exitCode = EXIT_FAILURE;
+        } catch (Exception e) {
+            log.error("Failed to run command: {}", summary.command, e);
+            summary.status = Status.FAILED;
+            summary.error = String.valueOf(e.getMessage());
+            exitCode = EXIT_FAILURE;
+        }
+
+        summary.elapsedMillis = (System.nanoTime() - startTime) / 1_000_000;
+        System.out.println(Factory.gson().toJson(summary));
+        System.out.flush();
+        finished.countDown();
+
+        if (!shuttingDown) {
+            System.exit(exitCode);
+        }
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        if (args.length < 2 || args[0].startsWith("--") || args[1].startsWith("--")) {
+            throw new IllegalArgumentException("Missing command or DBD home directory.");
+        }
+        if (!List.of("unpack-all", "unpack-missing", "verify", "clean").contains(args[0])) {
+            throw new IllegalArgumentException("Unknown command: " + args[0]);
+        }
+
+        Map<String, String> options = new HashMap<>();
+
+        for (int i = 2; i < args.length; i++) {
+            String option = args[i];
+
+            if (FLAGS.contains(option)) {
+                options.put(option, "true");
+            } else if (COUNT_OPTIONS.contains(option) || SIZE_OPTIONS.contains(option)) {
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing value for " + option);
+                }
+                options.put(option, args[++i]);
+            } else {
+                throw new IllegalArgumentException("Invalid option: " + option);
+            }
+        }
+
+        // values are checked up front, so that a bad one is reported as such instead of as a failure of the command
+        for (String option : options.keySet()) {
+            if (COUNT_OPTIONS.contains(option)) {
+                parsePositiveInt(options, option);
+            } else if (SIZE_OPTIONS.contains(option)) {
+                parseBufferSize(options, option);
+            }
+        }
+
+        return options;
+    }
+
+
+    private static int run(Summary summary, Map<String, String> options) throws Exception {
+        Path dbdHomePath = summary.dbdHome;
+        boolean quiet = options.containsKey("--quiet");
+
+        Factory.fileMetadataManager().setManifestRoot(options.containsKey("--manifest") ? dbdHomePath : null);
+
+        if (summary.command.equals("clean")) {
+            Factory.dbdPathService().verifyDbdHomePath(dbdHomePath);
+            CleanerMonitor monitor = Factory.fileCleaner().clean(dbdHomePath);
+            abortAction = monitor::abort;
+            progress(quiet, "Cleaning " + dbdHomePath);
+            await(monitor.start());
+            summary.clean = new CleanSummary(monitor);
+            summary.status = Status.COMPLETED;
+
+            return 0;
+        }
+
+        DbdUnpacker unpacker = createUnpacker(dbdHomePath, options);
+
+        if (summary.command.equals("verify")) {
+            return verify(unpacker, summary, options, quiet);
+        }
+
+        UnpackMonitor monitor = summary.command.equals("unpack-all")
+                ? unpacker.unpackAll(dbdHomePath)
+                : unpacker.unpackMissingAndUnverified(dbdHomePath);
+        summary.status = unpack(monitor, summary, quiet);
+
+        return summary.status == Status.COMPLETED ? 0 : EXIT_FAILURE;
+    }
+
+    private static DbdUnpacker createUnpacker(Path dbdHomePath, Map<String, String> options) {
+        DbdPakManager dbdPakManager = Factory.newDbdPakManager(dbdHomePath);
+        DbdUnpacker unpacker = Factory.newDbdUnpacker(dbdPakManager);
+        var extractionOptions = unpacker.getExtractionOptions();
+
+        dbdPakManager.setDeepVerify(options.containsKey("--deep-verify"));
+        extractionOptions.setPipelined(options.containsKey("--pipelined"));
+        extractionOptions.setMemoryMapped(options.containsKey("--memory-mapped"));
+        extractionOptions.setParallelBlockDecompression(options.containsKey("--parallel-blocks"));
+        extractionOptions.setVerifyIntegrity(options.containsKey("--verify-integrity"));
+
+        if (options.containsKey("--parallelism")) {
+            unpacker.setParallelism(parsePositiveInt(options, "--parallelism"));
+        }
+        if (options.containsKey("--scan-parallelism")) {
+            int scanParallelism = parsePositiveInt(options, "--scan-parallelism");
+            dbdPakManager.setScanParallelism(scanParallelism);
+            Factory.fileVerifier().setParallelism(scanParallelism);
+        }
+        if (options.containsKey("--buffer-size")) {
+            extractionOptions.setBufferSize(parseBufferSize(options, "--buffer-size"));
+        }
+        if (options.containsKey("--inflate-workers")) {
+            extractionOptions.setInflateWorkers(parsePositiveInt(options, "--inflate-workers"));
+        }
+        if (options.containsKey("--queue-capacity")) {
+            extractionOptions.setPipelineQueueCapacity(parsePositiveInt(options, "--queue-capacity"));
+        }
+
+        return unpacker;
+    }
+
+    private static int parsePositiveInt(Map<String, String> options, String option) {
+        String value = options.get(option);
+        int number;
+
+        try {
+            number = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+        }
+
+        if (number < 1) {
+            throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+        }
+        return number;
+    }
+
+    /**
+     * Buffers are arrays, so they must be smaller than 2G.
+     */
+    private static int parseBufferSize(Map<String, String> options, String option) {
+        String value = options.get(option);
+        long size;
+
+        try {
+            size = NumberFormatUtil.parseByteSize(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+        }
+
+        if (size < 1 || size >= Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid value for " + option + " (must be between 1 and 2G): " + value);
+        }
+        return (int) size;
+    }
+
+
+    private static int verify(DbdUnpacker unpacker, Summary summary, Map<String, String> options, boolean quiet)
+            throws Exception {
+
+        VerifyMonitor monitor = unpacker.verify(summary.dbdHome);
+        abortAction = monitor::abort;
+        monitor.registerListener(FileVerifier.EventType.BEGIN, e -> progress(quiet, "Verifying " + e.getValue() + " files"));
+
+        MultiPakSelection failedSelection = await(monitor.start());
+        summary.verify = new VerifySummary(monitor);
+        summary.status = Status.COMPLETED;
+
+        if (failedSelection.getTotalFiles() == 0) {
+            return 0;
+        }
+        if (!options.containsKey("--repair")) {
+            return EXIT_VERIFY_FAILED;
+        }
+
+        progress(quiet, "Repairing " + failedSelection.getTotalFiles() + " files");
+        summary.status = unpack(unpacker.unpackSelection(failedSelection, summary.dbdHome), summary, quiet);
+
+        return summary.status == Status.COMPLETED ? 0 : EXIT_FAILURE;
+    }
+
+    private static Status unpack(UnpackMonitor monitor, Summary summary, boolean quiet) throws Exception {
+        var aborted = new boolean[1];
+        var lastProgressTime = new long[]{System.currentTimeMillis()};
+
+        monitor.registerListener(EventType.FILE_SELECT__BEGIN, e -> progress(quiet, "Checking " + e.getValue() + " files"))
+                .registerListener(EventType.UNPACK_RESUMED, e -> progress(quiet, "Resuming interrupted unpack"))
+                .registerListener(EventType.UNPACK_BEGIN, () -> progress(quiet, String.format(Locale.ROOT,
+                        "Unpacking %d files (%.1f MB) from %d paks", monitor.getTotalStats().getFilesToExtract(),
+                        monitor.getTotalStats().getBytesToExtract() / MB, monitor.getTotalPaks())))
+                .registerListener(EventType.PAK_EXTRACT_BEGIN, e -> progress(quiet, "Unpacking " + ((PakFile) e.getValue()).getFile().getName()))
+                .registerListener(EventType.ABORTED, () -> aborted[0] = true)
+                .registerProgressListener(snapshot -> {
+                    long now = System.currentTimeMillis();
+
+                    if (now - lastProgressTime[0] >= PROGRESS_INTERVAL_MILLIS) {
+                        lastProgressTime[0] = now;
+                        progress(quiet, String.format(Locale.ROOT, "%d/%d files, %.1f/%.1f MB",
+                                snapshot.getItems(), monitor.getTotalStats().getFilesToExtract(),
+                                snapshot.getBytes() / MB, monitor.getTotalStats().getBytesToExtract() / MB));
+                    }
+                });
+
+        abortAction = monitor::abort;
+        await(monitor.start());
+
+        summary.unpack = new UnpackSummary(monitor.getTotalStats());
+        monitor.getPakStats().forEach((pakFile, stats) -> summary.unpack.paks.add(new PakSummary(pakFile, stats)));
+
+        return aborted[0] ? Status.ABORTED : Status.COMPLETED;
+    }
+
+
+    private static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Gives the running command the chance to stop cleanly (and print its summary) when the process is killed.
+     */
+    private static void abortOnShutdown() {
+        shuttingDown = true;
+        Runnable abortAction = Cli.abortAction;
+
+        if (abortAction != null && finished.getCount() > 0) {
+            abortAction.run();
+            try {
+                finished.await(SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static void progress(boolean quiet, String message) {
+        if (!quiet) {
+            System.err.println(message);
+        }
+    }
+
+    private static double throughput(long bytes, long elapsedMillis) {
+        return elapsedMillis == 0 ? 0 : Math.round(bytes / MB / (elapsedMillis / 1000.0) * 10) / 10.0;
+    }
+
+}
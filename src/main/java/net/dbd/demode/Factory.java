@@ -4,6 +4,7 @@ import lombok.experimental.UtilityClass;
 import lombok.extern.slf4j.Slf4j;
 import net.dbd.demode.config.AppProperties;
 import net.dbd.demode.config.UserSettings;
+import net.dbd.demode.pak.PakIndexCache;
 import net.dbd.demode.service.*;
 import net.dbd.demode.ui.mainpanel.CleanerPanel;
 import net.dbd.demode.ui.mainpanel.HomePanel;
@@ -72,10 +73,18 @@ public final class Factory {
         return getInstance(DbdPathService.class);
     }
 
+    public static PakIndexCache pakIndexCache() {
+        return getInstance(PakIndexCache.class, () -> new PakIndexCache(appProperties().getAppHome().resolve("cache")));
+    }
+
     public static FileCleaner fileCleaner() {
         return getInstance(FileCleaner.class, () -> new FileCleaner(fileMetadataManager()));
     }
 
+    public static FileVerifier fileVerifier() {
+        return getInstance(FileVerifier.class, () -> new FileVerifier(dbdPathService()));
+    }
+
 
     public static MainWindow mainWindow() {
         return getInstance(MainWindow.class, () ->
@@ -91,7 +100,8 @@ public final class Factory {
     }
 
     public static CleanerPanel cleanerPanel() {
-        return getInstance(CleanerPanel.class, () -> new CleanerPanel(userSettings(), dbdPathService(), fileCleaner()));
+        return getInstance(CleanerPanel.class, () ->
+                new CleanerPanel(userSettings(), dbdPathService(), fileCleaner(), fileMetadataManager()));
     }
 
     public static AppInfoPanel infoPanel() {
@@ -99,11 +109,11 @@ public final class Factory {
     }
 
     public static DbdUnpacker newDbdUnpacker(DbdPakManager dbdPakManager) {
-        return new DbdUnpacker(fileMetadataManager(), dbdPathService(), dbdPakManager);
+        return new DbdUnpacker(fileMetadataManager(), dbdPathService(), dbdPakManager, fileVerifier());
     }
 
     public static DbdPakManager newDbdPakManager(Path dbdHomePath) {
-        return new DbdPakManager(fileMetadataManager(), dbdPathService(), dbdHomePath);
+        return new DbdPakManager(fileMetadataManager(), dbdPathService(), pakIndexCache(), dbdHomePath);
     }
 
 
@@ -0,0 +1,134 @@
+package net.dbd.demode;
+
+import net.dbd.demode.pak.PakGenerator;
+import net.dbd.demode.pak.PakGeneratorOptions;
+import net.dbd.demode.pak.domain.Pak;
+import net.dbd.demode.pak.domain.PakEntry;
+import net.dbd.demode.service.DbdPathService;
+import net.dbd.demode.util.format.NumberFormatUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Command-line tool that creates a fake DBD installation with synthetic paks (see {@link PakGenerator}), which can be
+ * unpacked like a real one.
+ *
+ * @author Nicky Ramone
+ */
+public class GeneratePaks {
+
+    private static final String USAGE = String.join("\n",
+            "Usage: java -cp demode.jar net.dbd.demode.GeneratePaks <dbd home> [options]",
+            "  --paks N                number of paks (default: 4)",
+            "  --entries N             entries per pak (default: 1000)",
+            "  --compressed-ratio R    fraction of compressed entries, from 0 to 1 (default: 0.5)",
+            "  --median-size SIZE      median entry size (default: 24K)",
+            "  --size-spread S         spread of the entry sizes; 0 for all of the median size (default: 1.8)",
+            "  --min-size SIZE         smallest entry size (default: 16)",
+            "  --max-size SIZE         biggest entry size (default: 64M)",
+            "  --min-depth N           fewest directories above each file (default: 2)",
+            "  --max-depth N           most directories above each file (default: 7)",
+            "  --compression-level N   zlib level, from 1 to 9 (default: 1)",
+            "  --seed N                seed of the first pak; the next ones use the next numbers (default: 0)",
+            "Sizes are in bytes, or with a K, M or G suffix (powers of 1024).");
+
+    private static final String PAK_FILENAME_FORMAT = "pakchunk%d-WindowsNoEditor.pak";
+    private static final double MB = 1000 * 1000;
+    private static final int EXIT_FAILURE = 1;
+    private static final int EXIT_INVALID_ARGUMENTS = 2;
+
+    private static Logger log;
+
+
+    public static void main(String[] args) {
+        try {
+            Boot.configureLogger();
+            log = LoggerFactory.getLogger(GeneratePaks.class);
+
+            run(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(EXIT_INVALID_ARGUMENTS);
+        } catch (Exception e) {
+            log.error("Failed to generate paks: {}", e.getMessage(), e);
+            System.exit(EXIT_FAILURE);
+        }
+    }
+
+    private static void run(String[] args) throws Exception {
+        if (args.length == 0 || args[0].startsWith("--")) {
+            throw new IllegalArgumentException("Missing DBD home directory.");
+        }
+
+        Path dbdHomePath = Path.of(args[0]);
+        PakGeneratorOptions options = new PakGeneratorOptions();
+        int numPaks = 4;
+        long seed = 0;
+
+        for (int i = 1; i < args.length; i += 2) {
+            String option = args[i];
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing value for " + option);
+            }
+            String value = args[i + 1];
+
+            switch (option) {
+                case "--paks" -> numPaks = Integer.parseInt(value);
+                case "--entries" -> options.setNumEntries(Integer.parseInt(value));
+                case "--compressed-ratio" -> options.setCompressedRatio(Double.parseDouble(value));
+                case "--median-size" -> options.setMedianEntrySize(NumberFormatUtil.parseByteSize(value));
+                case "--size-spread" -> options.setEntrySizeSpread(Double.parseDouble(value));
+                case "--min-size" -> options.setMinEntrySize(NumberFormatUtil.parseByteSize(value));
+                case "--max-size" -> options.setMaxEntrySize(NumberFormatUtil.parseByteSize(value));
+                case "--min-depth" -> options.setMinPathDepth(Integer.parseInt(value));
+                case "--max-depth" -> options.setMaxPathDepth(Integer.parseInt(value));
+                case "--compression-level" -> options.setCompressionLevel(Integer.parseInt(value));
+                case "--seed" -> seed = Long.parseLong(value);
+                default -> throw new IllegalArgumentException("Unknown option: " + option);
+            }
+        }
+
+        generate(dbdHomePath, numPaks, options, seed);
+    }
+
+    private static void generate(Path dbdHomePath, int numPaks, PakGeneratorOptions options, long seed)
+            throws Exception {
+
+        DbdPathService dbdPathService = new DbdPathService();
+        PakGenerator pakGenerator = new PakGenerator(options);
+        long totalBytes = 0;
+        long totalStoredBytes = 0;
+        long startTime = System.nanoTime();
+
+        Files.createDirectories(dbdHomePath.resolve(dbdPathService.getPaksRelativePath()));
+        Path exeFilePath = dbdPathService.getExeFilePath(dbdHomePath);
+        if (!Files.exists(exeFilePath)) {
+            Files.createFile(exeFilePath);
+        }
+
+        for (int i = 0; i < numPaks; i++) {
+            long pakStartTime = System.nanoTime();
+            File pakFile = dbdPathService.getPakFilePath(dbdHomePath, String.format(PAK_FILENAME_FORMAT, i)).toFile();
+            Pak pak = pakGenerator.generate(pakFile, seed + i);
+
+            long bytes = pak.getIndex().getEntries().stream().mapToLong(PakEntry::getSize).sum();
+            totalBytes += bytes;
+            totalStoredBytes += pakFile.length();
+
+            System.out.printf(Locale.ROOT, "%s: %s entries, %.1f MB of data, %.1f MB on disk, in %.1f s%n",
+                    pakFile.getName(), NumberFormatUtil.format(pak.getIndex().getEntries().size()), bytes / MB,
+                    pakFile.length() / MB, (System.nanoTime() - pakStartTime) / 1e9);
+        }
+
+        System.out.printf(Locale.ROOT, "Generated %d paks in %s: %.1f MB of data, %.1f MB on disk, in %.1f s%n",
+                numPaks, dbdHomePath.toAbsolutePath().normalize(), totalBytes / MB, totalStoredBytes / MB,
+                (System.nanoTime() - startTime) / 1e9);
+    }
+
+}
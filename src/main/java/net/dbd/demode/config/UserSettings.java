@@ -65,6 +65,78 @@ public class UserSettings {
         set("dbd.home", path);
     }
 
+    public int getUnpackParallelism() {
+        return Integer.parseInt(get("unpack.parallelism", "1"));
+    }
+
+    public void setUnpackParallelism(int parallelism) {
+        set("unpack.parallelism", parallelism);
+    }
+
+    public boolean isParallelBlockDecompression() {
+        return Boolean.parseBoolean(get("unpack.parallel_block_decompression", "false"));
+    }
+
+    public void setParallelBlockDecompression(boolean enabled) {
+        set("unpack.parallel_block_decompression", enabled);
+    }
+
+    public boolean isMemoryMappedExtraction() {
+        return Boolean.parseBoolean(get("unpack.memory_mapped", "false"));
+    }
+
+    public void setMemoryMappedExtraction(boolean enabled) {
+        set("unpack.memory_mapped", enabled);
+    }
+
+    public boolean isPipelinedExtraction() {
+        return Boolean.parseBoolean(get("unpack.pipelined", "false"));
+    }
+
+    public void setPipelinedExtraction(boolean enabled) {
+        set("unpack.pipelined", enabled);
+    }
+
+    public boolean isIntegrityVerification() {
+        return Boolean.parseBoolean(get("unpack.verify_integrity", "false"));
+    }
+
+    public void setIntegrityVerification(boolean enabled) {
+        set("unpack.verify_integrity", enabled);
+    }
+
+    public int getScanParallelism() {
+        return Integer.parseInt(get("unpack.scan_parallelism", String.valueOf(Runtime.getRuntime().availableProcessors())));
+    }
+
+    public void setScanParallelism(int parallelism) {
+        set("unpack.scan_parallelism", parallelism);
+    }
+
+    public boolean isDirectoryListingScan() {
+        return Boolean.parseBoolean(get("unpack.scan_directory_listing", "true"));
+    }
+
+    public void setDirectoryListingScan(boolean enabled) {
+        set("unpack.scan_directory_listing", enabled);
+    }
+
+    public boolean isDeepVerify() {
+        return Boolean.parseBoolean(get("unpack.deep_verify", "false"));
+    }
+
+    public void setDeepVerify(boolean enabled) {
+        set("unpack.deep_verify", enabled);
+    }
+
+    public boolean isFileManifestEnabled() {
+        return Boolean.parseBoolean(get("metadata.manifest", "false"));
+    }
+
+    public void setFileManifestEnabled(boolean enabled) {
+        set("metadata.manifest", enabled);
+    }
+
     public String get(String key) {
         return globalSection.get(key);
     }
@@ -0,0 +1,22 @@
+package net.dbd.demode.pak;
+
+import lombok.Getter;
+
+import java.nio.file.Path;
+
+/**
+ * The data of an entry doesn't match the hash stored in the pak index, even after reading it again.
+ *
+ * @author Nicky Ramone
+ */
+@Getter
+public class CorruptedPakEntryException extends RuntimeException {
+
+    private final Path filePath;
+
+    public CorruptedPakEntryException(Path filePath) {
+        super("Data of pak entry doesn't match its hash: " + filePath);
+        this.filePath = filePath;
+    }
+
+}
@@ -0,0 +1,114 @@
+package net.dbd.demode.pak;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * The output file of an entry while it's being written.
+ * <p>
+ * With atomic output, the data goes to a temporary file in the same directory, which replaces the real file with a
+ * rename only when it's complete. So the real file is either the old one or the new one, never a truncated one, no
+ * matter when the extraction is aborted or killed. If the file is closed without being committed, the temporary file
+ * is deleted.
+ * <p>
+ * The temporary file can also be preallocated to the size of the entry. On NTFS, that reserves the clusters up
+ * front, which reduces fragmentation and metadata updates for big files; other filesystems may just make it sparse.
+ *
+ * @author Nicky Ramone
+ */
+public final class EntryOutputFile implements Closeable {
+
+    private static final String TEMP_FILE_SUFFIX = ".demode-tmp";
+
+    private final File file;
+    private final File tempFile;     // null if writing straight to the file
+    private final RandomAccessFile raf;
+    private final FileOutputStream stream;
+    private boolean committed;
+
+
+    private EntryOutputFile(File file, File tempFile, RandomAccessFile raf, FileOutputStream stream) {
+        this.file = file;
+        this.tempFile = tempFile;
+        this.raf = raf;
+        this.stream = stream;
+    }
+
+
+    static EntryOutputFile open(File file, long size, ExtractionOptions options) throws IOException {
+        if (!options.isAtomicOutput()) {
+            return new EntryOutputFile(file, null, null, new FileOutputStream(file));
+        }
+
+        File tempFile = tempFileOf(file.toPath()).toFile();
+
+        if (!options.isPreallocateOutput()) {
+            return new EntryOutputFile(file, tempFile, null, new FileOutputStream(tempFile));
+        }
+
+        RandomAccessFile raf = new RandomAccessFile(tempFile, "rw");
+        try {
+            raf.setLength(size);
+        } catch (IOException e) {
+            raf.close();
+            throw e;
+        }
+
+        return new EntryOutputFile(file, tempFile, raf, new FileOutputStream(raf.getFD()));
+    }
+
+    /**
+     * @return where the data of the file is written until it's complete. Leftovers from a crash can be found there.
+     */
+    public static Path tempFileOf(Path file) {
+        return file.resolveSibling(file.getFileName() + TEMP_FILE_SUFFIX);
+    }
+
+
+    public FileOutputStream getStream() {
+        return stream;
+    }
+
+    /**
+     * Closes the file and puts it in place.
+     */
+    void commit() throws IOException {
+        if (raf != null) {
+            raf.setLength(stream.getChannel().position());  // in case the data was shorter than the entry says
+        }
+        closeStream();
+
+        if (tempFile != null) {
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        committed = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (committed) {
+            return;
+        }
+
+        try {
+            closeStream();
+        } finally {
+            if (tempFile != null) {
+                Files.deleteIfExists(tempFile.toPath());
+            }
+        }
+    }
+
+    private void closeStream() throws IOException {
+        try {
+            stream.close();
+        } finally {
+            if (raf != null) {
+                raf.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,45 @@
+package net.dbd.demode.pak;
+
+import lombok.Data;
+
+/**
+ * Tuning options for {@link PakExtractor}.
+ * The defaults are safe for any machine; extra parallelism has to be enabled explicitly.
+ *
+ * @author Nicky Ramone
+ */
+@Data
+public class ExtractionOptions {
+
+    /* inflate the blocks of big compressed entries concurrently on the common fork-join pool */
+    private boolean parallelBlockDecompression;
+
+    /* copy uncompressed entries with FileChannel.transferTo (sendfile/copy_file_range) instead of a heap buffer */
+    private boolean zeroCopy = true;
+
+    /* read the pak through a memory-mapped view instead of seek+read syscalls */
+    private boolean memoryMapped;
+
+    /* heap buffer for copying raw entries and for inflated data */
+    private int bufferSize = 8 * 1024;
+
+    /* extract entries in the order in which they are stored in the pak, merging reads of small neighbour entries */
+    private boolean offsetOrdered = true;
+
+    /* overlap reads, inflating and writes in separate stages (see ExtractionPipeline) */
+    private boolean pipelined;
+    private int inflateWorkers = Runtime.getRuntime().availableProcessors();
+    private int pipelineQueueCapacity = 64;     // in chunks of up to 1 MiB (raw data) or 64 KiB (compressed blocks)
+
+    /* write each file to a temporary file and rename it when complete, so that files are never left half-written */
+    private boolean atomicOutput = true;
+    /* set the temporary file to the size of the entry before writing it (only with atomic output) */
+    private boolean preallocateOutput;
+
+    /* hash the stored bytes of every entry while extracting it and compare them with the hash in the index.
+       Entries that don't match are read again from the pak up to integrityRetries times before failing.
+       Zero-copy is not used while this is on, since the bytes have to go through the heap to be hashed. */
+    private boolean verifyIntegrity;
+    private int integrityRetries = 2;
+
+}
@@ -0,0 +1,365 @@
+package net.dbd.demode.pak;
+
+import lombok.RequiredArgsConstructor;
+import net.dbd.demode.pak.domain.PakEntry;
+import net.dbd.demode.util.lang.OperationAbortedException;
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import static java.lang.Math.min;
+
+/**
+ * Extraction split in three stages that run at the same time, so that disk reads, inflating and disk writes overlap:
+ * <ol>
+ *     <li>a reader (the calling thread) that prefetches the raw data of the entries,</li>
+ *     <li>a pool of workers that inflate the compressed blocks,</li>
+ *     <li>a writer that writes the data to the output files (see {@link EntryOutputFile}), in order.</li>
+ * </ol>
+ * The reader hands the chunks to the writer through a bounded queue, so when inflating or writing falls behind,
+ * the reader blocks instead of filling up the memory.
+ * <p>
+ * If integrity verification is enabled, the writer also hashes the stored (compressed or raw) bytes of each entry,
+ * and hands the entries that don't match their index hash (or that can't be inflated) to an {@link EntryRetrier}
+ * before reporting them.
+ *
+ * @author Nicky Ramone
+ */
+class ExtractionPipeline {
+
+    interface PakDataReader {
+        void read(long position, byte[] bytes, int length) throws IOException;
+    }
+
+    interface EntryWrittenListener {
+        void entryWritten(PakEntry entry, File outputFile);
+    }
+
+    interface EntryRetrier {
+        void retry(PakEntry entry, File outputFile) throws IOException, DataFormatException;
+    }
+
+    private static final int RAW_CHUNK_SIZE = 1024 * 1024;
+    private static final long ENQUEUE_TIMEOUT_MILLIS = 100;
+    private static final Future<Chunk> END_OF_DATA = CompletableFuture.completedFuture(null);
+    private static final Future<Chunk> CANCELLED = CompletableFuture.completedFuture(null);
+
+
+    /**
+     * A piece of the data of an entry: a compressed block or a slice of an uncompressed entry.
+     */
+    @RequiredArgsConstructor
+    private static final class Chunk {
+        final PakEntry entry;
+        final boolean first;
+        final boolean last;
+        final byte[] storedData;    // as read from the pak
+        final byte[] data;          // as written to the output file; null if it could not be inflated
+    }
+
+
+    private final ExtractionOptions options;
+    private final int numInflateWorkers;
+    private final BlockingQueue<Future<Chunk>> writeQueue;
+    private final InflaterPool inflaterPool;
+    private final PakDataReader pakDataReader;
+    private final Function<PakEntry, File> outputFileResolver;
+    private final EntryWrittenListener entryWrittenListener;
+    private final EntryRetrier entryRetrier;
+    private final MessageDigest digest;
+    private final BooleanSupplier abortRequested;
+    private final PipelineStats stats;
+
+
+    ExtractionPipeline(ExtractionOptions options, InflaterPool inflaterPool, PakDataReader pakDataReader,
+                       Function<PakEntry, File> outputFileResolver, EntryWrittenListener entryWrittenListener,
+                       EntryRetrier entryRetrier, BooleanSupplier abortRequested, PipelineStats stats) {
+
+        this.options = options;
+        this.numInflateWorkers = options.getInflateWorkers();
+        this.writeQueue = new ArrayBlockingQueue<>(options.getPipelineQueueCapacity());
+        this.inflaterPool = inflaterPool;
+        this.pakDataReader = pakDataReader;
+        this.outputFileResolver = outputFileResolver;
+        this.entryWrittenListener = entryWrittenListener;
+        this.entryRetrier = entryRetrier;
+        this.digest = options.isVerifyIntegrity() ? createDigest() : null;
+        this.abortRequested = abortRequested;
+        this.stats = stats;
+    }
+
+
+    void run(List<PakEntry> entries) throws IOException, DataFormatException, OperationAbortedException {
+        ThreadPoolExecutor inflateExecutor = new ThreadPoolExecutor(numInflateWorkers, numInflateWorkers,
+                0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        ExecutorService writeExecutor = Executors.newSingleThreadExecutor();
+        stats.attachQueues(inflateExecutor.getQueue(), writeQueue);
+
+        try {
+            Future<Void> writer = writeExecutor.submit(this::writeChunks);
+
+            try {
+                for (PakEntry entry : entries) {
+                    readEntry(entry, inflateExecutor, writer);
+                }
+                enqueue(END_OF_DATA, writer);
+            } catch (Exception e) {
+                cancelWriter();
+                throw e;
+            }
+
+            awaitWriter(writer);
+        } finally {
+            inflateExecutor.shutdownNow();
+            writeExecutor.shutdownNow();
+            awaitTermination(inflateExecutor);
+            awaitTermination(writeExecutor);
+        }
+    }
+
+    /**
+     * Only the reader puts chunks in the queue, so once it's cleared there's room for the sentinel.
+     */
+    private void cancelWriter() {
+        writeQueue.clear();
+        try {
+            writeQueue.put(CANCELLED);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();     // the writer is interrupted anyway when its executor is shut down
+        }
+    }
+
+    /**
+     * Waits for the stages to actually stop, so that no thread is still writing a file when we return.
+     */
+    private void awaitTermination(ExecutorService executor) {
+        boolean interrupted = false;
+
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+
+    private void readEntry(PakEntry entry, ExecutorService inflateExecutor, Future<Void> writer)
+            throws IOException, DataFormatException, OperationAbortedException {
+
+        int numBlocks = entry.getBlockCount();
+
+        if (numBlocks == 0) {
+            long position = 0;
+            do {
+                checkAbort();
+                int length = (int) min(RAW_CHUNK_SIZE, entry.getSize() - position);
+                byte[] data = read(entry.getOffset() + position, length);
+                boolean first = position == 0;
+                position += length;
+                boolean last = position == entry.getSize();
+
+                enqueue(CompletableFuture.completedFuture(new Chunk(entry, first, last, data, data)), writer);
+            }
+            while (position < entry.getSize());
+
+            return;
+        }
+
+        for (int i = 0; i < numBlocks; i++) {
+            checkAbort();
+            byte[] compressedData = read(entry.getOffset() + entry.getBlockStart(i), entry.getBlockLength(i));
+            int inflatedSize = (int) min(entry.getBlockSize(), entry.getSize() - (long) i * entry.getBlockSize());
+            boolean first = i == 0;
+            boolean last = i == numBlocks - 1;
+
+            enqueue(CompletableFuture.supplyAsync(
+                    () -> new Chunk(entry, first, last, compressedData, inflate(compressedData, inflatedSize)), inflateExecutor), writer);
+        }
+    }
+
+    private byte[] read(long position, int length) throws IOException {
+        long start = System.nanoTime();
+        byte[] data = new byte[length];
+        pakDataReader.read(position, data, length);
+        stats.readNanos.addAndGet(System.nanoTime() - start);
+        stats.bytesRead.addAndGet(length);
+
+        return data;
+    }
+
+    private byte[] inflate(byte[] compressedData, int inflatedSize) {
+        long start = System.nanoTime();
+        byte[] output = new byte[inflatedSize];
+        Inflater inflater = inflaterPool.borrow();
+
+        try {
+            inflater.setInput(compressedData);
+            int inflated = 0;
+
+            while (!inflater.finished() && inflated < inflatedSize && !inflater.needsInput()) {
+                inflated += inflater.inflate(output, inflated, inflatedSize - inflated);
+            }
+            if (inflated != inflatedSize || !inflater.finished()) {
+                throw new DataFormatException("Unexpected size of inflated block.");
+            }
+        } catch (DataFormatException e) {
+            if (digest != null) {
+                return null;    // the entry will be retried
+            }
+            throw new CompletionException(e);
+        } finally {
+            inflaterPool.release(inflater);
+        }
+
+        stats.inflateNanos.addAndGet(System.nanoTime() - start);
+        stats.bytesInflated.addAndGet(inflatedSize);
+
+        return output;
+    }
+
+    /**
+     * Blocks while the queue is full, but gives up as soon as the writer dies, so that we get its error.
+     */
+    private void enqueue(Future<Chunk> chunk, Future<Void> writer)
+            throws IOException, DataFormatException, OperationAbortedException {
+
+        long start = System.nanoTime();
+        try {
+            while (!writeQueue.offer(chunk, ENQUEUE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                checkAbort();
+                if (writer.isDone()) {
+                    awaitWriter(writer);
+                    throw new IllegalStateException("Writer stopped unexpectedly.");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperationAbortedException();
+        } finally {
+            stats.readBlockedNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    private void checkAbort() {
+        if (abortRequested.getAsBoolean()) {
+            throw new OperationAbortedException();
+        }
+    }
+
+
+    private Void writeChunks() throws Exception {
+        EntryOutputFile output = null;
+        File outputFile = null;
+        boolean corrupted = false;
+
+        try {
+            while (true) {
+                long waitStart = System.nanoTime();
+                Future<Chunk> future = writeQueue.take();
+
+                if (future == END_OF_DATA) {
+                    return null;
+                }
+                if (future == CANCELLED) {
+                    throw new OperationAbortedException();
+                }
+
+                Chunk chunk = getChunk(future);
+                long writeStart = System.nanoTime();
+                stats.writeWaitingNanos.addAndGet(writeStart - waitStart);
+                checkAbort();
+
+                if (chunk.first) {
+                    outputFile = outputFileResolver.apply(chunk.entry);
+                    outputFile.getParentFile().mkdirs();
+                    output = EntryOutputFile.open(outputFile, chunk.entry.getSize(), options);
+                    corrupted = false;
+                }
+
+                if (chunk.data == null) {
+                    corrupted = true;
+                } else if (!corrupted) {
+                    output.getStream().write(chunk.data);
+                    stats.bytesWritten.addAndGet(chunk.data.length);
+                }
+                if (digest != null) {
+                    digest.update(chunk.storedData);
+                }
+
+                if (chunk.last) {
+                    String hash = digest != null ? Hex.encodeHexString(digest.digest()) : null;
+
+                    if (corrupted || hash != null && !hash.equalsIgnoreCase(chunk.entry.getHash())) {
+                        output.close();
+                        entryRetrier.retry(chunk.entry, outputFile);
+                    } else {
+                        output.commit();
+                    }
+                    output = null;
+                    entryWrittenListener.entryWritten(chunk.entry, outputFile);
+                }
+                stats.writeNanos.addAndGet(System.nanoTime() - writeStart);
+            }
+        } finally {
+            if (output != null) {
+                output.close();
+            }
+        }
+    }
+
+    private MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Invalid algorithm for calculating sha1 signature.", e);
+        }
+    }
+
+    private Chunk getChunk(Future<Chunk> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    private void awaitWriter(Future<Void> writer) throws IOException, DataFormatException, OperationAbortedException {
+        try {
+            writer.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperationAbortedException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof DataFormatException) {
+                throw (DataFormatException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+}
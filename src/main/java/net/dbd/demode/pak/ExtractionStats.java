@@ -1,29 +1,40 @@
 package net.dbd.demode.pak;
 
-import lombok.Data;
+import lombok.Getter;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
+ * Counters may be incremented concurrently when several paks are extracted in parallel, so they don't take locks.
+ *
  * @author Nicky Ramone
  */
-@Data
+@Getter
 public class ExtractionStats {
-    private Instant startTime;
-    private Instant endTime;
-    private int filesExtracted;
-    private long bytesExtracted;
-    private int filesToExtract;
-    private long bytesToExtract;
+    private volatile Instant startTime;
+    private volatile Instant endTime;
+    private final LongAdder filesExtracted = new LongAdder();
+    private final LongAdder bytesExtracted = new LongAdder();
+    private volatile int filesToExtract;
+    private volatile long bytesToExtract;
 
 
     public void incrementFilesExtracted() {
-        this.filesExtracted++;
+        filesExtracted.increment();
     }
 
     public void incrementBytesExtracted(long bytes) {
-        this.bytesExtracted += bytes;
+        bytesExtracted.add(bytes);
+    }
+
+    public int getFilesExtracted() {
+        return filesExtracted.intValue();
+    }
+
+    public long getBytesExtracted() {
+        return bytesExtracted.sum();
     }
 
     public void start(int filesToExtract, long bytesToExtract) {
@@ -31,8 +42,8 @@ public class ExtractionStats {
         endTime = null;
         this.filesToExtract = filesToExtract;
         this.bytesToExtract = bytesToExtract;
-        this.filesExtracted = 0;
-        this.bytesExtracted = 0;
+        this.filesExtracted.reset();
+        this.bytesExtracted.reset();
     }
 
     public void stop() {
@@ -40,11 +51,19 @@ public class ExtractionStats {
     }
 
     public int elapsed() {
+        return (int) elapsedDuration().toSeconds();
+    }
+
+    public long elapsedMillis() {
+        return elapsedDuration().toMillis();
+    }
+
+    private Duration elapsedDuration() {
         Instant endInstant = this.endTime != null ? this.endTime : Instant.now();
-        return (int) Duration.between(startTime, endInstant).toSeconds();
+        return Duration.between(startTime, endInstant);
     }
 
     public int eta() {
-        return (int) ((double) bytesToExtract * elapsed() / bytesExtracted);
+        return (int) ((double) bytesToExtract * elapsed() / getBytesExtracted());
     }
 }
@@ -0,0 +1,41 @@
+package net.dbd.demode.pak;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.zip.Inflater;
+
+/**
+ * Keeps idle inflaters around so that we don't need to allocate native zlib state for every block.
+ * Inflaters are reset when they are released, and ended when the pool is cleared.
+ * Thread-safe.
+ *
+ * @author Nicky Ramone
+ */
+class InflaterPool {
+
+    private final Deque<Inflater> idleInflaters = new ArrayDeque<>();
+
+
+    synchronized Inflater borrow() {
+        Inflater inflater = idleInflaters.poll();
+
+        return inflater != null ? inflater : new Inflater();
+    }
+
+    synchronized void release(Inflater inflater) {
+        inflater.reset();
+        idleInflaters.push(inflater);
+    }
+
+    /**
+     * Frees the native memory of every idle inflater.
+     */
+    synchronized void clear() {
+        Inflater inflater;
+
+        while ((inflater = idleInflaters.poll()) != null) {
+            inflater.end();
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package net.dbd.demode.pak;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU cache of inflated blocks of a pak, bounded by the total size of the blocks.
+ * <p>
+ * Blocks are identified by the position of their compressed data in the pak, so a cache must only hold blocks of
+ * a single pak. It can be shared by every {@link PakEntryChannel} open on that pak. Thread-safe.
+ *
+ * @author Nicky Ramone
+ */
+public class PakBlockCache {
+
+    public static final long DEFAULT_CAPACITY = 16 * 1024 * 1024;
+
+    private final long capacity;
+    private final Map<Long, byte[]> blocks = new LinkedHashMap<>(64, 0.75f, true);
+    private long size;
+    private long hits;
+    private long misses;
+
+
+    public PakBlockCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity maximum number of bytes of inflated data to keep.
+     */
+    public PakBlockCache(long capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Invalid cache capacity: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+
+
+    /**
+     * @param blockPosition absolute position of the compressed block in the pak.
+     * @return the inflated block, or null if it isn't cached.
+     */
+    synchronized byte[] get(long blockPosition) {
+        byte[] block = blocks.get(blockPosition);
+
+        if (block != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return block;
+    }
+
+    /**
+     * Blocks bigger than the whole cache are not kept.
+     */
+    synchronized void put(long blockPosition, byte[] block) {
+        if (block.length > capacity) {
+            return;
+        }
+
+        byte[] previousBlock = blocks.put(blockPosition, block);
+        size += block.length - (previousBlock != null ? previousBlock.length : 0);
+
+        Iterator<byte[]> eldestBlocks = blocks.values().iterator();
+
+        while (size > capacity) {
+            size -= eldestBlocks.next().length;
+            eldestBlocks.remove();
+        }
+    }
+
+    public synchronized void clear() {
+        blocks.clear();
+        size = 0;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the number of bytes of inflated data currently cached.
+     */
+    public synchronized long getSize() {
+        return size;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+}
@@ -0,0 +1,52 @@
+package net.dbd.demode.pak;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Read handles to paks, opened the first time a pak is needed and kept open until this is closed, so that an
+ * operation that goes through many entries opens each pak only once.
+ * <p>
+ * Thread-safe. The channels must only be used with positional reads, as they are shared by every thread.
+ * Interrupting a thread while it reads closes the channel for everyone, so interrupts are only for aborting.
+ *
+ * @author Nicky Ramone
+ */
+public class PakChannels implements Closeable {
+
+    private final Map<PakFile, FileChannel> channels = new ConcurrentHashMap<>();
+
+
+    public FileChannel get(PakFile pakFile) {
+        return channels.computeIfAbsent(pakFile, this::open);
+    }
+
+    /**
+     * The paks are only read, so nothing is lost if closing one of them fails.
+     */
+    @Override
+    public void close() {
+        for (FileChannel channel : channels.values()) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+        channels.clear();
+    }
+
+    private FileChannel open(PakFile pakFile) {
+        try {
+            return FileChannel.open(pakFile.getFile().toPath(), StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
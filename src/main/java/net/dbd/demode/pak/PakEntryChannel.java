@@ -0,0 +1,266 @@
+package net.dbd.demode.pak;
+
+import net.dbd.demode.pak.domain.PakEntry;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import static java.lang.Math.min;
+
+/**
+ * Read-only channel over the data of a single pak entry, without extracting it.
+ * <p>
+ * Raw entries are read straight from the pak. Compressed entries are inflated lazily, one block at a time: a position
+ * is mapped to the block that contains it, and only that block is inflated, so reading a few bytes from the middle of
+ * a big asset costs the same as reading them from a small one. Inflated blocks are kept in a {@link PakBlockCache},
+ * which can be shared with other channels open on the same pak.
+ * <p>
+ * The pak is read with positional reads, so several entry channels can share the same pak channel. Closing an entry
+ * channel only closes the pak channel if it was opened by {@link #open(File, PakEntry)}.
+ *
+ * @author Nicky Ramone
+ */
+public class PakEntryChannel implements SeekableByteChannel {
+
+    private static final int NO_BLOCK = -1;
+    private static final long PRIVATE_CACHE_CAPACITY = 1024 * 1024;
+
+    private final FileChannel pakChannel;
+    private final boolean ownsPakChannel;
+    private final PakEntry entry;
+    private final int numBlocks;
+    private final long size;
+    private final int blockSize;
+    private final PakBlockCache blockCache;
+    private Inflater inflater;
+    private byte[] compressedData = new byte[0];
+    private byte[] inflatedData = new byte[0];
+    private byte[] block;               // the block of the current position, so sequential reads skip the cache
+    private int blockIndex = NO_BLOCK;
+    private long position;
+    private boolean open = true;
+
+
+    /**
+     * Opens a channel with its own handle to the pak, which is closed together with the channel.
+     */
+    public static PakEntryChannel open(File pakFile, PakEntry entry) throws IOException {
+        FileChannel pakChannel = FileChannel.open(pakFile.toPath(), StandardOpenOption.READ);
+
+        return new PakEntryChannel(pakChannel, true, entry, new PakBlockCache(PRIVATE_CACHE_CAPACITY));
+    }
+
+    public PakEntryChannel(FileChannel pakChannel, PakEntry entry) {
+        this(pakChannel, entry, new PakBlockCache(PRIVATE_CACHE_CAPACITY));
+    }
+
+    /**
+     * @param blockCache cache of inflated blocks of the pak the entry belongs to.
+     */
+    public PakEntryChannel(FileChannel pakChannel, PakEntry entry, PakBlockCache blockCache) {
+        this(pakChannel, false, entry, blockCache);
+    }
+
+    private PakEntryChannel(FileChannel pakChannel, boolean ownsPakChannel, PakEntry entry, PakBlockCache blockCache) {
+        this.pakChannel = pakChannel;
+        this.ownsPakChannel = ownsPakChannel;
+        this.entry = entry;
+        this.numBlocks = entry.getBlockCount();
+        this.size = entry.getSize();
+        this.blockCache = blockCache;
+
+        // entries smaller than a block may not state the block size
+        this.blockSize = entry.getBlockSize() > 0 ? entry.getBlockSize() : (int) size;
+    }
+
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+
+        if (position >= size) {
+            return -1;
+        }
+
+        int numBytesRead = numBlocks == 0 ? readRaw(dst) : readCompressed(dst);
+        position += numBytesRead;
+
+        return numBytesRead;
+    }
+
+    private int readRaw(ByteBuffer dst) throws IOException {
+        int length = (int) min(dst.remaining(), size - position);
+        ByteBuffer target = dst.slice(dst.position(), length);
+        long pakPosition = entry.getOffset() + position;
+
+        while (target.hasRemaining()) {
+            if (pakChannel.read(target, pakPosition + target.position()) < 0) {
+                throw new EOFException("Pak file is truncated: " + entry.getFilePath());
+            }
+        }
+        dst.position(dst.position() + length);
+
+        return length;
+    }
+
+    private int readCompressed(ByteBuffer dst) throws IOException {
+        long readPosition = position;
+
+        while (dst.hasRemaining() && readPosition < size) {
+            int index = (int) (readPosition / blockSize);
+
+            if (index != blockIndex) {
+                loadBlock(index);
+            }
+
+            int offset = (int) (readPosition - (long) index * blockSize);
+            int length = min(dst.remaining(), block.length - offset);
+            dst.put(block, offset, length);
+            readPosition += length;
+        }
+
+        return (int) (readPosition - position);
+    }
+
+    private void loadBlock(int index) throws IOException {
+        long blockPosition = entry.getOffset() + entry.getBlockStart(index);
+        byte[] cachedBlock = blockCache.get(blockPosition);
+
+        if (cachedBlock == null) {
+            cachedBlock = inflateBlock(index);
+            blockCache.put(blockPosition, cachedBlock);
+        }
+
+        block = cachedBlock;
+        blockIndex = index;
+    }
+
+    private byte[] inflateBlock(int index) throws IOException {
+        int compressedLength = entry.getBlockLength(index);
+        int expectedLength = (int) min(blockSize, size - (long) index * blockSize);
+
+        if (compressedData.length < compressedLength) {
+            compressedData = new byte[compressedLength];
+        }
+        if (inflatedData.length < blockSize + 1) {
+            inflatedData = new byte[blockSize + 1];
+        }
+        if (inflater == null) {
+            inflater = new Inflater();
+        }
+
+        ByteBuffer compressed = ByteBuffer.wrap(compressedData, 0, compressedLength);
+        long pakPosition = entry.getOffset() + entry.getBlockStart(index);
+
+        while (compressed.hasRemaining()) {
+            if (pakChannel.read(compressed, pakPosition + compressed.position()) < 0) {
+                throw new EOFException("Pak file is truncated: " + entry.getFilePath());
+            }
+        }
+
+        if (inflate(compressedLength) != expectedLength) {
+            throw new ZipException("Unexpected size of block " + index + " of " + entry.getFilePath());
+        }
+
+        return Arrays.copyOf(inflatedData, expectedLength);
+    }
+
+    /**
+     * The block buffer has room for one byte more than a block, so that a block that inflates to more data than
+     * expected is detected instead of being cut.
+     *
+     * @return the number of inflated bytes, or -1 if the block is truncated.
+     */
+    private int inflate(int compressedLength) throws ZipException {
+        inflater.reset();
+        inflater.setInput(compressedData, 0, compressedLength);
+        int length = 0;
+
+        try {
+            while (!inflater.finished() && length < inflatedData.length) {
+                int numInflatedBytes = inflater.inflate(inflatedData, length, inflatedData.length - length);
+
+                if (numInflatedBytes == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    return -1;
+                }
+                length += numInflatedBytes;
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid zlib block in " + entry.getFilePath() + ": " + e.getMessage());
+        }
+
+        return length;
+    }
+
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+
+        if (newPosition < 0) {
+            throw new IllegalArgumentException("Negative position: " + newPosition);
+        }
+        position = newPosition;
+
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return size;
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (open) {
+            open = false;
+            block = null;
+            if (inflater != null) {
+                inflater.end();
+            }
+            if (ownsPakChannel) {
+                pakChannel.close();
+            }
+        }
+    }
+
+    private void ensureOpen() throws ClosedChannelException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+
+}
@@ -0,0 +1,147 @@
+package net.dbd.demode.pak;
+
+import lombok.experimental.UtilityClass;
+import net.dbd.demode.pak.domain.PakEntry;
+import net.dbd.demode.util.io.MappedFileReader;
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Computes the SHA-1 of the content of pak entries and of extracted files, so that they can be compared.
+ * <p>
+ * For uncompressed entries, this is just the hash stored in the index. For compressed entries, the index only has
+ * the hash of the compressed data, so the entry has to be inflated to get the hash of its content.
+ * <p>
+ * Thread-safe: every call uses its own buffers, and pak handles are only read with positional reads.
+ *
+ * @author Nicky Ramone
+ */
+@UtilityClass
+public class PakEntryHasher {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int FILE_BUFFER_SIZE = 1024 * 1024;
+    private static final int MAPPED_SLICE_SIZE = 64 * 1024 * 1024;
+
+
+    /**
+     * Opens the pak just for this entry. To hash many entries of a pak, use
+     * {@link #hashContent(FileChannel, PakEntry)} with a handle that is shared by all of them.
+     *
+     * @return the SHA-1 (in hex) that the entry should have once extracted.
+     */
+    public String hashContent(PakFile pakFile, PakEntry entry) throws IOException, DataFormatException {
+        if (!entry.isCompressed()) {
+            return entry.getHash();
+        }
+
+        try (FileChannel pakChannel = FileChannel.open(pakFile.getFile().toPath(), StandardOpenOption.READ)) {
+            return hashContent(pakChannel, entry);
+        }
+    }
+
+    /**
+     * The pak is only read with positional reads, so the channel can be shared by several threads.
+     *
+     * @return the SHA-1 (in hex) that the entry should have once extracted.
+     */
+    public String hashContent(FileChannel pakChannel, PakEntry entry) throws IOException, DataFormatException {
+        if (!entry.isCompressed()) {
+            return entry.getHash();
+        }
+
+        MessageDigest digest = createDigest();
+        byte[] compressedData = new byte[BUFFER_SIZE];
+        byte[] inflatedData = new byte[BUFFER_SIZE];
+        Inflater inflater = new Inflater();
+
+        try {
+            for (int i = 0, numBlocks = entry.getBlockCount(); i < numBlocks; i++) {
+                int blockLength = entry.getBlockLength(i);
+
+                if (blockLength > compressedData.length) {
+                    compressedData = new byte[blockLength];
+                }
+                readFully(pakChannel, entry, entry.getOffset() + entry.getBlockStart(i), compressedData, blockLength);
+
+                inflater.reset();
+                inflater.setInput(compressedData, 0, blockLength);
+
+                while (!inflater.finished()) {
+                    int numInflatedBytes = inflater.inflate(inflatedData);
+
+                    if (numInflatedBytes == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new DataFormatException("Truncated zlib block.");
+                    }
+                    digest.update(inflatedData, 0, numInflatedBytes);
+                }
+            }
+        } finally {
+            inflater.end();
+        }
+
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    /**
+     * Big files are hashed straight from a memory mapping; small ones are read in one go.
+     *
+     * @return the SHA-1 (in hex) of the content of the file.
+     */
+    public String hashFile(Path file) throws IOException {
+        MessageDigest digest = createDigest();
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            if (size > FILE_BUFFER_SIZE) {
+                hashMapped(file, size, digest);
+            } else {
+                ByteBuffer buffer = ByteBuffer.allocate((int) size);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // keep reading
+                }
+                digest.update(buffer.array(), 0, buffer.position());
+            }
+        }
+
+        return Hex.encodeHexString(digest.digest());
+    }
+
+    private void hashMapped(Path file, long size, MessageDigest digest) throws IOException {
+        try (MappedFileReader reader = new MappedFileReader(file.toFile())) {
+            for (long position = 0; position < size; position += MAPPED_SLICE_SIZE) {
+                digest.update(reader.slice(position, (int) Math.min(MAPPED_SLICE_SIZE, size - position)));
+            }
+        }
+    }
+
+    private void readFully(FileChannel channel, PakEntry entry, long position, byte[] bytes, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, length);
+
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Pak file is truncated: " + entry.getFilePath());
+            }
+        }
+    }
+
+    private MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Invalid algorithm for calculating sha1 signature.", e);
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+package net.dbd.demode.pak;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Stream over the data of a single pak entry. Skipping and resetting just move the position of the underlying
+ * {@link PakEntryChannel}, so they don't inflate the blocks in between.
+ *
+ * @author Nicky Ramone
+ */
+public class PakEntryInputStream extends InputStream {
+
+    private final PakEntryChannel channel;
+    private long mark;
+
+
+    public PakEntryInputStream(PakEntryChannel channel) {
+        this.channel = channel;
+    }
+
+
+    @Override
+    public int read() throws IOException {
+        byte[] singleByte = new byte[1];
+
+        return read(singleByte, 0, 1) < 0 ? -1 : singleByte[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        return channel.read(ByteBuffer.wrap(bytes, offset, length));
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long position = channel.position();
+        long skipped = Math.max(0, Math.min(n, channel.size() - position));
+        channel.position(position + skipped);
+
+        return skipped;
+    }
+
+    @Override
+    public int available() throws IOException {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(0, channel.size() - channel.position()));
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public synchronized void mark(int readLimit) {
+        try {
+            mark = channel.position();
+        } catch (IOException e) {
+            mark = 0;
+        }
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        channel.position(mark);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
@@ -2,26 +2,39 @@ package net.dbd.demode.pak;
 
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
-import net.dbd.demode.pak.domain.PakCompressedBlock;
+import lombok.extern.slf4j.Slf4j;
 import net.dbd.demode.pak.domain.PakEntry;
 import net.dbd.demode.pak.domain.PakIndex;
+import net.dbd.demode.pak.PakReadScheduler.ReadBatch;
 import net.dbd.demode.util.event.EventListener;
-import net.dbd.demode.util.event.EventSupport;
+import net.dbd.demode.util.event.EventBus;
+import net.dbd.demode.util.io.MappedFileReader;
 import net.dbd.demode.util.lang.OperationAbortedException;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
 import java.util.zip.DataFormatException;
 import java.util.zip.Inflater;
 
 import static java.lang.Math.min;
+import static java.util.stream.Collectors.toList;
 
 /**
  * TODO: Consider removing or having it being a helper to @{@link PakFile}.
  *
  * @author Nicky Ramone
  */
+@Slf4j
 public class PakExtractor {
 
     public enum EventType {
@@ -40,60 +53,342 @@ public class PakExtractor {
     }
 
     private static final int KiB = 1024;
-    private static final int DEFAULT_BUFFER_SIZE = 8 * KiB;
     private static final int ZLIB_BUFFER_SIZE = 64 * KiB;
+    private static final int TRANSFER_CHUNK_SIZE = 8 * 1024 * KiB;
+    private static final int MIN_BLOCKS_FOR_PARALLEL_DECOMPRESSION = 8;
+    private static final int PARALLEL_DECOMPRESSION_BATCH_SIZE = 64; // in blocks
 
+    private final ExtractionOptions options;
     private final byte[] zlibBuffer = new byte[ZLIB_BUFFER_SIZE];
-    private final byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
-    private final EventSupport eventSupport = new EventSupport();
+    private final byte[] buffer;
+    private final EventBus<EventType> eventBus = new EventBus<>(EventType.class);
 
-    private boolean abort;
+    private byte[] batchBuffer = new byte[0];
+    private final byte[][] inflatedBlocks = new byte[PARALLEL_DECOMPRESSION_BATCH_SIZE][0];
+    private final int[] inflatedBlockSizes = new int[PARALLEL_DECOMPRESSION_BATCH_SIZE];
+    private final InflaterPool inflaterPool = new InflaterPool();
+    @Getter
+    private final PipelineStats pipelineStats = new PipelineStats();
+    private MappedFileReader mappedReader; // only while extracting, if memory mapping is enabled
+    private MessageDigest digest;          // only while extracting, if integrity verification is enabled
+    private volatile boolean abort;
+
+
+    public PakExtractor() {
+        this(new ExtractionOptions());
+    }
+
+    public PakExtractor(ExtractionOptions options) {
+        this.options = options;
+        this.buffer = new byte[options.getBufferSize()];
+    }
 
 
     public void extract(PakFile pakFile, List<Path> includedFilePaths, Path outputPath)
             throws IOException, DataFormatException, OperationAbortedException {
-        abort = false;
 
         try (RandomAccessFile raf = new RandomAccessFile(pakFile.getFile(), "r")) {
             PakIndex pakIndex = pakFile.getIndex();
             Path mountPoint = pakIndex.getMountPoint();
 
-            for (Path includedFilePath : includedFilePaths) {
-                if (abort) {
-                    throw new OperationAbortedException();
+            if (options.isMemoryMapped()) {
+                mappedReader = new MappedFileReader(pakFile.getFile(), true);
+            }
+            if (options.isVerifyIntegrity()) {
+                digest = createDigest();
+            }
+
+            if (options.isPipelined()) {
+                extractPipelined(pakFile, includedFilePaths, outputPath, mountPoint, raf);
+            } else if (options.isOffsetOrdered()) {
+                extractInOffsetOrder(pakFile, includedFilePaths, outputPath, mountPoint, raf);
+            } else {
+                for (Path includedFilePath : includedFilePaths) {
+                    if (abort) {
+                        throw new OperationAbortedException();
+                    }
+
+                    PakEntry pakEntry = pakFile.getEntry(includedFilePath);
+                    extractSingleFile(pakEntry, outputPath, mountPoint, raf, (entry, out) -> writeFromPak(entry, raf, out));
                 }
+            }
+        } finally {
+            inflaterPool.clear();
+            digest = null;
+            if (mappedReader != null) {
+                mappedReader.close();
+                mappedReader = null;
+            }
+        }
+
+        eventBus.fireEvent(EventType.PAK_EXTRACTED, pakFile);
+    }
+
+
+    /**
+     * Visits the entries in the order in which they are stored, reading runs of small neighbour entries with a single
+     * read. Merging reads makes no sense when the pak is memory-mapped, so in that case we only sort.
+     */
+    private void extractInOffsetOrder(PakFile pakFile, List<Path> includedFilePaths, Path outputPath, Path mountPoint,
+                                      RandomAccessFile raf)
+            throws IOException, DataFormatException, OperationAbortedException {
+
+        List<PakEntry> entries = includedFilePaths.stream()
+                .map(pakFile::getEntry)
+                .collect(toList());
+
+        for (ReadBatch batch : PakReadScheduler.schedule(entries, mappedReader == null)) {
+            if (abort) {
+                throw new OperationAbortedException();
+            }
+
+            if (!batch.isMerged()) {
+                extractSingleFile(batch.getEntries().get(0), outputPath, mountPoint, raf,
+                        (entry, out) -> writeFromPak(entry, raf, out));
+                continue;
+            }
+
+            if (batchBuffer.length < batch.length()) {
+                batchBuffer = new byte[batch.length()];
+            }
+            raf.seek(batch.getStart());
+            raf.readFully(batchBuffer, 0, batch.length());
 
-                PakEntry pakEntry = pakFile.getEntry(includedFilePath);
-                extractSingleFile(pakEntry, outputPath, mountPoint, raf);
+            for (PakEntry batchEntry : batch.getEntries()) {
+                int dataOffset = (int) (batchEntry.getOffset() - batch.getStart());
+                extractSingleFile(batchEntry, outputPath, mountPoint, raf,
+                        (entry, out) -> writeFromMemory(entry, dataOffset, out));
             }
         }
+    }
+
+
+    /**
+     * See {@link ExtractionPipeline}. Entries are still visited in offset order if requested, but reads are not merged
+     * since the reader stage already keeps the disk busy.
+     */
+    private void extractPipelined(PakFile pakFile, List<Path> includedFilePaths, Path outputPath, Path mountPoint,
+                                  RandomAccessFile raf)
+            throws IOException, DataFormatException, OperationAbortedException {
+
+        List<PakEntry> entries = includedFilePaths.stream()
+                .map(pakFile::getEntry)
+                .collect(toList());
+
+        if (options.isOffsetOrdered()) {
+            entries = PakReadScheduler.schedule(entries, false).stream()
+                    .map(batch -> batch.getEntries().get(0))
+                    .collect(toList());
+        }
 
-        eventSupport.fireEvent(EventType.PAK_EXTRACTED, pakFile);
+        var pipeline = new ExtractionPipeline(options, inflaterPool,
+                (position, bytes, length) -> readFully(raf, position, bytes, length),
+                entry -> resolveOutputFile(outputPath, mountPoint, entry),
+                (entry, outputFile) -> fireFileExtracted(mountPoint, entry, outputFile),
+                (entry, outputFile) -> retryCorruptedEntry(pakFile, entry, outputFile),
+                () -> abort, pipelineStats);
+
+        pipeline.run(entries);
     }
 
 
-    private void extractSingleFile(PakEntry indexEntry, Path outputPath, Path mountPoint, RandomAccessFile raf)
+    private void extractSingleFile(PakEntry indexEntry, Path outputPath, Path mountPoint, RandomAccessFile raf,
+                                   EntryDataWriter entryDataWriter)
             throws IOException, DataFormatException, OperationAbortedException {
 
-        Path filePath = mountPoint.resolve(indexEntry.getFilePath()).normalize();
-        File outputFile = outputPath.resolve(filePath).normalize().toFile();
+        File outputFile = resolveOutputFile(outputPath, mountPoint, indexEntry);
         outputFile.getParentFile().mkdirs();
 
-        try (var outStream = new FileOutputStream(outputFile)) {
+        if (!writeEntry(indexEntry, outputFile, entryDataWriter)) {
+            retryCorruptedEntry(indexEntry, outputFile, raf);
+        }
+
+        fireFileExtracted(mountPoint, indexEntry, outputFile);
+    }
+
+    /**
+     * With integrity verification, the file is only committed if its data matches the hash of the entry.
+     * Corrupted compressed data usually can't even be inflated, so that counts as a mismatch too.
+     *
+     * @return false if the data doesn't match.
+     */
+    private boolean writeEntry(PakEntry indexEntry, File outputFile, EntryDataWriter entryDataWriter)
+            throws IOException, DataFormatException, OperationAbortedException {
+
+        if (digest != null) {
+            digest.reset();
+        }
+
+        try (EntryOutputFile output = EntryOutputFile.open(outputFile, indexEntry.getSize(), options)) {
+            try {
+                entryDataWriter.write(indexEntry, output.getStream());
+            } catch (DataFormatException e) {
+                if (digest == null) {
+                    throw e;
+                }
+                return false;
+            }
+
+            if (digest != null && !indexEntry.hasHash(digest.digest())) {
+                return false;
+            }
+            output.commit();
+
+            return true;
+        }
+    }
+
+    /**
+     * Reads the entry again straight from the pak, in case its data got corrupted on the way (e.g.: a flaky disk or
+     * network share), and gives up after a few attempts.
+     */
+    private void retryCorruptedEntry(PakEntry indexEntry, File outputFile, RandomAccessFile raf)
+            throws IOException, DataFormatException, OperationAbortedException {
+
+        for (int retry = 1; retry <= options.getIntegrityRetries(); retry++) {
+            log.warn("Data of '{}' doesn't match its hash. Reading it again ({}/{}).",
+                    indexEntry.getFilePath(), retry, options.getIntegrityRetries());
+            if (writeEntry(indexEntry, outputFile, (entry, out) -> writeFromPak(entry, raf, out))) {
+                return;
+            }
+        }
+
+        if (!options.isAtomicOutput()) {
+            outputFile.delete();
+        }
+        throw new CorruptedPakEntryException(indexEntry.getFilePath());
+    }
+
+    /**
+     * The pipeline reads the pak from another thread, so retries use their own file handle.
+     */
+    private void retryCorruptedEntry(PakFile pakFile, PakEntry indexEntry, File outputFile)
+            throws IOException, DataFormatException, OperationAbortedException {
+
+        try (RandomAccessFile raf = new RandomAccessFile(pakFile.getFile(), "r")) {
+            retryCorruptedEntry(indexEntry, outputFile, raf);
+        }
+    }
+
+    private void updateDigest(byte[] data, int offset, int length) {
+        if (digest != null) {
+            digest.update(data, offset, length);
+        }
+    }
+
+    private void updateDigest(ByteBuffer data) {
+        if (digest != null) {
+            digest.update(data.duplicate());
+        }
+    }
+
+    private File resolveOutputFile(Path outputPath, Path mountPoint, PakEntry indexEntry) {
+        Path filePath = mountPoint.resolve(indexEntry.getFilePath()).normalize();
+
+        return outputPath.resolve(filePath).normalize().toFile();
+    }
+
+    private void fireFileExtracted(Path mountPoint, PakEntry indexEntry, File outputFile) {
+        Path filePath = mountPoint.resolve(indexEntry.getFilePath()).normalize();
+        ExtractedFileInfo extractedFileInfo = new ExtractedFileInfo(filePath, outputFile, indexEntry.getHash());
+        eventBus.fireEvent(EventType.FILE_EXTRACTED, extractedFileInfo);
+        eventBus.fireLongEvent(EventType.BYTES_EXTRACTED, indexEntry.getSize());
+    }
+
+    @FunctionalInterface
+    private interface EntryDataWriter {
+        void write(PakEntry entry, FileOutputStream outStream)
+                throws IOException, DataFormatException, OperationAbortedException;
+    }
+
 
-            if (indexEntry.getBlocks().isEmpty()) {
+    private void writeFromPak(PakEntry indexEntry, RandomAccessFile raf, FileOutputStream outStream)
+            throws IOException, DataFormatException, OperationAbortedException {
+
+        if (indexEntry.getBlockCount() == 0) {
+            if (options.isZeroCopy() && digest == null) {
+                transfer(raf, indexEntry.getOffset(), indexEntry.getSize(), outStream.getChannel());
+            } else if (mappedReader != null) {
+                writeMapped(indexEntry.getOffset(), indexEntry.getSize(), outStream.getChannel());
+            } else {
                 raf.seek(indexEntry.getOffset());
                 copy(raf, (int) indexEntry.getSize(), outStream);
-            } else {
-                unpackSplitFile(indexEntry, raf, outStream);
             }
+        } else if (options.isParallelBlockDecompression()
+                && indexEntry.getBlockCount() >= MIN_BLOCKS_FOR_PARALLEL_DECOMPRESSION) {
+            unpackSplitFileInParallel(indexEntry, raf, outStream);
+        } else {
+            unpackSplitFile(indexEntry, raf, outStream);
         }
+    }
 
-        ExtractedFileInfo extractedFileInfo = new ExtractedFileInfo(filePath, outputFile, indexEntry.getHash());
-        eventSupport.fireEvent(EventType.FILE_EXTRACTED, extractedFileInfo);
-        eventSupport.fireEvent(EventType.BYTES_EXTRACTED, indexEntry.getSize());
+    /**
+     * Writes an entry whose data has already been read into the batch buffer.
+     *
+     * @param dataOffset position of the entry (not of its data) inside the batch buffer.
+     */
+    private void writeFromMemory(PakEntry indexEntry, int dataOffset, OutputStream outStream)
+            throws IOException, DataFormatException {
+
+        int numBlocks = indexEntry.getBlockCount();
+
+        if (numBlocks == 0) {
+            updateDigest(batchBuffer, dataOffset, (int) indexEntry.getSize());
+            outStream.write(batchBuffer, dataOffset, (int) indexEntry.getSize());
+            return;
+        }
+
+        for (int i = 0; i < numBlocks; i++) {
+            int blockOffset = dataOffset + (int) indexEntry.getBlockStart(i);
+            int blockLength = indexEntry.getBlockLength(i);
+            updateDigest(batchBuffer, blockOffset, blockLength);
+            decompressWithZlib(batchBuffer, blockOffset, blockLength, outStream);
+        }
+    }
+
+
+    /**
+     * Lets the OS copy the bytes straight from the pak into the output file.
+     * It goes in chunks so that we can still abort in the middle of a big file, and falls back to a buffered copy
+     * of whatever is left if the channel stops making progress.
+     */
+    private void transfer(RandomAccessFile raf, long position, long length, FileChannel target)
+            throws IOException, OperationAbortedException {
+
+        FileChannel source = raf.getChannel();
+        long transferred = 0;
+
+        while (transferred < length) {
+            if (abort) {
+                throw new OperationAbortedException();
+            }
+
+            long count = source.transferTo(position + transferred, min(length - transferred, TRANSFER_CHUNK_SIZE), target);
+
+            if (count <= 0) {
+                raf.seek(position + transferred);
+                copy(raf, (int) (length - transferred), Channels.newOutputStream(target));
+                return;
+            }
+            transferred += count;
+        }
     }
 
+    private void writeMapped(long position, long length, FileChannel target) throws IOException, OperationAbortedException {
+        long written = 0;
+
+        while (written < length) {
+            if (abort) {
+                throw new OperationAbortedException();
+            }
+
+            ByteBuffer data = mappedReader.slice(position + written, (int) min(length - written, TRANSFER_CHUNK_SIZE));
+            updateDigest(data);
+            while (data.hasRemaining()) {
+                written += target.write(data);
+            }
+        }
+    }
 
     private void copy(RandomAccessFile raf, int length, OutputStream outStream) throws IOException, OperationAbortedException {
         int totalRead = 0;
@@ -103,8 +398,9 @@ public class PakExtractor {
                 throw new OperationAbortedException();
             }
 
-            int numBytesToRead = min(length - totalRead, DEFAULT_BUFFER_SIZE);
-            raf.read(buffer, 0, numBytesToRead);
+            int numBytesToRead = min(length - totalRead, buffer.length);
+            raf.readFully(buffer, 0, numBytesToRead);
+            updateDigest(buffer, 0, numBytesToRead);
             totalRead += numBytesToRead;
             outStream.write(buffer, 0, numBytesToRead);
         }
@@ -122,42 +418,209 @@ public class PakExtractor {
 
         long baseOffset = entry.getOffset();
 
-        for (PakCompressedBlock block : entry.getBlocks()) {
+        for (int i = 0, numBlocks = entry.getBlockCount(); i < numBlocks; i++) {
             if (abort) {
                 throw new OperationAbortedException();
             }
-            int blockSize = block.size();
+            long blockStart = entry.getBlockStart(i);
+            int blockSize = entry.getBlockLength(i);
 
             if (blockSize > ZLIB_BUFFER_SIZE) {
                 throw new RuntimeException(String.format("File '%s' chunk is too big.", entry.getFilePath()));
             }
 
-            raf.seek(baseOffset + block.getOffsetStart());
-            raf.read(zlibBuffer, 0, blockSize);
-            decompressWithZlib(zlibBuffer, blockSize, outStream);
+            if (mappedReader != null) {
+                ByteBuffer blockData = mappedReader.slice(baseOffset + blockStart, blockSize);
+                updateDigest(blockData);
+                decompressWithZlib(blockData, outStream);
+            } else {
+                readFully(raf, baseOffset + blockStart, zlibBuffer, blockSize);
+                updateDigest(zlibBuffer, 0, blockSize);
+                decompressWithZlib(zlibBuffer, 0, blockSize, outStream);
+            }
+        }
+    }
+
+
+    /**
+     * Every block is an independent zlib stream, so we can inflate several of them at the same time.
+     * Blocks are processed in batches to keep memory bounded: the compressed bytes of a batch are read in one go,
+     * inflated concurrently and then written in order.
+     */
+    private void unpackSplitFileInParallel(PakEntry entry, RandomAccessFile raf, OutputStream outStream)
+            throws IOException, DataFormatException, OperationAbortedException {
+
+        int numBlocks = entry.getBlockCount();
+        int blockSize = entry.getBlockSize();
+
+        for (int first = 0; first < numBlocks; first += PARALLEL_DECOMPRESSION_BATCH_SIZE) {
+            if (abort) {
+                throw new OperationAbortedException();
+            }
+            int last = min(first + PARALLEL_DECOMPRESSION_BATCH_SIZE, numBlocks);
+            long batchStart = entry.getBlockStart(first);
+            int batchLength = (int) (entry.getBlockEnd(last - 1) - batchStart);
+
+            if (batchBuffer.length < batchLength) {
+                batchBuffer = new byte[batchLength];
+            }
+            readFully(raf, entry.getOffset() + batchStart, batchBuffer, batchLength);
+            updateDigest(batchBuffer, 0, batchLength);
+
+            for (int i = first; i < last; i++) {
+                if (inflatedBlocks[i - first].length < blockSize) {
+                    inflatedBlocks[i - first] = new byte[blockSize];
+                }
+                inflatedBlockSizes[i - first] = (int) min(blockSize, entry.getSize() - (long) i * blockSize);
+            }
+
+            inflateInParallel(new BlockBatchInflation(
+                    inflaterPool, entry, batchBuffer, batchStart, inflatedBlocks, inflatedBlockSizes, first, first, last));
+
+            for (int i = first; i < last; i++) {
+                outStream.write(inflatedBlocks[i - first], 0, inflatedBlockSizes[i - first]);
+            }
+        }
+    }
+
+    private void readFully(RandomAccessFile raf, long position, byte[] bytes, int length) throws IOException {
+        if (mappedReader != null) {
+            mappedReader.read(position, bytes, 0, length);
+        } else {
+            raf.seek(position);
+            raf.readFully(bytes, 0, length);
+        }
+    }
+
+    private void inflateInParallel(BlockBatchInflation task) throws DataFormatException {
+        try {
+            ForkJoinPool.commonPool().invoke(task);
+        } catch (RuntimeException e) {
+            if (e.getCause() instanceof DataFormatException) {
+                throw (DataFormatException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Inflates the blocks [from, to) of a batch. Splits itself in halves until there is a single block left.
+     */
+    @RequiredArgsConstructor
+    private static final class BlockBatchInflation extends RecursiveAction {
+        private final InflaterPool inflaterPool;
+        private final PakEntry entry;
+        private final byte[] batchData;
+        private final long batchStart;
+        private final byte[][] inflatedBlocks;
+        private final int[] inflatedBlockSizes;
+        private final int batchFirst;
+        private final int from;
+        private final int to;
+
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(
+                        new BlockBatchInflation(inflaterPool, entry, batchData, batchStart, inflatedBlocks,
+                                inflatedBlockSizes, batchFirst, from, middle),
+                        new BlockBatchInflation(inflaterPool, entry, batchData, batchStart, inflatedBlocks,
+                                inflatedBlockSizes, batchFirst, middle, to));
+                return;
+            }
+
+            byte[] output = inflatedBlocks[from - batchFirst];
+            int outputSize = inflatedBlockSizes[from - batchFirst];
+            Inflater inflater = inflaterPool.borrow();
+            try {
+                inflater.setInput(batchData, (int) (entry.getBlockStart(from) - batchStart), entry.getBlockLength(from));
+                int inflated = 0;
+
+                while (!inflater.finished() && inflated < outputSize && !inflater.needsInput()) {
+                    inflated += inflater.inflate(output, inflated, outputSize - inflated);
+                }
+                if (inflated != outputSize || !inflater.finished()) {
+                    throw new RuntimeException(new DataFormatException("Unexpected size of inflated block."));
+                }
+            } catch (DataFormatException e) {
+                throw new RuntimeException(e);
+            } finally {
+                inflaterPool.release(inflater);
+            }
         }
     }
 
 
-    private void decompressWithZlib(byte[] data, int length, OutputStream outputStream)
+    /**
+     * The same inflater is reset and reused for every block, so the block loop does not allocate anything.
+     */
+    private void decompressWithZlib(byte[] data, int offset, int length, OutputStream outputStream)
             throws IOException, DataFormatException {
 
-        Inflater inflater = new Inflater();
-        inflater.setInput(data, 0, length);
+        Inflater inflater = inflaterPool.borrow();
+        try {
+            inflater.setInput(data, offset, length);
+            inflate(inflater, outputStream);
+        } finally {
+            inflaterPool.release(inflater);
+        }
+    }
+
+    private void decompressWithZlib(ByteBuffer data, OutputStream outputStream) throws IOException, DataFormatException {
+        Inflater inflater = inflaterPool.borrow();
+        try {
+            inflater.setInput(data);
+            inflate(inflater, outputStream);
+        } finally {
+            inflaterPool.release(inflater);
+        }
+    }
 
+    private void inflate(Inflater inflater, OutputStream outputStream) throws IOException, DataFormatException {
         while (!inflater.finished()) {
             int numInflatedBytes = inflater.inflate(buffer);
+
+            if (numInflatedBytes == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                throw new DataFormatException("Truncated zlib block.");
+            }
             outputStream.write(buffer, 0, numInflatedBytes);
         }
     }
 
+    private MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Invalid algorithm for calculating sha1 signature.", e);
+        }
+    }
+
     public void abort() {
         abort = true;
     }
 
 
     public void registerListener(EventType eventType, EventListener eventListener) {
-        eventSupport.registerListener(eventType, eventListener);
+        eventBus.registerListener(eventType, eventListener);
+    }
+
+    public void registerListener(EventType eventType, Runnable listener) {
+        eventBus.registerListener(eventType, listener);
+    }
+
+    /**
+     * For {@link EventType#FILE_EXTRACTED}, which gets an {@link ExtractedFileInfo}.
+     */
+    public void registerValueListener(EventType eventType, Consumer<ExtractedFileInfo> listener) {
+        eventBus.registerValueListener(eventType, listener);
+    }
+
+    /**
+     * For {@link EventType#BYTES_EXTRACTED}.
+     */
+    public void registerLongListener(EventType eventType, LongConsumer listener) {
+        eventBus.registerLongListener(eventType, listener);
     }
 
 }
@@ -2,7 +2,6 @@ package net.dbd.demode.pak;
 
 import lombok.AccessLevel;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import net.dbd.demode.pak.domain.*;
 import net.dbd.demode.util.io.RandomAccessFileWriter;
 import org.apache.commons.codec.binary.Hex;
@@ -11,13 +10,15 @@ import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.util.LinkedHashMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import static java.util.stream.Collectors.toList;
@@ -25,7 +26,6 @@ import static java.util.stream.Collectors.toList;
 /**
  * @author Nicky Ramone
  */
-@RequiredArgsConstructor
 public class PakFile {
 
     private static final int BUFFER_SIZE = 8 * 1024;
@@ -37,45 +37,55 @@ public class PakFile {
     @Getter(AccessLevel.PACKAGE)
     private final Pak pak;
     private final transient byte[] buffer = new byte[BUFFER_SIZE];
-    private final transient Map<Path, PakEntry> index = new LinkedHashMap<>(); /* we are interested in keeping the keys
-                                                                                  in order of insertion. */
+    private final transient CompactPakIndex entries;
+    private final transient int mountPointDepth;
+    private final transient Set<Path> filePaths = new FilePathSet();
 
     public PakFile(File file) {
-        this.file = file;
-        this.pak = PakMetaReader.parse(file);
-
-        initIndex();
+        this(file, PakMetaReader.parse(file));
     }
 
-    private void initIndex() {
-        Path mountPoint = pak.getIndex().getMountPoint();
+    /**
+     * @param pak the already parsed metadata of the file (for example, coming from a {@link PakIndexCache}).
+     *            Its index is replaced with a {@link CompactPakIndex} if it isn't one already: files are looked up
+     *            through the name pool of the compact index, and the extractor relies on its slots.
+     */
+    public PakFile(File file, Pak pak) {
+        this.file = file;
+        this.pak = pak;
 
-        for (var pakEntry : pak.getIndex().getEntries()) {
-            Path filePath = mountPoint.resolve(pakEntry.getFilePath()).normalize();
-            index.put(filePath, pakEntry);
+        if (!(pak.getIndex() instanceof CompactPakIndex)) {
+            pak.setIndex(CompactPakIndex.copyOf(pak.getIndex()));
         }
+        this.entries = (CompactPakIndex) pak.getIndex();
+
+        Path mountPoint = entries.getMountPoint();
+        this.mountPointDepth = mountPoint.toString().isEmpty() ? 0 : mountPoint.getNameCount();
     }
 
 
     public void softDeleteFiles(List<Path> filePaths) {
 
         var entriesToRemove = filePaths.stream()
-                .map(index::get)
+                .map(this::getEntry)
                 .collect(toList());
 
         pak.getIndex().getEntries().removeAll(entriesToRemove);
     }
 
     public void renameFilesWithSuffix(List<Path> filePaths, String suffix) {
+        List<PakEntry> pakEntries = filePaths.stream()
+                .map(this::getEntry)
+                .collect(toList());
 
-        for (var filePath : filePaths) {
-            PakEntry pakEntry = index.get(filePath);
+        for (var pakEntry : pakEntries) {
             pakEntry.setFilePath(pakEntry.getFilePath().resolve(suffix));
         }
+        entries.trimToSize();
     }
 
     public void replaceFile(File inputFile, Path packedFilePath) throws Exception {
-        PakEntry fileEntry = index.get(packedFilePath);
+        PakEntry fileEntry = getEntry(packedFilePath);
 
         if (fileEntry.isCompressed()) {
             throw new IllegalArgumentException("Compressed files not supported yet.");
@@ -180,8 +190,11 @@ public class PakFile {
         PakMetaWriter.writeMetadata(this);
     }
 
+    /**
+     * @return the paths of the files of the index, in order. They are not kept in memory, but built while iterating.
+     */
     public Set<Path> getFilePaths() {
-        return index.keySet();
+        return filePaths;
     }
 
     public PakInfo getInfo() {
@@ -192,16 +205,84 @@ public class PakFile {
         return pak.getIndex();
     }
 
+    /**
+     * @return null if the pak has no such file.
+     */
     public PakEntry getEntry(Path filePath) {
-        return index.get(filePath);
+        int slot = findSlot(filePath);
+        return slot != CompactPakIndex.NO_SLOT ? entries.getEntryAtSlot(slot) : null;
+    }
+
+    /**
+     * Opens a file of the pak for reading, without extracting it. Compressed files are inflated lazily, block by block.
+     */
+    public PakEntryChannel openChannel(Path filePath) throws IOException {
+        PakEntry entry = getEntry(filePath);
+
+        if (entry == null) {
+            throw new NoSuchFileException(filePath.toString());
+        }
+        return PakEntryChannel.open(file, entry);
+    }
+
+    public InputStream openInputStream(Path filePath) throws IOException {
+        return new PakEntryInputStream(openChannel(filePath));
     }
 
     public long getFileSize(Path filePath) {
-        return index.get(filePath).getSize();
+        return getEntry(filePath).getSize();
     }
 
     public String getFileHash(Path filePath) {
-        return index.get(filePath).getHash();
+        return getEntry(filePath).getHash();
+    }
+
+
+    private int findSlot(Path filePath) {
+        if (mountPointDepth == 0) {
+            return entries.findSlot(filePath);
+        }
+
+        int depth = filePath.getNameCount();
+        if (depth <= mountPointDepth || !filePath.startsWith(entries.getMountPoint())) {
+            return CompactPakIndex.NO_SLOT;
+        }
+
+        return entries.findSlot(filePath.subpath(mountPointDepth, depth));
+    }
+
+
+    /**
+     * The paths of the files, relative to the working dir (that is, resolved against the mount point).
+     */
+    private final class FilePathSet extends AbstractSet<Path> {
+
+        @Override
+        public Iterator<Path> iterator() {
+            Iterator<PakEntry> entryIterator = entries.getEntries().iterator();
+
+            return new Iterator<>() {
+                @Override
+                public boolean hasNext() {
+                    return entryIterator.hasNext();
+                }
+
+                @Override
+                public Path next() {
+                    return entries.getMountPoint().resolve(entryIterator.next().getFilePath()).normalize();
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return entries.getEntries().size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Path && findSlot((Path) o) != CompactPakIndex.NO_SLOT;
+        }
     }
 
 }
@@ -0,0 +1,237 @@
+package net.dbd.demode.pak;
+
+import lombok.RequiredArgsConstructor;
+import net.dbd.demode.pak.domain.*;
+import net.dbd.demode.util.io.RandomAccessFileWriter;
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.*;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+/**
+ * Writes synthetic paks, which {@link PakMetaReader} and {@link PakExtractor} handle just like the ones of the game,
+ * so that performance can be measured (and things can be tried out) without a DBD installation.
+ * <p>
+ * The data of the entries comes first, each entry after an empty entry header, followed by the index and the footer.
+ * Content is pseudo-random and it's generated block by block while it's written, so paks of any size can be generated
+ * with little memory. The same options and seed always give the same pak.
+ *
+ * @author Nicky Ramone
+ */
+@RequiredArgsConstructor
+public class PakGenerator {
+
+    private static final int PAK_VERSION = 8;
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final int WRITE_BUFFER_SIZE = 1024 * 1024;
+    private static final String[] TOP_LEVEL_DIRS =
+            {"Characters", "Environment", "Effects", "Audio", "UI", "Maps", "Blueprints", "Materials"};
+    private static final String[] SUB_DIRS =
+            {"Meshes", "Textures", "Animations", "Materials", "Sounds", "Data", "Common", "Props"};
+    private static final int DIRS_PER_NAME = 3;
+    private static final String[] FILE_EXTENSIONS = {".uasset", ".uasset", ".uexp", ".uexp", ".ubulk"};
+    private static final byte[] ENTRY_HEADER = new byte[PakConstants.BYTES_BETWEEN_LAST_ENTRY_AND_INDEX];
+    private static final int BLOCK_POOL_SIZE = 32;
+    private static final int MIN_RUN_LENGTH = 16;
+    private static final int MAX_RUN_LENGTH = 256;
+
+    private final PakGeneratorOptions options;
+
+
+    /**
+     * @return the metadata of the pak, as {@link PakMetaReader} would read it.
+     */
+    public Pak generate(File pakFile, long seed) throws IOException {
+        validateOptions();
+
+        var random = new Random(seed);
+        var index = new PakIndex();
+        index.setMountPoint(Path.of(options.getMountPoint()));
+        long indexOffset;
+
+        try (var writer = new EntryWriter(pakFile, random)) {
+            for (int i = 0; i < options.getNumEntries(); i++) {
+                PakEntry entry = new PakEntry();
+                entry.setFilePath(generatePath(random, i));
+                entry.setSize(generateEntrySize(random));
+                entry.setCompressed(random.nextDouble() < options.getCompressedRatio());
+
+                writer.write(entry, random);
+                index.addEntry(entry);
+            }
+            indexOffset = writer.position;
+        }
+
+        var pakInfo = new PakInfo();
+        pakInfo.setVersion(PAK_VERSION);
+        pakInfo.setIndexOffset(indexOffset);
+
+        var pak = new Pak();
+        pak.setInfo(pakInfo);
+        pak.setIndex(index);
+        writeMetadata(pakFile, pak);
+
+        return pak;
+    }
+
+    private void validateOptions() {
+        if (options.getNumEntries() < 0
+                || options.getCompressedRatio() < 0 || options.getCompressedRatio() > 1
+                || options.getMinEntrySize() < 1 || options.getMinEntrySize() > options.getMaxEntrySize()
+                || options.getMinPathDepth() < 1 || options.getMinPathDepth() > options.getMaxPathDepth()) {
+            throw new IllegalArgumentException("Invalid pak generator options: " + options);
+        }
+    }
+
+
+    private Path generatePath(Random random, int entryNumber) {
+        int depth = options.getMinPathDepth() + random.nextInt(options.getMaxPathDepth() - options.getMinPathDepth() + 1);
+        Path path = Path.of(TOP_LEVEL_DIRS[random.nextInt(TOP_LEVEL_DIRS.length)]);
+
+        for (int i = 1; i < depth; i++) {
+            path = path.resolve(SUB_DIRS[random.nextInt(SUB_DIRS.length)] + random.nextInt(DIRS_PER_NAME));
+        }
+
+        return path.resolve("Asset_" + entryNumber + FILE_EXTENSIONS[random.nextInt(FILE_EXTENSIONS.length)]);
+    }
+
+    private long generateEntrySize(Random random) {
+        double size = options.getMedianEntrySize() * Math.exp(options.getEntrySizeSpread() * random.nextGaussian());
+
+        return Math.max(options.getMinEntrySize(), Math.min(options.getMaxEntrySize(), Math.round(size)));
+    }
+
+    private void writeMetadata(File pakFile, Pak pak) throws IOException {
+        try (var raf = new RandomAccessFileWriter(pakFile, RandomAccessFileWriter.Endianness.LITTLE_ENDIAN)) {
+            PakMetaWriter.writeIndex(raf, pak);
+            raf.writeNullBytes(PakConstants.BYTES_BETWEEN_INDEX_AND_PAK_INFO);
+            PakMetaWriter.writePakInfo(raf, pak);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to write pak metadata: " + pakFile, e);
+        }
+    }
+
+
+    /**
+     * Writes the data of the entries, filling in their offsets, sizes, blocks and hashes.
+     * <p>
+     * Deflating is much slower than writing, so full blocks are taken from a small pool of blocks that are generated
+     * and compressed up front; only the last block of each entry, which is usually partial, is compressed on the fly.
+     */
+    private final class EntryWriter implements Closeable {
+        private final OutputStream out;
+        private final Deflater deflater = new Deflater(options.getCompressionLevel());
+        private final MessageDigest digest = createDigest();
+        private final byte[][] rawBlocks = new byte[BLOCK_POOL_SIZE][BLOCK_SIZE];
+        private final byte[][] compressedBlocks = new byte[BLOCK_POOL_SIZE][];
+        private final byte[] deflateBuffer = new byte[BLOCK_SIZE];
+        private long position;
+
+
+        EntryWriter(File pakFile, Random random) throws IOException {
+            for (int i = 0; i < BLOCK_POOL_SIZE; i++) {
+                fillBlock(rawBlocks[i], random);
+                compressedBlocks[i] = deflate(rawBlocks[i], BLOCK_SIZE);
+            }
+            out = new BufferedOutputStream(new FileOutputStream(pakFile), WRITE_BUFFER_SIZE);
+        }
+
+        /**
+         * The hash of a compressed entry is the hash of its compressed blocks, whose offsets are relative to the entry.
+         */
+        void write(PakEntry entry, Random random) throws IOException {
+            write(ENTRY_HEADER);
+            entry.setOffset(position);
+            digest.reset();
+
+            long storedSize = 0;
+
+            for (long remaining = entry.getSize(); remaining > 0; ) {
+                int blockLength = (int) Math.min(BLOCK_SIZE, remaining);
+                int poolIndex = random.nextInt(BLOCK_POOL_SIZE);
+
+                if (entry.isCompressed()) {
+                    byte[] compressedBlock = blockLength == BLOCK_SIZE
+                            ? compressedBlocks[poolIndex]
+                            : deflate(rawBlocks[poolIndex], blockLength);
+                    write(compressedBlock);
+                    entry.getBlocks().add(new PakCompressedBlock(storedSize, storedSize + compressedBlock.length));
+                    storedSize += compressedBlock.length;
+                } else {
+                    out.write(rawBlocks[poolIndex], 0, blockLength);
+                    digest.update(rawBlocks[poolIndex], 0, blockLength);
+                    position += blockLength;
+                    storedSize += blockLength;
+                }
+                remaining -= blockLength;
+            }
+
+            entry.setCompressedSize(storedSize);
+            entry.setBlockSize(entry.isCompressed() ? (int) Math.min(BLOCK_SIZE, entry.getSize()) : 0);
+            entry.setHash(Hex.encodeHexString(digest.digest()));
+        }
+
+        /**
+         * Runs of random bytes (6 bits of entropy each) mixed with copies of earlier runs, so that the data compresses
+         * to about half its size, like the assets of the game.
+         */
+        private void fillBlock(byte[] block, Random random) {
+            int offset = 0;
+
+            while (offset < block.length) {
+                int runLength = Math.min(block.length - offset,
+                        MIN_RUN_LENGTH + random.nextInt(MAX_RUN_LENGTH - MIN_RUN_LENGTH));
+
+                if (offset > runLength && random.nextBoolean()) {
+                    System.arraycopy(block, random.nextInt(offset - runLength), block, offset, runLength);
+                } else {
+                    for (int i = offset; i < offset + runLength; i++) {
+                        block[i] = (byte) random.nextInt(64);
+                    }
+                }
+                offset += runLength;
+            }
+        }
+
+        private byte[] deflate(byte[] data, int length) {
+            var compressedData = new ByteArrayOutputStream(length);
+
+            deflater.reset();
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+
+            while (!deflater.finished()) {
+                compressedData.write(deflateBuffer, 0, deflater.deflate(deflateBuffer));
+            }
+
+            return compressedData.toByteArray();
+        }
+
+        private void write(byte[] bytes) throws IOException {
+            out.write(bytes);
+            digest.update(bytes);
+            position += bytes.length;
+        }
+
+        @Override
+        public void close() throws IOException {
+            deflater.end();
+            out.close();
+        }
+    }
+
+    private static MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Invalid hash algorithm.", e);
+        }
+    }
+
+}
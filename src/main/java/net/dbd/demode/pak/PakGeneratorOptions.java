@@ -0,0 +1,35 @@
+package net.dbd.demode.pak;
+
+import lombok.Data;
+
+import java.util.zip.Deflater;
+
+/**
+ * What the paks written by {@link PakGenerator} look like.
+ * The defaults resemble the paks of the game: mostly small files and a few big ones, half of them compressed.
+ *
+ * @author Nicky Ramone
+ */
+@Data
+public class PakGeneratorOptions {
+
+    private String mountPoint = "../../../DeadByDaylight/Content/";
+    private int numEntries = 1000;
+
+    /* fraction of the entries that are compressed (in 64 KiB blocks); the rest are stored raw */
+    private double compressedRatio = 0.5;
+
+    /* entry sizes follow a log-normal distribution, clamped to [min, max] */
+    private long medianEntrySize = 24 * 1024;
+    private double entrySizeSpread = 1.8;       // sigma of the log of the size; 0 for all entries of the median size
+    private long minEntrySize = 16;
+    private long maxEntrySize = 64 * 1024 * 1024;
+
+    /* number of directories above each file, below the mount point */
+    private int minPathDepth = 2;
+    private int maxPathDepth = 7;
+
+    /* the extracted data is the same with any level; higher ones just take longer and give smaller paks */
+    private int compressionLevel = Deflater.BEST_SPEED;
+
+}
@@ -0,0 +1,173 @@
+package net.dbd.demode.pak;
+
+import lombok.extern.slf4j.Slf4j;
+import net.dbd.demode.pak.domain.*;
+import net.dbd.demode.util.io.MappedFileReader;
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+/**
+ * Keeps a compact binary copy of the pak indexes on disk, so that we don't have to parse all the paks on every start.
+ * <p>
+ * A cached index is only used if the pak file has the same size, modification time and index hash as when it was
+ * cached. Otherwise, the pak is parsed again and the cache file is replaced.
+ * <p>
+ * Problems with the cache are never fatal: in the worst case we just parse the pak like we would without a cache.
+ * <p>
+ * Indexes are always returned as {@link CompactPakIndex}, as they are kept in memory for as long as the app runs.
+ * The cache holds the arrays of the compact index as they are, so loading it is mostly a bulk copy out of the mapped
+ * file, without building any object per entry.
+ *
+ * @author Nicky Ramone
+ */
+@Slf4j
+public class PakIndexCache {
+
+    private static final int MAGIC = 0x44504943;    // "DPIC"
+    private static final int FORMAT_VERSION = 2;
+    private static final int HASH_LENGTH = 20;
+    private static final String CACHE_FILE_EXTENSION = ".idx";
+
+    private final Path cacheDir;
+
+
+    public PakIndexCache(Path cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+
+    /**
+     * @return the metadata of the pak, from the cache if it's still valid; otherwise, freshly parsed.
+     */
+    public Pak getPak(File pakFile) {
+        Path cacheFile = getCacheFile(pakFile);
+        PakInfo pakInfo = PakMetaReader.parseInfo(pakFile);
+
+        if (Files.exists(cacheFile)) {
+            try {
+                Pak pak = readCache(cacheFile, pakFile, pakInfo);
+                if (pak != null) {
+                    return pak;
+                }
+            } catch (IOException | RuntimeException e) {
+                log.warn("Failed to read cached index of {}", pakFile, e);
+            }
+        }
+
+        Pak pak = PakMetaReader.parse(pakFile);
+
+        try {
+            writeCache(cacheFile, pakFile, pak);
+        } catch (IOException e) {
+            log.warn("Failed to cache index of {}", pakFile, e);
+        }
+
+        return pak;
+    }
+
+
+    /**
+     * Paks with the same name can exist in several installations, so the name of the cache file also includes
+     * a checksum of the directory.
+     */
+    private Path getCacheFile(File pakFile) {
+        CRC32 crc = new CRC32();
+        crc.update(pakFile.getAbsoluteFile().getParent().getBytes(StandardCharsets.UTF_8));
+
+        return cacheDir.resolve(String.format("%s-%08x%s", pakFile.getName(), crc.getValue(), CACHE_FILE_EXTENSION));
+    }
+
+
+    private Pak readCache(Path cacheFile, File pakFile, PakInfo pakInfo) throws IOException {
+        try (MappedFileReader reader = new MappedFileReader(cacheFile.toFile())) {
+
+            if (reader.readInt() != MAGIC || reader.readInt() != FORMAT_VERSION
+                    || reader.readLong() != pakFile.length() || reader.readLong() != pakFile.lastModified()) {
+                return null;
+            }
+
+            PakInfo cachedInfo = new PakInfo();
+            cachedInfo.setVersion(reader.readInt());
+            cachedInfo.setIndexOffset(reader.readLong());
+            cachedInfo.setIndexSize(reader.readLong());
+            cachedInfo.setIndexHash(reader.readHexString(HASH_LENGTH));
+
+            if (!cachedInfo.equals(pakInfo)) {
+                return null;
+            }
+
+            Path mountPoint = Path.of(readString(reader));
+            long position = reader.getPosition();
+            CompactPakIndex pakIndex = CompactPakIndex.readFrom(reader.slice(position, (int) (reader.getFileSize() - position)));
+            pakIndex.setMountPoint(mountPoint);
+
+            Pak pak = new Pak();
+            pak.setInfo(cachedInfo);
+            pak.setIndex(pakIndex);
+
+            return pak;
+        }
+    }
+
+    private String readString(MappedFileReader reader) {
+        return reader.readString(reader.readInt());
+    }
+
+
+    /**
+     * The file is written to a temporary file first and then renamed, so a crash can never leave a half-written
+     * cache behind.
+     */
+    private void writeCache(Path cacheFile, File pakFile, Pak pak) throws IOException {
+        Files.createDirectories(cacheDir);
+        Path tempFile = Files.createTempFile(cacheDir, pakFile.getName(), ".tmp");
+
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile.toFile())))) {
+                out.writeInt(MAGIC);
+                out.writeInt(FORMAT_VERSION);
+                out.writeLong(pakFile.length());
+                out.writeLong(pakFile.lastModified());
+
+                PakInfo pakInfo = pak.getInfo();
+                out.writeInt(pakInfo.getVersion());
+                out.writeLong(pakInfo.getIndexOffset());
+                out.writeLong(pakInfo.getIndexSize());
+                writeHash(out, pakInfo.getIndexHash());
+
+                CompactPakIndex pakIndex = (CompactPakIndex) pak.getIndex();
+                writeString(out, pakIndex.getMountPoint().toString());
+                pakIndex.writeTo(out);
+            }
+
+            Files.move(tempFile, cacheFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    /**
+     * Paths in paks are plain ASCII, same as when we read them with {@link PakMetaReader}.
+     */
+    private void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.US_ASCII);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void writeHash(DataOutputStream out, String hash) throws IOException {
+        try {
+            out.write(Hex.decodeHex(hash));
+        } catch (DecoderException e) {
+            throw new IOException("Invalid hash: " + hash, e);
+        }
+    }
+
+}
@@ -2,6 +2,8 @@ package net.dbd.demode.pak;
 
 import lombok.experimental.UtilityClass;
 import net.dbd.demode.pak.domain.*;
+import net.dbd.demode.util.io.BinaryFileReader;
+import net.dbd.demode.util.io.MappedFileReader;
 import net.dbd.demode.util.io.RandomAccessFileReader;
 import org.apache.commons.codec.binary.Hex;
 
@@ -28,12 +30,20 @@ public class PakMetaReader {
     }
 
     public Pak parse(File pakFilename, Path mountPointsRoot) {
+        return parse(pakFilename, mountPointsRoot, true);
+    }
+
+    /**
+     * @param compactIndex whether to read the index into a {@link CompactPakIndex}, which is what the app keeps in
+     *                     memory; or into a regular {@link PakIndex}, with a {@link PakEntry} object per entry.
+     */
+    public Pak parse(File pakFilename, Path mountPointsRoot, boolean compactIndex) {
         Pak pak = new Pak();
 
         try {
-            try (RandomAccessFileReader reader = new RandomAccessFileReader(pakFilename, IS_LITTLE_ENDIAN)) {
+            try (BinaryFileReader reader = openReader(pakFilename)) {
                 pak.setInfo(readFooter(reader));
-                pak.setIndex(readIndex(reader, pak.getInfo().getIndexOffset(), mountPointsRoot));
+                pak.setIndex(readIndex(reader, pak.getInfo().getIndexOffset(), mountPointsRoot, compactIndex));
             }
         } catch (IOException e) {
             throw new RuntimeException("Failed to parse file.", e);
@@ -43,7 +53,32 @@ public class PakMetaReader {
     }
 
 
-    private PakInfo readFooter(RandomAccessFileReader reader) throws IOException {
+    /**
+     * Reads just the footer, which is enough to tell whether the index has changed.
+     */
+    public PakInfo parseInfo(File pakFilename) {
+        try (BinaryFileReader reader = new RandomAccessFileReader(pakFilename, IS_LITTLE_ENDIAN)) {
+            return readFooter(reader);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to parse file.", e);
+        }
+    }
+
+
+    /**
+     * The index is read from a memory-mapped view of the file, which saves us most of the read syscalls.
+     * If the file cannot be mapped, we go back to buffered reads.
+     */
+    private BinaryFileReader openReader(File pakFilename) throws IOException {
+        try {
+            return new MappedFileReader(pakFilename, IS_LITTLE_ENDIAN);
+        } catch (IOException e) {
+            return new RandomAccessFileReader(pakFilename, IS_LITTLE_ENDIAN);
+        }
+    }
+
+
+    private PakInfo readFooter(BinaryFileReader reader) throws IOException {
         reader.eof();
         reader.seek(PakConstants.PAK_INFO_OFFSET_FROM_EOF);
 
@@ -61,33 +96,77 @@ public class PakMetaReader {
     }
 
 
-    private PakIndex readIndex(RandomAccessFileReader reader, long tocOffset, Path mountPointsRoot) throws IOException {
-        PakIndex pakIndex = new PakIndex();
+    private PakIndex readIndex(BinaryFileReader reader, long tocOffset, Path mountPointsRoot, boolean compactIndex)
+            throws IOException {
         reader.seek(tocOffset);
-        readMountPoint(reader, pakIndex, mountPointsRoot);
-        readIndexEntries(reader, pakIndex);
+        Path mountPoint = readMountPoint(reader, mountPointsRoot);
+        int numFiles = reader.readInt();
+        PakIndex pakIndex;
+
+        if (compactIndex) {
+            CompactPakIndex compactPakIndex = new CompactPakIndex(numFiles);
+            readIndexEntries(reader, numFiles, compactPakIndex);
+            pakIndex = compactPakIndex;
+        } else {
+            pakIndex = new PakIndex();
+            readIndexEntries(reader, numFiles, pakIndex);
+        }
+        pakIndex.setMountPoint(mountPoint);
 
         return pakIndex;
     }
 
-    private void readMountPoint(RandomAccessFileReader reader, PakIndex pakIndex, Path mountPointsRoot) throws IOException {
+    private Path readMountPoint(BinaryFileReader reader, Path mountPointsRoot) throws IOException {
         int entrySize = reader.readInt() - 1;
         String entryName = reader.readString(entrySize);
         reader.skip(1); // null terminator
 
-        Path normalizedMountPath = mountPointsRoot.resolve(entryName).normalize();
-        pakIndex.setMountPoint(normalizedMountPath);
+        return mountPointsRoot.resolve(entryName).normalize();
     }
 
-    private void readIndexEntries(RandomAccessFileReader reader, PakIndex pakIndex) throws IOException {
-        int numFiles = reader.readInt();
-
+    private void readIndexEntries(BinaryFileReader reader, int numFiles, PakIndex pakIndex) throws IOException {
         for (int i = 0; i < numFiles; i++) {
             pakIndex.addEntry(readIndexEntry(reader));
         }
     }
 
-    private PakEntry readIndexEntry(RandomAccessFileReader reader) throws IOException {
+    /**
+     * Same as {@link #readIndexEntry(BinaryFileReader)}, but the fields go straight into the arrays of the index.
+     */
+    private void readIndexEntries(BinaryFileReader reader, int numFiles, CompactPakIndex pakIndex) throws IOException {
+        byte[] hash = new byte[20];
+        long[] blockOffsets = new long[0];
+
+        for (int i = 0; i < numFiles; i++) {
+            String filePath = readPakString(reader);
+            long offset = reader.readLong();
+            long compressedSize = reader.readLong();
+            long size = reader.readLong();
+            boolean compressed = readCompressionFlag(reader);
+            reader.read(hash, hash.length);
+            int numBlocks = 0;
+
+            if (compressed) {
+                numBlocks = Math.max(reader.readInt(), 0);
+                if (2 * numBlocks > blockOffsets.length) {
+                    blockOffsets = new long[2 * numBlocks];
+                }
+                for (int j = 0; j < 2 * numBlocks; j++) {
+                    blockOffsets[j] = reader.readLong();
+                }
+            }
+
+            if (reader.read() != 0) {
+                throw new RuntimeException("Unsupported file encryption.");
+            }
+
+            int blockSize = reader.readInt();
+            pakIndex.addEntry(filePath, offset, compressedSize, size, compressed, hash, blockOffsets, numBlocks, false, blockSize);
+        }
+        pakIndex.trimToSize();
+    }
+
+    private PakEntry readIndexEntry(BinaryFileReader reader) throws IOException {
         PakEntry entry = new PakEntry();
 
         entry.setFilePath(Path.of(readPakString(reader)));
@@ -113,7 +192,7 @@ public class PakMetaReader {
     }
 
 
-    private boolean readCompressionFlag(RandomAccessFileReader reader) throws IOException {
+    private boolean readCompressionFlag(BinaryFileReader reader) throws IOException {
         int compressionFlags = reader.readInt();
 
         if (compressionFlags != 0 && compressionFlags != 1) {
@@ -124,7 +203,7 @@ public class PakMetaReader {
     }
 
 
-    private String readPakString(RandomAccessFileReader reader) throws IOException {
+    private String readPakString(BinaryFileReader reader) throws IOException {
         int length = reader.readInt() - 1;
         String string = reader.readString(length);
         reader.skip(1); // null terminator
@@ -133,7 +212,7 @@ public class PakMetaReader {
     }
 
 
-    private List<PakCompressedBlock> readFileBlockDescriptors(RandomAccessFileReader reader) throws IOException {
+    private List<PakCompressedBlock> readFileBlockDescriptors(BinaryFileReader reader) throws IOException {
         List<PakCompressedBlock> blocks = new ArrayList<>();
         int numBlocks = reader.readInt();
 
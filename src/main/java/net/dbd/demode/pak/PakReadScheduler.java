@@ -0,0 +1,114 @@
+package net.dbd.demode.pak;
+
+import lombok.Getter;
+import lombok.experimental.UtilityClass;
+import net.dbd.demode.pak.domain.PakEntry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Plans the reads needed for extracting a set of entries from a pak.
+ * <p>
+ * The index is only "mostly" sorted by offset, so extracting in index order can make the disk jump back and forth.
+ * Entries are sorted by their physical position instead, and small entries that are close to each other are merged
+ * into a single read, so that HDDs and network drives can stream the pak.
+ *
+ * @author Nicky Ramone
+ */
+@UtilityClass
+class PakReadScheduler {
+
+    static final int MAX_MERGED_ENTRY_SIZE = 1024 * 1024;   // bigger entries are always read on their own
+    static final int MAX_BATCH_SIZE = 8 * 1024 * 1024;
+    static final int MAX_GAP = 64 * 1024;                   // max bytes to read (and throw away) between two entries
+
+
+    /**
+     * A range of the pak file that is read in one go, and the entries whose data lie completely inside it.
+     */
+    @Getter
+    static final class ReadBatch {
+        private final long start;
+        private long end;
+        private final List<PakEntry> entries = new ArrayList<>();
+
+        private ReadBatch(PakEntry entry) {
+            start = dataStart(entry);
+            add(entry);
+        }
+
+        private void add(PakEntry entry) {
+            entries.add(entry);
+            end = Math.max(end, dataEnd(entry));
+        }
+
+        int length() {
+            return (int) (end - start);
+        }
+
+        boolean isMerged() {
+            return entries.size() > 1;
+        }
+    }
+
+
+    /**
+     * @param mergeReads whether close entries should be merged. If false, we just get one batch per entry,
+     *                   in offset order.
+     */
+    List<ReadBatch> schedule(Collection<PakEntry> entries, boolean mergeReads) {
+        List<PakEntry> sortedEntries = new ArrayList<>(entries);
+        sortedEntries.sort(Comparator.comparingLong(PakReadScheduler::dataStart));
+
+        List<ReadBatch> batches = new ArrayList<>();
+        ReadBatch currentBatch = null;
+
+        for (PakEntry entry : sortedEntries) {
+            if (currentBatch != null && mergeReads && canBeMerged(currentBatch, entry)) {
+                currentBatch.add(entry);
+            } else {
+                currentBatch = new ReadBatch(entry);
+                batches.add(currentBatch);
+            }
+        }
+
+        return batches;
+    }
+
+    private boolean canBeMerged(ReadBatch batch, PakEntry entry) {
+        long entryStart = dataStart(entry);
+        long entryEnd = dataEnd(entry);
+
+        return entryEnd - entryStart <= MAX_MERGED_ENTRY_SIZE
+                && (batch.isMerged() || batch.length() <= MAX_MERGED_ENTRY_SIZE)
+                && entryStart - batch.end <= MAX_GAP
+                && entryEnd - batch.start <= MAX_BATCH_SIZE;
+    }
+
+
+    /**
+     * Absolute offset of the first byte of entry data in the pak.
+     */
+    long dataStart(PakEntry entry) {
+        if (entry.getBlockCount() == 0) {
+            return entry.getOffset();
+        }
+        return entry.getOffset() + entry.getBlockStart(0);
+    }
+
+    /**
+     * Absolute offset right after the last byte of entry data in the pak.
+     */
+    long dataEnd(PakEntry entry) {
+        int numBlocks = entry.getBlockCount();
+
+        if (numBlocks == 0) {
+            return entry.getOffset() + entry.getSize();
+        }
+        return entry.getOffset() + entry.getBlockEnd(numBlocks - 1);
+    }
+
+}
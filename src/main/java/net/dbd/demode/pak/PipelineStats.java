@@ -0,0 +1,99 @@
+package net.dbd.demode.pak;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Live counters of a pipelined extraction (see {@link ExtractionOptions#isPipelined()}).
+ * <p>
+ * Each stage reports how many bytes it processed and how long it was busy, which gives its throughput.
+ * The time the reader spends blocked on a full queue and the time the writer spends waiting for data tell which side
+ * of the pipeline is the bottleneck.
+ *
+ * @author Nicky Ramone
+ */
+public class PipelineStats {
+
+    private static final double MB = 1000 * 1000;
+
+    final AtomicLong bytesRead = new AtomicLong();
+    final AtomicLong readNanos = new AtomicLong();
+    final AtomicLong readBlockedNanos = new AtomicLong();
+    final AtomicLong bytesInflated = new AtomicLong();
+    final AtomicLong inflateNanos = new AtomicLong();
+    final AtomicLong bytesWritten = new AtomicLong();
+    final AtomicLong writeNanos = new AtomicLong();
+    final AtomicLong writeWaitingNanos = new AtomicLong();
+
+    private volatile Collection<?> inflateQueue;
+    private volatile Collection<?> writeQueue;
+
+
+    void attachQueues(Collection<?> inflateQueue, Collection<?> writeQueue) {
+        this.inflateQueue = inflateQueue;
+        this.writeQueue = writeQueue;
+    }
+
+    public int getInflateQueueDepth() {
+        Collection<?> queue = inflateQueue;
+        return queue != null ? queue.size() : 0;
+    }
+
+    public int getWriteQueueDepth() {
+        Collection<?> queue = writeQueue;
+        return queue != null ? queue.size() : 0;
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getBytesInflated() {
+        return bytesInflated.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /**
+     * @return MB/s while the reader was actually reading.
+     */
+    public double getReadThroughput() {
+        return throughput(bytesRead, readNanos);
+    }
+
+    /**
+     * @return MB/s of inflated output, adding up the busy time of all inflate workers.
+     */
+    public double getInflateThroughput() {
+        return throughput(bytesInflated, inflateNanos);
+    }
+
+    public double getWriteThroughput() {
+        return throughput(bytesWritten, writeNanos);
+    }
+
+    public long getReadBlockedMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(readBlockedNanos.get());
+    }
+
+    public long getWriteWaitingMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(writeWaitingNanos.get());
+    }
+
+    private double throughput(AtomicLong bytes, AtomicLong nanos) {
+        long busyNanos = nanos.get();
+        return busyNanos == 0 ? 0 : bytes.get() / MB / (busyNanos / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("read: %.1f MB/s (blocked %d ms); inflate: %.1f MB/s (queue: %d); "
+                        + "write: %.1f MB/s (waiting %d ms, queue: %d)",
+                getReadThroughput(), getReadBlockedMillis(), getInflateThroughput(), getInflateQueueDepth(),
+                getWriteThroughput(), getWriteWaitingMillis(), getWriteQueueDepth());
+    }
+
+}
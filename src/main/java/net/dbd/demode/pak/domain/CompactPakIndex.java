@@ -0,0 +1,831 @@
+package net.dbd.demode.pak.domain;
+
+import org.apache.commons.codec.DecoderException;
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * An index that keeps the entries in primitive arrays instead of one object graph per entry
+ * (a {@link PakEntry}, its path, its hash string, its list of blocks...), which takes a fraction of the memory.
+ * <p>
+ * Entries are exposed as lightweight {@link PakEntry} views over the arrays, so the rest of the code can use this index
+ * like any other. Views are created on the fly, and setting a property on a view writes it back to the arrays.
+ * Paths are split in directory and file name: directories are pooled, since most of them are shared by many entries.
+ * The compressed blocks of all the entries are stored together in a single table.
+ * <p>
+ * Entries can be added and removed like in a regular index. Views keep pointing to the same entry after removing
+ * others: each entry has a slot, which never changes, so holders of many entries can keep their slots instead of
+ * views. Views answer the block and hash shortcuts of {@link PakEntry} straight from the arrays.
+ * <p>
+ * Parsers fill the index field by field (see {@link #addEntry(String, long, long, long, boolean, byte[], long[], int,
+ * boolean, int)}), so no {@link PakEntry} is ever built for it. Entries are looked up by path through a hash table over
+ * the directory ids and the name pool, built on the first lookup, instead of a map with one path per entry.
+ * <p>
+ * The arrays can be saved and loaded as they are (see {@link #writeTo(DataOutput)}), which is how pak indexes are
+ * cached.
+ *
+ * @author Nicky Ramone
+ */
+public class CompactPakIndex extends PakIndex {
+
+    public static final int NO_SLOT = -1;
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int HASH_LENGTH = 20;
+    private static final int NO_DIRECTORY = -1;
+    private static final char SEPARATOR = '/';
+    private static final byte FLAG_COMPRESSED = 1;
+    private static final byte FLAG_ENCRYPTED = 2;
+
+    // entry data, indexed by slot. Slots are never reused, so views stay valid after removals.
+    private int numSlots;
+    private long[] offsets;
+    private long[] compressedSizes;
+    private long[] sizes;
+    private byte[] hashes;
+    private byte[] flags;
+    private int[] blockSizes;
+    private int[] directoryIds;
+    private int[] nameOffsets;
+    private int[] nameLengths;
+    private int[] firstBlocks;
+    private int[] blockCounts;
+
+    // slots of the entries that are part of the index, in index order
+    private int numEntries;
+    private int[] entrySlots;
+
+    // string pool. Directories use '/' as separator, like in the pak.
+    private final List<String> directories = new ArrayList<>();
+    private final Map<String, Integer> directoryIdsByName = new HashMap<>();
+    private byte[] names;
+    private int namesLength;
+
+    // block table: start and end offsets of each block, one after the other
+    private long[] blocks;
+    private int numBlocks;
+
+    // open addressing table of the slots of the entries, by path (slot + 1, 0 if empty). Null until the first lookup.
+    private volatile int[] slotTable;
+
+    private final EntryList entryList = new EntryList();
+
+
+    public CompactPakIndex() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param capacity number of entries the index will hold, so that the arrays are not grown while filling it.
+     */
+    public CompactPakIndex(int capacity) {
+        capacity = Math.max(capacity, 1);
+        offsets = new long[capacity];
+        compressedSizes = new long[capacity];
+        sizes = new long[capacity];
+        hashes = new byte[capacity * HASH_LENGTH];
+        flags = new byte[capacity];
+        blockSizes = new int[capacity];
+        directoryIds = new int[capacity];
+        nameOffsets = new int[capacity];
+        nameLengths = new int[capacity];
+        firstBlocks = new int[capacity];
+        blockCounts = new int[capacity];
+        entrySlots = new int[capacity];
+        names = new byte[capacity * 32];
+        blocks = new long[capacity * 2];
+    }
+
+    public static CompactPakIndex copyOf(PakIndex pakIndex) {
+        CompactPakIndex compactIndex = new CompactPakIndex(pakIndex.getEntries().size());
+        compactIndex.setMountPoint(pakIndex.getMountPoint());
+        pakIndex.getEntries().forEach(compactIndex::addEntry);
+        compactIndex.trimToSize();
+
+        return compactIndex;
+    }
+
+
+    @Override
+    public List<PakEntry> getEntries() {
+        return entryList;
+    }
+
+    @Override
+    public void setEntries(List<PakEntry> entries) {
+        List<PakEntry> entriesCopy = new ArrayList<>(entries);
+        numEntries = 0;
+        slotTable = null;
+        entriesCopy.forEach(this::addEntry);
+    }
+
+    /**
+     * The entry is copied: further changes to it will not be reflected in the index.
+     */
+    @Override
+    public void addEntry(PakEntry entry) {
+        int slot = newSlot();
+
+        offsets[slot] = entry.getOffset();
+        compressedSizes[slot] = entry.getCompressedSize();
+        sizes[slot] = entry.getSize();
+        blockSizes[slot] = entry.getBlockSize();
+        flags[slot] = toFlags(entry.isCompressed(), entry.isEncrypted());
+        setFilePath(slot, entry.getFilePath());
+        setHash(slot, entry.getHash());
+        setBlocks(slot, entry.getBlocks());
+        appendEntrySlot(slot);
+    }
+
+    /**
+     * Adds an entry straight from the fields of the pak, without building a {@link PakEntry} for it.
+     * The arrays are copied, so the caller can reuse them for the next entry.
+     *
+     * @param filePath     path of the file relative to the mount point, with '/' as separator.
+     * @param hash         SHA-1 of the data, 20 bytes.
+     * @param blockOffsets start and end offset of each block, one after the other.
+     */
+    public void addEntry(String filePath, long offset, long compressedSize, long size, boolean compressed,
+                         byte[] hash, long[] blockOffsets, int blockCount, boolean encrypted, int blockSize) {
+        int slot = newSlot();
+
+        offsets[slot] = offset;
+        compressedSizes[slot] = compressedSize;
+        sizes[slot] = size;
+        blockSizes[slot] = blockSize;
+        flags[slot] = toFlags(compressed, encrypted);
+        setFilePath(slot, filePath);
+        System.arraycopy(hash, 0, hashes, slot * HASH_LENGTH, HASH_LENGTH);
+        setBlocks(slot, blockOffsets, blockCount);
+        appendEntrySlot(slot);
+    }
+
+    private void appendEntrySlot(int slot) {
+        if (numEntries == entrySlots.length) {
+            entrySlots = Arrays.copyOf(entrySlots, Math.max(numEntries * 2, INITIAL_CAPACITY));
+        }
+        entrySlots[numEntries++] = slot;
+    }
+
+
+    /**
+     * Writes the arrays as they are, with everything that's needed to load them back with {@link #readFrom(ByteBuffer)},
+     * except for the mount point.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(numSlots);
+        out.writeInt(numEntries);
+        out.writeInt(numBlocks);
+        out.writeInt(namesLength);
+        out.writeInt(directories.size());
+
+        for (String directory : directories) {
+            byte[] bytes = directory.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        writeLongs(out, offsets, numSlots);
+        writeLongs(out, compressedSizes, numSlots);
+        writeLongs(out, sizes, numSlots);
+        out.write(hashes, 0, numSlots * HASH_LENGTH);
+        out.write(flags, 0, numSlots);
+        writeInts(out, blockSizes, numSlots);
+        writeInts(out, directoryIds, numSlots);
+        writeInts(out, nameOffsets, numSlots);
+        writeInts(out, nameLengths, numSlots);
+        writeInts(out, firstBlocks, numSlots);
+        writeInts(out, blockCounts, numSlots);
+        writeInts(out, entrySlots, numEntries);
+        out.write(names, 0, namesLength);
+        writeLongs(out, blocks, 2 * numBlocks);
+    }
+
+    /**
+     * Loads an index saved with {@link #writeTo(DataOutput)}, copying the data in bulk into the arrays.
+     * The buffer must hold exactly that data, in big-endian order.
+     *
+     * @throws IllegalArgumentException if the data is not consistent.
+     */
+    public static CompactPakIndex readFrom(ByteBuffer buffer) {
+        try {
+            int numSlots = buffer.getInt();
+            CompactPakIndex index = new CompactPakIndex(0);     // the arrays are replaced right away
+            index.numSlots = numSlots;
+            index.numEntries = buffer.getInt();
+            index.numBlocks = buffer.getInt();
+            index.namesLength = buffer.getInt();
+            int numDirectories = buffer.getInt();
+
+            for (int i = 0; i < numDirectories; i++) {
+                String directory = new String(readBytes(buffer, buffer.getInt()), StandardCharsets.UTF_8);
+                index.directories.add(directory);
+                index.directoryIdsByName.put(directory, i);
+            }
+
+            index.offsets = readLongs(buffer, numSlots);
+            index.compressedSizes = readLongs(buffer, numSlots);
+            index.sizes = readLongs(buffer, numSlots);
+            index.hashes = readBytes(buffer, numSlots * HASH_LENGTH);
+            index.flags = readBytes(buffer, numSlots);
+            index.blockSizes = readInts(buffer, numSlots);
+            index.directoryIds = readInts(buffer, numSlots);
+            index.nameOffsets = readInts(buffer, numSlots);
+            index.nameLengths = readInts(buffer, numSlots);
+            index.firstBlocks = readInts(buffer, numSlots);
+            index.blockCounts = readInts(buffer, numSlots);
+            index.entrySlots = readInts(buffer, index.numEntries);
+            index.names = readBytes(buffer, index.namesLength);
+            index.blocks = readLongs(buffer, 2 * index.numBlocks);
+
+            if (buffer.hasRemaining()) {
+                throw new IllegalArgumentException("Unexpected data after the index.");
+            }
+            index.validate();
+
+            return index;
+
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated index data.", e);
+        }
+    }
+
+    /**
+     * Makes sure that the loaded data cannot make lookups or views read out of bounds.
+     */
+    private void validate() {
+        for (int slot = 0; slot < numSlots; slot++) {
+            if (directoryIds[slot] < NO_DIRECTORY || directoryIds[slot] >= directories.size()
+                    || nameOffsets[slot] < 0 || nameLengths[slot] < 0
+                    || nameOffsets[slot] + nameLengths[slot] > namesLength
+                    || firstBlocks[slot] < 0 || blockCounts[slot] < 0
+                    || firstBlocks[slot] + blockCounts[slot] > numBlocks) {
+                throw new IllegalArgumentException("Invalid index data in slot " + slot);
+            }
+        }
+        for (int i = 0; i < numEntries; i++) {
+            Objects.checkIndex(entrySlots[i], numSlots);
+        }
+    }
+
+    private static void writeLongs(DataOutput out, long[] values, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            out.writeLong(values[i]);
+        }
+    }
+
+    private static void writeInts(DataOutput out, int[] values, int length) throws IOException {
+        for (int i = 0; i < length; i++) {
+            out.writeInt(values[i]);
+        }
+    }
+
+    private static long[] readLongs(ByteBuffer buffer, int length) {
+        checkRemaining(buffer, length, Long.BYTES);
+        long[] values = new long[length];
+        buffer.asLongBuffer().get(values);
+        buffer.position(buffer.position() + length * Long.BYTES);
+
+        return values;
+    }
+
+    private static int[] readInts(ByteBuffer buffer, int length) {
+        checkRemaining(buffer, length, Integer.BYTES);
+        int[] values = new int[length];
+        buffer.asIntBuffer().get(values);
+        buffer.position(buffer.position() + length * Integer.BYTES);
+
+        return values;
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer, int length) {
+        checkRemaining(buffer, length, Byte.BYTES);
+        byte[] values = new byte[length];
+        buffer.get(values);
+
+        return values;
+    }
+
+    /**
+     * Checked before allocating, so that a corrupted length doesn't make us allocate a huge array.
+     */
+    private static void checkRemaining(ByteBuffer buffer, int length, int elementSize) {
+        if (length < 0 || length > buffer.remaining() / elementSize) {
+            throw new BufferUnderflowException();
+        }
+    }
+
+
+    /**
+     * @param index position of the entry in the index.
+     */
+    public int getSlot(int index) {
+        Objects.checkIndex(index, numEntries);
+        return entrySlots[index];
+    }
+
+    /**
+     * @return a view of the entry in the slot, even if it has been removed from the index since.
+     */
+    public PakEntry getEntryAtSlot(int slot) {
+        Objects.checkIndex(slot, numSlots);
+        return new EntryView(slot);
+    }
+
+    /**
+     * Thread-safe, as long as the index is not modified at the same time.
+     * If several entries have the same path, the last one wins.
+     *
+     * @param filePath path of the file relative to the mount point.
+     * @return the slot of the entry of the index with that path; or {@link #NO_SLOT} if there is none.
+     */
+    public int findSlot(Path filePath) {
+        Path fileName = filePath.getFileName();
+        Path parent = filePath.getParent();
+
+        if (fileName == null) {
+            return NO_SLOT;
+        }
+
+        int directoryId = NO_DIRECTORY;
+        if (parent != null) {
+            Integer id = directoryIdsByName.get(toPakPath(parent));
+            if (id == null) {
+                return NO_SLOT;
+            }
+            directoryId = id;
+        }
+
+        byte[] name = fileName.toString().getBytes(StandardCharsets.UTF_8);
+        int[] table = getSlotTable();
+        int mask = table.length - 1;
+
+        for (int i = hashPath(directoryId, name, 0, name.length) & mask; table[i] != 0; i = (i + 1) & mask) {
+            int slot = table[i] - 1;
+            if (directoryIds[slot] == directoryId && nameEquals(slot, name, 0, name.length)) {
+                return slot;
+            }
+        }
+
+        return NO_SLOT;
+    }
+
+
+    /**
+     * Releases the spare capacity of the arrays, and the names left behind in the pool by renamed entries.
+     * Meant to be called once all the entries have been added.
+     */
+    public void trimToSize() {
+        offsets = Arrays.copyOf(offsets, numSlots);
+        compressedSizes = Arrays.copyOf(compressedSizes, numSlots);
+        sizes = Arrays.copyOf(sizes, numSlots);
+        hashes = Arrays.copyOf(hashes, numSlots * HASH_LENGTH);
+        flags = Arrays.copyOf(flags, numSlots);
+        blockSizes = Arrays.copyOf(blockSizes, numSlots);
+        directoryIds = Arrays.copyOf(directoryIds, numSlots);
+        nameOffsets = Arrays.copyOf(nameOffsets, numSlots);
+        nameLengths = Arrays.copyOf(nameLengths, numSlots);
+        firstBlocks = Arrays.copyOf(firstBlocks, numSlots);
+        blockCounts = Arrays.copyOf(blockCounts, numSlots);
+        entrySlots = Arrays.copyOf(entrySlots, numEntries);
+        blocks = Arrays.copyOf(blocks, 2 * numBlocks);
+        packNames();
+    }
+
+    private void packNames() {
+        int packedLength = 0;
+        for (int slot = 0; slot < numSlots; slot++) {
+            packedLength += nameLengths[slot];
+        }
+
+        byte[] packedNames = new byte[packedLength];
+        int offset = 0;
+
+        for (int slot = 0; slot < numSlots; slot++) {
+            System.arraycopy(names, nameOffsets[slot], packedNames, offset, nameLengths[slot]);
+            nameOffsets[slot] = offset;
+            offset += nameLengths[slot];
+        }
+
+        names = packedNames;
+        namesLength = packedLength;
+    }
+
+    private int newSlot() {
+        if (numSlots == offsets.length) {
+            int capacity = Math.max(numSlots * 2, INITIAL_CAPACITY);
+            offsets = Arrays.copyOf(offsets, capacity);
+            compressedSizes = Arrays.copyOf(compressedSizes, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            hashes = Arrays.copyOf(hashes, capacity * HASH_LENGTH);
+            flags = Arrays.copyOf(flags, capacity);
+            blockSizes = Arrays.copyOf(blockSizes, capacity);
+            directoryIds = Arrays.copyOf(directoryIds, capacity);
+            nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+            nameLengths = Arrays.copyOf(nameLengths, capacity);
+            firstBlocks = Arrays.copyOf(firstBlocks, capacity);
+            blockCounts = Arrays.copyOf(blockCounts, capacity);
+        }
+        return numSlots++;
+    }
+
+    private Path getFilePath(int slot) {
+        String name = new String(names, nameOffsets[slot], nameLengths[slot], StandardCharsets.UTF_8);
+        int directoryId = directoryIds[slot];
+
+        return directoryId == NO_DIRECTORY ? Path.of(name) : Path.of(directories.get(directoryId), name);
+    }
+
+    private void setFilePath(int slot, Path filePath) {
+        setFilePath(slot, toPakPath(filePath));
+    }
+
+    /**
+     * The name is always appended to the pool: when renaming an entry, its old name stays there until
+     * {@link #trimToSize()}.
+     */
+    private void setFilePath(int slot, String filePath) {
+        int separator = filePath.lastIndexOf(SEPARATOR);
+        directoryIds[slot] = separator < 0 ? NO_DIRECTORY
+                : directoryIdsByName.computeIfAbsent(filePath.substring(0, separator), d -> {
+                    directories.add(d);
+                    return directories.size() - 1;
+                });
+
+        byte[] name = filePath.substring(separator + 1).getBytes(StandardCharsets.UTF_8);
+        if (namesLength + name.length > names.length) {
+            names = Arrays.copyOf(names, Math.max(names.length * 2, namesLength + name.length + INITIAL_CAPACITY));
+        }
+        System.arraycopy(name, 0, names, namesLength, name.length);
+        nameOffsets[slot] = namesLength;
+        nameLengths[slot] = name.length;
+        namesLength += name.length;
+        slotTable = null;
+    }
+
+    private static String toPakPath(Path path) {
+        return path.toString().replace('\\', SEPARATOR);
+    }
+
+    private boolean nameEquals(int slot, byte[] name, int offset, int length) {
+        return Arrays.equals(names, nameOffsets[slot], nameOffsets[slot] + nameLengths[slot], name, offset, offset + length);
+    }
+
+    private static int hashPath(int directoryId, byte[] name, int offset, int length) {
+        int hash = directoryId;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + name[i];
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private int[] getSlotTable() {
+        int[] table = slotTable;
+
+        if (table == null) {
+            synchronized (this) {
+                table = slotTable;
+                if (table == null) {
+                    table = buildSlotTable();
+                    slotTable = table;
+                }
+            }
+        }
+        return table;
+    }
+
+    /**
+     * At most half full, so that probe sequences stay short.
+     */
+    private int[] buildSlotTable() {
+        int[] table = new int[Integer.highestOneBit(Math.max(numEntries, 1)) << 2];
+        int mask = table.length - 1;
+
+        for (int i = 0; i < numEntries; i++) {
+            int slot = entrySlots[i];
+            int position = hashPath(directoryIds[slot], names, nameOffsets[slot], nameLengths[slot]) & mask;
+
+            while (table[position] != 0) {
+                int otherSlot = table[position] - 1;
+                if (directoryIds[otherSlot] == directoryIds[slot]
+                        && nameEquals(otherSlot, names, nameOffsets[slot], nameLengths[slot])) {
+                    break;
+                }
+                position = (position + 1) & mask;
+            }
+            table[position] = slot + 1;
+        }
+
+        return table;
+    }
+
+    private String getHash(int slot) {
+        return Hex.encodeHexString(Arrays.copyOfRange(hashes, slot * HASH_LENGTH, (slot + 1) * HASH_LENGTH));
+    }
+
+    private void setHash(int slot, String hash) {
+        try {
+            System.arraycopy(Hex.decodeHex(hash), 0, hashes, slot * HASH_LENGTH, HASH_LENGTH);
+        } catch (DecoderException e) {
+            throw new IllegalArgumentException("Invalid hash: " + hash, e);
+        }
+    }
+
+    private void setBlocks(int slot, List<PakCompressedBlock> entryBlocks) {
+        reserveBlocks(slot, entryBlocks.size());
+
+        for (PakCompressedBlock block : entryBlocks) {
+            blocks[2 * numBlocks] = block.getOffsetStart();
+            blocks[2 * numBlocks + 1] = block.getOffsetEnd();
+            numBlocks++;
+        }
+    }
+
+    private void setBlocks(int slot, long[] blockOffsets, int count) {
+        reserveBlocks(slot, count);
+        System.arraycopy(blockOffsets, 0, blocks, 2 * numBlocks, 2 * count);
+        numBlocks += count;
+    }
+
+    private void reserveBlocks(int slot, int count) {
+        if (2 * (numBlocks + count) > blocks.length) {
+            blocks = Arrays.copyOf(blocks, Math.max(blocks.length * 2, 2 * (numBlocks + count)));
+        }
+        firstBlocks[slot] = numBlocks;
+        blockCounts[slot] = count;
+    }
+
+    private boolean hashEquals(int slot, byte[] sha1) {
+        return sha1.length == HASH_LENGTH
+                && Arrays.equals(hashes, slot * HASH_LENGTH, (slot + 1) * HASH_LENGTH, sha1, 0, HASH_LENGTH);
+    }
+
+    private long getBlockOffset(int slot, int blockIndex, int end) {
+        Objects.checkIndex(blockIndex, blockCounts[slot]);
+        return blocks[2 * (firstBlocks[slot] + blockIndex) + end];
+    }
+
+    private static byte toFlags(boolean compressed, boolean encrypted) {
+        return (byte) ((compressed ? FLAG_COMPRESSED : 0) | (encrypted ? FLAG_ENCRYPTED : 0));
+    }
+
+    private boolean hasFlag(int slot, byte flag) {
+        return (flags[slot] & flag) != 0;
+    }
+
+    private void setFlag(int slot, byte flag, boolean value) {
+        flags[slot] = (byte) (value ? flags[slot] | flag : flags[slot] & ~flag);
+    }
+
+
+    /**
+     * The entries of the index, in order. Supports removing entries, but not adding them in the middle.
+     */
+    private final class EntryList extends AbstractList<PakEntry> implements RandomAccess {
+
+        @Override
+        public PakEntry get(int index) {
+            Objects.checkIndex(index, numEntries);
+            return new EntryView(entrySlots[index]);
+        }
+
+        @Override
+        public int size() {
+            return numEntries;
+        }
+
+        @Override
+        public boolean add(PakEntry entry) {
+            addEntry(entry);
+            return true;
+        }
+
+        @Override
+        public PakEntry remove(int index) {
+            PakEntry entry = get(index);
+            System.arraycopy(entrySlots, index + 1, entrySlots, index, numEntries - index - 1);
+            numEntries--;
+            slotTable = null;
+            modCount++;
+
+            return entry;
+        }
+
+        @Override
+        public void clear() {
+            numEntries = 0;
+            slotTable = null;
+            modCount++;
+        }
+
+        /**
+         * Done in a single pass, the default implementation would shift the array once per removed entry.
+         */
+        @Override
+        public boolean removeAll(Collection<?> entries) {
+            Set<Integer> slotsToRemove = new HashSet<>();
+            for (Object entry : entries) {
+                int slot = indexOfSlot(entry);
+                if (slot >= 0) {
+                    slotsToRemove.add(slot);
+                }
+            }
+
+            int kept = 0;
+            for (int i = 0; i < numEntries; i++) {
+                if (!slotsToRemove.contains(entrySlots[i])) {
+                    entrySlots[kept++] = entrySlots[i];
+                }
+            }
+
+            boolean changed = kept != numEntries;
+            numEntries = kept;
+            slotTable = null;
+            modCount++;
+
+            return changed;
+        }
+
+        private int indexOfSlot(Object entry) {
+            if (entry instanceof EntryView && ((EntryView) entry).owner() == CompactPakIndex.this) {
+                return ((EntryView) entry).slot;
+            }
+            int index = indexOf(entry);
+            return index >= 0 ? entrySlots[index] : -1;
+        }
+    }
+
+
+    /**
+     * Flyweight over one slot of the arrays. Getters read from the arrays and setters write into them.
+     */
+    private final class EntryView extends PakEntry {
+
+        private final int slot;
+
+        private EntryView(int slot) {
+            this.slot = slot;
+        }
+
+        private CompactPakIndex owner() {
+            return CompactPakIndex.this;
+        }
+
+        @Override
+        public Path getFilePath() {
+            return CompactPakIndex.this.getFilePath(slot);
+        }
+
+        @Override
+        public void setFilePath(Path filePath) {
+            CompactPakIndex.this.setFilePath(slot, filePath);
+        }
+
+        @Override
+        public long getOffset() {
+            return offsets[slot];
+        }
+
+        @Override
+        public void setOffset(long offset) {
+            offsets[slot] = offset;
+        }
+
+        @Override
+        public long getCompressedSize() {
+            return compressedSizes[slot];
+        }
+
+        @Override
+        public void setCompressedSize(long compressedSize) {
+            compressedSizes[slot] = compressedSize;
+        }
+
+        @Override
+        public long getSize() {
+            return sizes[slot];
+        }
+
+        @Override
+        public void setSize(long size) {
+            sizes[slot] = size;
+        }
+
+        @Override
+        public boolean isCompressed() {
+            return hasFlag(slot, FLAG_COMPRESSED);
+        }
+
+        @Override
+        public void setCompressed(boolean compressed) {
+            setFlag(slot, FLAG_COMPRESSED, compressed);
+        }
+
+        @Override
+        public String getHash() {
+            return CompactPakIndex.this.getHash(slot);
+        }
+
+        @Override
+        public void setHash(String hash) {
+            CompactPakIndex.this.setHash(slot, hash);
+        }
+
+        /**
+         * @return a read-only view of the blocks of the entry.
+         */
+        @Override
+        public List<PakCompressedBlock> getBlocks() {
+            int first = firstBlocks[slot];
+            int count = blockCounts[slot];
+
+            return new BlockList(first, count);
+        }
+
+        @Override
+        public int getBlockCount() {
+            return blockCounts[slot];
+        }
+
+        @Override
+        public long getBlockStart(int blockIndex) {
+            return getBlockOffset(slot, blockIndex, 0);
+        }
+
+        @Override
+        public long getBlockEnd(int blockIndex) {
+            return getBlockOffset(slot, blockIndex, 1);
+        }
+
+        @Override
+        public boolean hasHash(byte[] sha1) {
+            return hashEquals(slot, sha1);
+        }
+
+        @Override
+        public boolean isEncrypted() {
+            return hasFlag(slot, FLAG_ENCRYPTED);
+        }
+
+        @Override
+        public void setEncrypted(boolean encrypted) {
+            setFlag(slot, FLAG_ENCRYPTED, encrypted);
+        }
+
+        @Override
+        public int getBlockSize() {
+            return blockSizes[slot];
+        }
+
+        @Override
+        public void setBlockSize(int blockSize) {
+            blockSizes[slot] = blockSize;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof EntryView && ((EntryView) o).owner() == owner()) {
+                return ((EntryView) o).slot == slot;
+            }
+            return super.equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return super.hashCode();
+        }
+    }
+
+
+    private final class BlockList extends AbstractList<PakCompressedBlock> implements RandomAccess {
+
+        private final int first;
+        private final int count;
+
+        private BlockList(int first, int count) {
+            this.first = first;
+            this.count = count;
+        }
+
+        @Override
+        public PakCompressedBlock get(int index) {
+            Objects.checkIndex(index, count);
+            int block = first + index;
+
+            return new PakCompressedBlock(blocks[2 * block], blocks[2 * block + 1]);
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+    }
+
+}
@@ -1,6 +1,7 @@
 package net.dbd.demode.pak.domain;
 
 import lombok.Data;
+import org.apache.commons.codec.binary.Hex;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -26,4 +27,39 @@ public class PakEntry {
                                       If not, normally it's going to be 65536 (64 KiB) if the uncompressed size is bigger
                                       or equal than this; otherwise it will be equal to the uncompressed size. */
 
+
+    /*
+     * Shortcuts for the hot paths of extraction, which indexes that don't keep one object per block or a hash string
+     * (see CompactPakIndex) can answer without allocating anything.
+     */
+
+    public int getBlockCount() {
+        return blocks.size();
+    }
+
+    /**
+     * @return the offset where the block starts, relative to the entry.
+     */
+    public long getBlockStart(int blockIndex) {
+        return blocks.get(blockIndex).getOffsetStart();
+    }
+
+    /**
+     * @return the offset right after the end of the block, relative to the entry.
+     */
+    public long getBlockEnd(int blockIndex) {
+        return blocks.get(blockIndex).getOffsetEnd();
+    }
+
+    public int getBlockLength(int blockIndex) {
+        return (int) (getBlockEnd(blockIndex) - getBlockStart(blockIndex));
+    }
+
+    /**
+     * @param sha1 a digest of 20 bytes.
+     */
+    public boolean hasHash(byte[] sha1) {
+        return Hex.encodeHexString(sha1).equalsIgnoreCase(hash);
+    }
+
 }
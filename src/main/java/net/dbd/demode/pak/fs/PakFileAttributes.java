@@ -0,0 +1,135 @@
+package net.dbd.demode.pak.fs;
+
+import net.dbd.demode.pak.domain.PakEntry;
+
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Attributes of a file or directory of a {@link PakFileSystem}.
+ * <p>
+ * Besides the basic ones, files have the attributes of their pak entry, which can be read either through this class
+ * or with the "pak" view (e.g.: <code>Files.readAttributes(path, "pak:compressedSize,hash")</code>).
+ * Every file has the modification time of the pak itself.
+ *
+ * @author Nicky Ramone
+ */
+public final class PakFileAttributes implements BasicFileAttributes {
+
+    static final String BASIC_VIEW = "basic";
+    static final String PAK_VIEW = "pak";
+
+    private final PakEntry entry;    // null for directories
+    private final FileTime lastModifiedTime;
+
+
+    PakFileAttributes(PakEntry entry, FileTime lastModifiedTime) {
+        this.entry = entry;
+        this.lastModifiedTime = lastModifiedTime;
+    }
+
+
+    @Override
+    public FileTime lastModifiedTime() {
+        return lastModifiedTime;
+    }
+
+    @Override
+    public FileTime lastAccessTime() {
+        return lastModifiedTime;
+    }
+
+    @Override
+    public FileTime creationTime() {
+        return lastModifiedTime;
+    }
+
+    @Override
+    public boolean isRegularFile() {
+        return entry != null;
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return entry == null;
+    }
+
+    @Override
+    public boolean isSymbolicLink() {
+        return false;
+    }
+
+    @Override
+    public boolean isOther() {
+        return false;
+    }
+
+    @Override
+    public long size() {
+        return entry != null ? entry.getSize() : 0;
+    }
+
+    @Override
+    public Object fileKey() {
+        return null;
+    }
+
+    /**
+     * @return the size of the data stored in the pak.
+     */
+    public long compressedSize() {
+        return entry != null ? entry.getCompressedSize() : 0;
+    }
+
+    public boolean isCompressed() {
+        return entry != null && entry.isCompressed();
+    }
+
+    /**
+     * @return the SHA-1 of the data stored in the pak, in hex; null for directories.
+     */
+    public String hash() {
+        return entry != null ? entry.getHash() : null;
+    }
+
+
+    /**
+     * @param view       "basic" or "pak"
+     * @param attributes attribute names, or "*" for all of them
+     */
+    Map<String, Object> toMap(String view, String[] attributes) {
+        Map<String, Object> allAttributes = new LinkedHashMap<>();
+        allAttributes.put("lastModifiedTime", lastModifiedTime());
+        allAttributes.put("lastAccessTime", lastAccessTime());
+        allAttributes.put("creationTime", creationTime());
+        allAttributes.put("size", size());
+        allAttributes.put("isRegularFile", isRegularFile());
+        allAttributes.put("isDirectory", isDirectory());
+        allAttributes.put("isSymbolicLink", isSymbolicLink());
+        allAttributes.put("isOther", isOther());
+        allAttributes.put("fileKey", fileKey());
+
+        if (view.equals(PAK_VIEW)) {
+            allAttributes.put("compressedSize", compressedSize());
+            allAttributes.put("compressed", isCompressed());
+            allAttributes.put("hash", hash());
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+
+        for (String attribute : attributes) {
+            if (attribute.equals("*")) {
+                result.putAll(allAttributes);
+            } else if (allAttributes.containsKey(attribute)) {
+                result.put(attribute, allAttributes.get(attribute));
+            } else {
+                throw new IllegalArgumentException("Unknown attribute: " + view + ":" + attribute);
+            }
+        }
+
+        return result;
+    }
+
+}
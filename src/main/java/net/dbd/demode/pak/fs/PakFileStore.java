@@ -0,0 +1,76 @@
+package net.dbd.demode.pak.fs;
+
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileStoreAttributeView;
+
+/**
+ * The pak itself, seen as storage. It has no free space, since the file system is read-only.
+ *
+ * @author Nicky Ramone
+ */
+class PakFileStore extends FileStore {
+
+    private final Path pakPath;
+
+
+    PakFileStore(Path pakPath) {
+        this.pakPath = pakPath;
+    }
+
+
+    @Override
+    public String name() {
+        return pakPath.getFileName().toString();
+    }
+
+    @Override
+    public String type() {
+        return PakFileSystemProvider.SCHEME;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public long getTotalSpace() throws IOException {
+        return Files.size(pakPath);
+    }
+
+    @Override
+    public long getUsableSpace() {
+        return 0;
+    }
+
+    @Override
+    public long getUnallocatedSpace() {
+        return 0;
+    }
+
+    @Override
+    public boolean supportsFileAttributeView(Class<? extends FileAttributeView> type) {
+        return type == BasicFileAttributeView.class;
+    }
+
+    @Override
+    public boolean supportsFileAttributeView(String name) {
+        return name.equals(PakFileAttributes.BASIC_VIEW) || name.equals(PakFileAttributes.PAK_VIEW);
+    }
+
+    @Override
+    public <V extends FileStoreAttributeView> V getFileStoreAttributeView(Class<V> type) {
+        return null;
+    }
+
+    @Override
+    public Object getAttribute(String attribute) {
+        throw new UnsupportedOperationException("Unsupported file store attribute: " + attribute);
+    }
+
+}
@@ -0,0 +1,416 @@
+package net.dbd.demode.pak.fs;
+
+import lombok.Getter;
+import net.dbd.demode.pak.PakBlockCache;
+import net.dbd.demode.pak.PakEntryChannel;
+import net.dbd.demode.pak.PakFile;
+import net.dbd.demode.pak.domain.PakEntry;
+import net.dbd.demode.util.format.NumberFormatUtil;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Read-only view of the files of a pak, so they can be read with the regular {@link Files} API without extracting
+ * them.
+ * <p>
+ * The tree is the one under the mount point: a pak mounted on <code>../../../DeadByDaylight/Content/</code> has a
+ * <code>/DeadByDaylight/Content</code> directory, and so on. Directories only exist as part of the path of a file.
+ * <p>
+ * Files are read through {@link PakEntryChannel}s, which inflate compressed entries lazily, one block at a time.
+ * All the channels share the same handle to the pak, which is closed together with the file system, and the same
+ * cache of inflated blocks. The size of the cache can be set with the {@value #BLOCK_CACHE_SIZE_PROPERTY} property of
+ * the environment, as a number of bytes or a size like "64M" (default: 16M).
+ *
+ * @author Nicky Ramone
+ */
+public class PakFileSystem extends FileSystem {
+
+    public static final String BLOCK_CACHE_SIZE_PROPERTY = "blockCacheSize";
+
+    private static final String SEPARATOR = "/";
+    private static final String GLOB_SYNTAX = "glob";
+    private static final String REGEX_SYNTAX = "regex";
+
+    private final PakFileSystemProvider provider;
+    @Getter
+    private final Path pakPath;
+    @Getter
+    private final PakFile pakFile;
+    private final FileChannel pakChannel;
+    private final FileTime lastModifiedTime;
+    private final PakPath root;
+    private final PakFileStore fileStore;
+    @Getter
+    private final PakBlockCache blockCache;
+    private final Map<String, PakEntry> files = new HashMap<>();
+    private final Map<String, Set<String>> directories = new HashMap<>(); // names of the children, in index order
+    private final Set<SeekableByteChannel> openChannels = ConcurrentHashMap.newKeySet();
+    private volatile boolean open = true;
+
+
+    PakFileSystem(PakFileSystemProvider provider, Path pakPath, Map<String, ?> env) throws IOException {
+        this.provider = provider;
+        this.pakPath = pakPath;
+        this.blockCache = new PakBlockCache(blockCacheSize(env));
+        this.lastModifiedTime = Files.getLastModifiedTime(pakPath);
+
+        try {
+            this.pakFile = new PakFile(pakPath.toFile());
+        } catch (RuntimeException e) {
+            throw new IOException("Failed to read pak: " + pakPath, e);
+        }
+
+        this.pakChannel = FileChannel.open(pakPath, StandardOpenOption.READ);
+        this.root = new PakPath(this, SEPARATOR);
+        this.fileStore = new PakFileStore(pakPath);
+
+        initTree();
+    }
+
+    private void initTree() {
+        directories.put(SEPARATOR, new LinkedHashSet<>());
+
+        for (Path filePath : pakFile.getFilePaths()) {
+            String path = toTreePath(filePath);
+            files.put(path, pakFile.getEntry(filePath));
+            addToParent(path);
+        }
+    }
+
+    private static long blockCacheSize(Map<String, ?> env) {
+        Object size = env.get(BLOCK_CACHE_SIZE_PROPERTY);
+
+        if (size == null) {
+            return PakBlockCache.DEFAULT_CAPACITY;
+        }
+        return size instanceof Number ? ((Number) size).longValue() : NumberFormatUtil.parseByteSize(size.toString());
+    }
+
+    /**
+     * Mount points are relative to the pak, so the paths of the index start with "..", which we leave out.
+     */
+    private static String toTreePath(Path filePath) {
+        StringBuilder path = new StringBuilder();
+
+        for (Path name : filePath) {
+            if (!name.toString().equals("..") && !name.toString().equals(".")) {
+                path.append(SEPARATOR).append(name);
+            }
+        }
+
+        return path.toString();
+    }
+
+    private void addToParent(String path) {
+        int separatorIndex = path.lastIndexOf(SEPARATOR);
+        String parent = separatorIndex == 0 ? SEPARATOR : path.substring(0, separatorIndex);
+        Set<String> children = directories.get(parent);
+        boolean newParent = children == null;
+
+        if (newParent) {
+            children = new LinkedHashSet<>();
+            directories.put(parent, children);
+        }
+        children.add(path.substring(separatorIndex + 1));
+
+        if (newParent) {
+            addToParent(parent);
+        }
+    }
+
+
+    PakPath getRoot() {
+        return root;
+    }
+
+    boolean exists(PakPath path) {
+        String key = key(path);
+        return files.containsKey(key) || directories.containsKey(key);
+    }
+
+    PakFileAttributes getAttributes(PakPath path) throws NoSuchFileException {
+        ensureOpen();
+        String key = key(path);
+        PakEntry entry = files.get(key);
+
+        if (entry == null && !directories.containsKey(key)) {
+            throw new NoSuchFileException(path.toString());
+        }
+
+        return new PakFileAttributes(entry, lastModifiedTime);
+    }
+
+    /**
+     * @return the names of the files and directories of the directory.
+     */
+    Set<String> getChildren(PakPath path) throws IOException {
+        ensureOpen();
+        String key = key(path);
+        Set<String> children = directories.get(key);
+
+        if (children == null) {
+            if (files.containsKey(key)) {
+                throw new NotDirectoryException(path.toString());
+            }
+            throw new NoSuchFileException(path.toString());
+        }
+
+        return Collections.unmodifiableSet(children);
+    }
+
+    SeekableByteChannel newChannel(PakPath path) throws IOException {
+        ensureOpen();
+        String key = key(path);
+        PakEntry entry = files.get(key);
+
+        if (entry == null) {
+            if (directories.containsKey(key)) {
+                throw new FileSystemException(path.toString(), null, "Is a directory");
+            }
+            throw new NoSuchFileException(path.toString());
+        }
+
+        SeekableByteChannel channel = new PakEntryChannel(pakChannel, entry, blockCache) {
+            @Override
+            public synchronized void close() throws IOException {
+                super.close();
+                openChannels.remove(this);
+            }
+        };
+        openChannels.add(channel);
+
+        return channel;
+    }
+
+    private static String key(PakPath path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    void ensureOpen() {
+        if (!open) {
+            throw new ClosedFileSystemException();
+        }
+    }
+
+
+    @Override
+    public FileSystemProvider provider() {
+        return provider;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!open) {
+            return;
+        }
+
+        open = false;
+        for (SeekableByteChannel channel : openChannels) {
+            channel.close();
+        }
+        pakChannel.close();
+        blockCache.clear();
+        provider.removeFileSystem(pakPath, this);
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+
+    @Override
+    public String getSeparator() {
+        return SEPARATOR;
+    }
+
+    @Override
+    public Iterable<Path> getRootDirectories() {
+        return List.of(root);
+    }
+
+    @Override
+    public Iterable<FileStore> getFileStores() {
+        return List.of(fileStore);
+    }
+
+    FileStore getFileStore() {
+        return fileStore;
+    }
+
+    @Override
+    public Set<String> supportedFileAttributeViews() {
+        return Set.of(PakFileAttributes.BASIC_VIEW, PakFileAttributes.PAK_VIEW);
+    }
+
+    @Override
+    public Path getPath(String first, String... more) {
+        StringBuilder path = new StringBuilder(first);
+
+        for (String name : more) {
+            if (!name.isEmpty()) {
+                path.append(path.length() > 0 ? SEPARATOR : "").append(name);
+            }
+        }
+
+        return new PakPath(this, path.toString());
+    }
+
+    @Override
+    public PathMatcher getPathMatcher(String syntaxAndPattern) {
+        int colonIndex = syntaxAndPattern.indexOf(':');
+
+        if (colonIndex <= 0) {
+            throw new IllegalArgumentException("Invalid syntax and pattern: " + syntaxAndPattern);
+        }
+
+        String syntax = syntaxAndPattern.substring(0, colonIndex);
+        String pattern = syntaxAndPattern.substring(colonIndex + 1);
+        Pattern regex;
+
+        if (syntax.equalsIgnoreCase(GLOB_SYNTAX)) {
+            regex = Pattern.compile(globToRegex(pattern));
+        } else if (syntax.equalsIgnoreCase(REGEX_SYNTAX)) {
+            regex = Pattern.compile(pattern);
+        } else {
+            throw new UnsupportedOperationException("Unsupported pattern syntax: " + syntax);
+        }
+
+        return path -> regex.matcher(path.toString()).matches();
+    }
+
+    /**
+     * Supports the syntax described in {@link FileSystem#getPathMatcher(String)}.
+     */
+    private static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        boolean inGroup = false;
+
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+
+            switch (c) {
+                case '\\':
+                    if (++i == glob.length()) {
+                        throw new PatternSyntaxException("No character to escape", glob, i - 1);
+                    }
+                    appendLiteral(regex, glob.charAt(i));
+                    break;
+                case '*':
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        regex.append(".*");
+                        i++;
+                    } else {
+                        regex.append("[^/]*");
+                    }
+                    break;
+                case '?':
+                    regex.append("[^/]");
+                    break;
+                case '[':
+                    i = appendBracketExpression(regex, glob, i);
+                    break;
+                case '{':
+                    if (inGroup) {
+                        throw new PatternSyntaxException("Nested groups are not supported", glob, i);
+                    }
+                    regex.append("(?:");
+                    inGroup = true;
+                    break;
+                case '}':
+                    if (inGroup) {
+                        regex.append(')');
+                        inGroup = false;
+                    } else {
+                        appendLiteral(regex, c);
+                    }
+                    break;
+                case ',':
+                    if (inGroup) {
+                        regex.append('|');
+                    } else {
+                        appendLiteral(regex, c);
+                    }
+                    break;
+                default:
+                    appendLiteral(regex, c);
+            }
+        }
+
+        if (inGroup) {
+            throw new PatternSyntaxException("Missing '}'", glob, glob.length() - 1);
+        }
+
+        return regex.toString();
+    }
+
+    /**
+     * @return the index of the closing bracket.
+     */
+    private static int appendBracketExpression(StringBuilder regex, String glob, int start) {
+        int i = start + 1;
+        regex.append("[[^/]&&[");
+
+        if (i < glob.length() && (glob.charAt(i) == '!' || glob.charAt(i) == '^')) {
+            regex.append('^');
+            i++;
+        }
+
+        for (; i < glob.length() && glob.charAt(i) != ']'; i++) {
+            char c = glob.charAt(i);
+
+            if (c == '/') {
+                throw new PatternSyntaxException("Explicit 'name separator' in class", glob, i);
+            }
+            if (c == '-') {
+                regex.append(c);
+            } else {
+                appendLiteral(regex, c);
+            }
+        }
+
+        if (i == glob.length()) {
+            throw new PatternSyntaxException("Missing ']'", glob, start);
+        }
+        regex.append("]]");
+
+        return i;
+    }
+
+    private static void appendLiteral(StringBuilder regex, char c) {
+        if ("\\^$.|?*+()[]{}&".indexOf(c) >= 0) {
+            regex.append('\\');
+        }
+        regex.append(c);
+    }
+
+    @Override
+    public UserPrincipalLookupService getUserPrincipalLookupService() {
+        throw new UnsupportedOperationException("Pak files don't have owners.");
+    }
+
+    @Override
+    public WatchService newWatchService() {
+        throw new UnsupportedOperationException("Watching pak files is not supported.");
+    }
+
+    @Override
+    public String toString() {
+        return pakPath.toString();
+    }
+
+}
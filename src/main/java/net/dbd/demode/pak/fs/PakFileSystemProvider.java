@@ -0,0 +1,300 @@
+package net.dbd.demode.pak.fs;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributeView;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.*;
+
+/**
+ * Provider of the "pak" scheme, for reading pak files through NIO.
+ * <p>
+ * URIs follow the same convention as the zip file system: the URI of the pak, followed by "!" and the absolute path
+ * of a file inside it. For example: <code>pak:file:///games/dbd/pakchunk0-WindowsNoEditor.pak!/DeadByDaylight/Content</code>.
+ * <p>
+ * Usage:
+ * <pre>
+ * try (FileSystem fileSystem = FileSystems.newFileSystem(pakFilePath)) {
+ *     try (InputStream in = Files.newInputStream(fileSystem.getPath("/DeadByDaylight/Content/..."))) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ * File systems opened from a URI can be looked up with {@link FileSystems#getFileSystem(URI)} and
+ * {@link Path#of(URI)} until they are closed. The ones opened from a path are not registered.
+ *
+ * @author Nicky Ramone
+ */
+public class PakFileSystemProvider extends FileSystemProvider {
+
+    public static final String SCHEME = "pak";
+    private static final String ENTRY_SEPARATOR = "!/";
+    private static final String PAK_EXTENSION = ".pak";
+
+    private final Map<Path, PakFileSystem> fileSystems = new HashMap<>();
+
+
+    @Override
+    public String getScheme() {
+        return SCHEME;
+    }
+
+    @Override
+    public FileSystem newFileSystem(URI uri, Map<String, ?> env) throws IOException {
+        Path pakPath = toPakPath(uri);
+
+        synchronized (fileSystems) {
+            if (fileSystems.containsKey(pakPath)) {
+                throw new FileSystemAlreadyExistsException(uri.toString());
+            }
+
+            PakFileSystem fileSystem = new PakFileSystem(this, pakPath, env);
+            fileSystems.put(pakPath, fileSystem);
+
+            return fileSystem;
+        }
+    }
+
+    /**
+     * Called by {@link FileSystems#newFileSystem(Path)}, which tries every installed provider: files that are not paks
+     * are left for the other providers.
+     */
+    @Override
+    public FileSystem newFileSystem(Path path, Map<String, ?> env) throws IOException {
+        if (path.getFileSystem() != FileSystems.getDefault()
+                || !path.getFileName().toString().toLowerCase(Locale.ROOT).endsWith(PAK_EXTENSION)) {
+            throw new UnsupportedOperationException("Not a pak file: " + path);
+        }
+
+        return new PakFileSystem(this, path.toAbsolutePath().normalize(), env);
+    }
+
+    @Override
+    public FileSystem getFileSystem(URI uri) {
+        Path pakPath = toPakPath(uri);
+
+        synchronized (fileSystems) {
+            PakFileSystem fileSystem = fileSystems.get(pakPath);
+
+            if (fileSystem == null) {
+                throw new FileSystemNotFoundException(uri.toString());
+            }
+            return fileSystem;
+        }
+    }
+
+    @Override
+    public Path getPath(URI uri) {
+        String spec = uri.getRawSchemeSpecificPart();
+        int separatorIndex = spec.indexOf(ENTRY_SEPARATOR);
+        String path = separatorIndex >= 0 ? URI.create(spec.substring(separatorIndex + 1)).getPath() : "/";
+
+        return getFileSystem(uri).getPath(path);
+    }
+
+    void removeFileSystem(Path pakPath, PakFileSystem fileSystem) {
+        synchronized (fileSystems) {
+            fileSystems.remove(pakPath, fileSystem);
+        }
+    }
+
+    private Path toPakPath(URI uri) {
+        if (!SCHEME.equalsIgnoreCase(uri.getScheme())) {
+            throw new IllegalArgumentException("URI scheme is not '" + SCHEME + "': " + uri);
+        }
+
+        String spec = uri.getRawSchemeSpecificPart();
+        int separatorIndex = spec.indexOf(ENTRY_SEPARATOR);
+
+        if (separatorIndex >= 0) {
+            spec = spec.substring(0, separatorIndex);
+        }
+
+        return Path.of(URI.create(spec)).toAbsolutePath().normalize();
+    }
+
+    private static PakPath toPakPath(Path path) {
+        if (!(path instanceof PakPath)) {
+            throw new ProviderMismatchException();
+        }
+        return (PakPath) path;
+    }
+
+
+    @Override
+    public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs)
+            throws IOException {
+
+        if (options.contains(StandardOpenOption.WRITE) || options.contains(StandardOpenOption.APPEND)) {
+            throw new ReadOnlyFileSystemException();
+        }
+
+        PakPath pakPath = toPakPath(path);
+        return pakPath.getFileSystem().newChannel(pakPath);
+    }
+
+    @Override
+    public DirectoryStream<Path> newDirectoryStream(Path dir, DirectoryStream.Filter<? super Path> filter)
+            throws IOException {
+
+        PakPath pakPath = toPakPath(dir);
+        Set<String> children = pakPath.getFileSystem().getChildren(pakPath);
+
+        return new DirectoryStream<>() {
+            private boolean iteratorReturned;
+
+            @Override
+            public Iterator<Path> iterator() {
+                if (iteratorReturned) {
+                    throw new IllegalStateException("Iterator already obtained.");
+                }
+                iteratorReturned = true;
+
+                List<Path> entries = new ArrayList<>();
+                for (String child : children) {
+                    Path entry = pakPath.resolve(child);
+                    try {
+                        if (filter.accept(entry)) {
+                            entries.add(entry);
+                        }
+                    } catch (IOException e) {
+                        throw new DirectoryIteratorException(e);
+                    }
+                }
+                return entries.iterator();
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+    }
+
+    @Override
+    public void checkAccess(Path path, AccessMode... modes) throws IOException {
+        PakPath pakPath = toPakPath(path);
+        pakPath.getFileSystem().ensureOpen();
+
+        if (!pakPath.getFileSystem().exists(pakPath)) {
+            throw new NoSuchFileException(path.toString());
+        }
+
+        for (AccessMode mode : modes) {
+            if (mode == AccessMode.WRITE) {
+                throw new ReadOnlyFileSystemException();
+            }
+            if (mode == AccessMode.EXECUTE) {
+                throw new AccessDeniedException(path.toString());
+            }
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <A extends BasicFileAttributes> A readAttributes(Path path, Class<A> type, LinkOption... options)
+            throws IOException {
+
+        if (type != BasicFileAttributes.class && type != PakFileAttributes.class) {
+            throw new UnsupportedOperationException("Unsupported attributes: " + type.getName());
+        }
+
+        PakPath pakPath = toPakPath(path);
+        return (A) pakPath.getFileSystem().getAttributes(pakPath);
+    }
+
+    @Override
+    public Map<String, Object> readAttributes(Path path, String attributes, LinkOption... options) throws IOException {
+        int colonIndex = attributes.indexOf(':');
+        String view = colonIndex >= 0 ? attributes.substring(0, colonIndex) : PakFileAttributes.BASIC_VIEW;
+        String names = attributes.substring(colonIndex + 1);
+
+        if (!view.equals(PakFileAttributes.BASIC_VIEW) && !view.equals(PakFileAttributes.PAK_VIEW)) {
+            throw new UnsupportedOperationException("Unsupported attribute view: " + view);
+        }
+
+        PakPath pakPath = toPakPath(path);
+        return pakPath.getFileSystem().getAttributes(pakPath).toMap(view, names.split(","));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <V extends FileAttributeView> V getFileAttributeView(Path path, Class<V> type, LinkOption... options) {
+        if (type != BasicFileAttributeView.class) {
+            return null;
+        }
+
+        PakPath pakPath = toPakPath(path);
+
+        return (V) new BasicFileAttributeView() {
+            @Override
+            public String name() {
+                return PakFileAttributes.BASIC_VIEW;
+            }
+
+            @Override
+            public BasicFileAttributes readAttributes() throws IOException {
+                return pakPath.getFileSystem().getAttributes(pakPath);
+            }
+
+            @Override
+            public void setTimes(FileTime lastModifiedTime, FileTime lastAccessTime, FileTime createTime) {
+                throw new ReadOnlyFileSystemException();
+            }
+        };
+    }
+
+    @Override
+    public FileStore getFileStore(Path path) throws IOException {
+        checkAccess(path);
+        return toPakPath(path).getFileSystem().getFileStore();
+    }
+
+    @Override
+    public boolean isSameFile(Path path, Path path2) throws IOException {
+        if (path.equals(path2)) {
+            return true;
+        }
+        if (!(path2 instanceof PakPath) || path.getFileSystem() != path2.getFileSystem()) {
+            return false;
+        }
+        return path.toRealPath().equals(path2.toRealPath());
+    }
+
+    @Override
+    public boolean isHidden(Path path) {
+        return false;
+    }
+
+
+    @Override
+    public void createDirectory(Path dir, FileAttribute<?>... attrs) {
+        throw new ReadOnlyFileSystemException();
+    }
+
+    @Override
+    public void delete(Path path) {
+        throw new ReadOnlyFileSystemException();
+    }
+
+    @Override
+    public void copy(Path source, Path target, CopyOption... options) {
+        throw new ReadOnlyFileSystemException();
+    }
+
+    @Override
+    public void move(Path source, Path target, CopyOption... options) {
+        throw new ReadOnlyFileSystemException();
+    }
+
+    @Override
+    public void setAttribute(Path path, String attribute, Object value, LinkOption... options) {
+        throw new ReadOnlyFileSystemException();
+    }
+
+}
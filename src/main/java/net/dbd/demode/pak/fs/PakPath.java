@@ -0,0 +1,266 @@
+package net.dbd.demode.pak.fs;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Objects;
+
+/**
+ * Path inside a {@link PakFileSystem}. Names are separated by "/" and absolute paths start at the root of the mount
+ * point tree. Relative paths are resolved against the root.
+ *
+ * @author Nicky Ramone
+ */
+final class PakPath implements Path {
+
+    private static final String SEPARATOR = "/";
+    private static final String[] NO_NAMES = new String[0];
+
+    private final PakFileSystem fileSystem;
+    private final String path;
+    private final String[] names;
+
+
+    PakPath(PakFileSystem fileSystem, String path) {
+        this.fileSystem = fileSystem;
+        this.path = clean(path);
+        this.names = this.path.isEmpty() ? new String[]{""}
+                : this.path.equals(SEPARATOR) ? NO_NAMES
+                : (isAbsolute() ? this.path.substring(1) : this.path).split(SEPARATOR);
+    }
+
+    /**
+     * Removes repeated and trailing separators.
+     */
+    private static String clean(String path) {
+        if (path.indexOf('\0') >= 0) {
+            throw new InvalidPathException(path, "Null character not allowed");
+        }
+
+        String cleanPath = path.replaceAll("/{2,}", SEPARATOR);
+
+        return cleanPath.length() > 1 && cleanPath.endsWith(SEPARATOR)
+                ? cleanPath.substring(0, cleanPath.length() - 1)
+                : cleanPath;
+    }
+
+    private PakPath of(String[] names, int from, int to, boolean absolute) {
+        String joined = String.join(SEPARATOR, Arrays.copyOfRange(names, from, to));
+
+        return new PakPath(fileSystem, absolute ? SEPARATOR + joined : joined);
+    }
+
+    private PakPath toPakPath(Path other) {
+        if (!(other instanceof PakPath) || ((PakPath) other).fileSystem != fileSystem) {
+            throw new ProviderMismatchException();
+        }
+        return (PakPath) other;
+    }
+
+
+    @Override
+    public PakFileSystem getFileSystem() {
+        return fileSystem;
+    }
+
+    @Override
+    public boolean isAbsolute() {
+        return path.startsWith(SEPARATOR);
+    }
+
+    @Override
+    public Path getRoot() {
+        return isAbsolute() ? fileSystem.getRoot() : null;
+    }
+
+    @Override
+    public Path getFileName() {
+        if (path.isEmpty()) {
+            return this;
+        }
+        return names.length == 0 ? null : new PakPath(fileSystem, names[names.length - 1]);
+    }
+
+    @Override
+    public Path getParent() {
+        if (names.length == 0 || path.isEmpty()) {
+            return null;
+        }
+        if (names.length == 1) {
+            return getRoot();
+        }
+        return of(names, 0, names.length - 1, isAbsolute());
+    }
+
+    @Override
+    public int getNameCount() {
+        return names.length;
+    }
+
+    @Override
+    public Path getName(int index) {
+        if (index < 0 || index >= names.length) {
+            throw new IllegalArgumentException("Invalid name index: " + index);
+        }
+        return new PakPath(fileSystem, names[index]);
+    }
+
+    @Override
+    public Path subpath(int beginIndex, int endIndex) {
+        if (beginIndex < 0 || endIndex > names.length || beginIndex >= endIndex) {
+            throw new IllegalArgumentException("Invalid subpath range: " + beginIndex + ", " + endIndex);
+        }
+        return of(names, beginIndex, endIndex, false);
+    }
+
+    @Override
+    public boolean startsWith(Path other) {
+        if (!(other instanceof PakPath) || ((PakPath) other).fileSystem != fileSystem) {
+            return false;
+        }
+
+        PakPath prefix = (PakPath) other;
+
+        if (prefix.isAbsolute() != isAbsolute() || prefix.names.length > names.length) {
+            return false;
+        }
+        if (prefix.path.isEmpty()) {
+            return path.isEmpty();
+        }
+        return Arrays.equals(names, 0, prefix.names.length, prefix.names, 0, prefix.names.length);
+    }
+
+    @Override
+    public boolean endsWith(Path other) {
+        if (!(other instanceof PakPath) || ((PakPath) other).fileSystem != fileSystem) {
+            return false;
+        }
+
+        PakPath suffix = (PakPath) other;
+
+        if (suffix.isAbsolute()) {
+            return equals(suffix);
+        }
+        if (suffix.path.isEmpty()) {
+            return path.isEmpty();
+        }
+        if (suffix.names.length > names.length) {
+            return false;
+        }
+        return Arrays.equals(names, names.length - suffix.names.length, names.length,
+                suffix.names, 0, suffix.names.length);
+    }
+
+    @Override
+    public Path normalize() {
+        Deque<String> normalizedNames = new ArrayDeque<>();
+
+        for (String name : names) {
+            if (name.equals(".")) {
+                continue;
+            }
+            if (name.equals("..") && !normalizedNames.isEmpty() && !normalizedNames.peekLast().equals("..")) {
+                normalizedNames.removeLast();
+            } else if (!name.equals("..") || !isAbsolute()) {   // there's nothing above the root
+                normalizedNames.addLast(name);
+            }
+        }
+
+        return of(normalizedNames.toArray(String[]::new), 0, normalizedNames.size(), isAbsolute());
+    }
+
+    @Override
+    public Path resolve(Path other) {
+        PakPath pakPath = toPakPath(other);
+
+        if (pakPath.isAbsolute() || path.isEmpty()) {
+            return pakPath;
+        }
+        if (pakPath.path.isEmpty()) {
+            return this;
+        }
+        return new PakPath(fileSystem, path + SEPARATOR + pakPath.path);
+    }
+
+    @Override
+    public Path relativize(Path other) {
+        PakPath pakPath = toPakPath(other);
+
+        if (pakPath.isAbsolute() != isAbsolute()) {
+            throw new IllegalArgumentException("Cannot relativize an absolute path with a relative one: " + other);
+        }
+
+        String[] otherNames = pakPath.path.isEmpty() ? NO_NAMES : pakPath.names;
+        String[] thisNames = path.isEmpty() ? NO_NAMES : names;
+        int common = 0;
+
+        while (common < thisNames.length && common < otherNames.length
+                && thisNames[common].equals(otherNames[common])) {
+            common++;
+        }
+
+        StringBuilder relativePath = new StringBuilder();
+
+        for (int i = common; i < thisNames.length; i++) {
+            relativePath.append(relativePath.length() > 0 ? SEPARATOR : "").append("..");
+        }
+        for (int i = common; i < otherNames.length; i++) {
+            relativePath.append(relativePath.length() > 0 ? SEPARATOR : "").append(otherNames[i]);
+        }
+
+        return new PakPath(fileSystem, relativePath.toString());
+    }
+
+    @Override
+    public URI toUri() {
+        try {
+            String entryPath = new URI(null, null, toAbsolutePath().toString(), null).getRawPath();
+            return URI.create(PakFileSystemProvider.SCHEME + ":" + fileSystem.getPakPath().toUri() + "!" + entryPath);
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException("Cannot build URI for path: " + path, e);
+        }
+    }
+
+    @Override
+    public Path toAbsolutePath() {
+        return isAbsolute() ? this : fileSystem.getRoot().resolve(this);
+    }
+
+    @Override
+    public Path toRealPath(LinkOption... options) throws IOException {
+        PakPath realPath = (PakPath) toAbsolutePath().normalize();
+        fileSystem.provider().checkAccess(realPath);
+
+        return realPath;
+    }
+
+    @Override
+    public WatchKey register(WatchService watcher, WatchEvent.Kind<?>[] events, WatchEvent.Modifier... modifiers) {
+        throw new UnsupportedOperationException("Watching pak files is not supported.");
+    }
+
+    @Override
+    public int compareTo(Path other) {
+        return path.compareTo(toPakPath(other).path);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof PakPath && ((PakPath) o).fileSystem == fileSystem && ((PakPath) o).path.equals(path);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(fileSystem, path);
+    }
+
+    @Override
+    public String toString() {
+        return path;
+    }
+
+}
@@ -1,16 +1,27 @@
 package net.dbd.demode.service;
 
 import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import net.dbd.demode.pak.PakChannels;
+import net.dbd.demode.pak.PakEntryHasher;
 import net.dbd.demode.pak.PakFile;
+import net.dbd.demode.pak.PakIndexCache;
+import net.dbd.demode.pak.domain.PakEntry;
+import net.dbd.demode.service.FileMetadataManager.FileMetadata;
+import net.dbd.demode.util.event.EventBus;
 import net.dbd.demode.util.event.EventListener;
-import net.dbd.demode.util.event.EventSupport;
 import net.dbd.demode.util.lang.OperationAbortedException;
 import net.dbd.demode.util.lang.Pair;
 
 import java.io.IOException;
-import java.nio.file.Path;
+import java.io.UncheckedIOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.*;
+import java.util.stream.IntStream;
+import java.util.zip.DataFormatException;
 
 import static java.util.stream.Collectors.*;
 
@@ -23,13 +34,17 @@ public class DbdPakManager {
 
         public enum EventType {BEGIN, FILE_PROCESSED, ABORTED}
 
-        private final EventSupport eventSupport = new EventSupport();
+        private final EventBus<EventType> eventBus = new EventBus<>(EventType.class);
 
-        private boolean abort;
+        private volatile boolean abort;
 
 
         public void registerListener(EventType eventType, EventListener eventListener) {
-            eventSupport.registerListener(eventType, eventListener);
+            eventBus.registerListener(eventType, eventListener);
+        }
+
+        public void registerListener(EventType eventType, Runnable listener) {
+            eventBus.registerListener(eventType, listener);
         }
 
         public void abort() {
@@ -37,39 +52,73 @@ public class DbdPakManager {
         }
 
         private void fireBeginEvent(int totalFiles) {
-            eventSupport.fireEvent(EventType.BEGIN, totalFiles);
+            eventBus.fireEvent(EventType.BEGIN, totalFiles);
         }
 
         private void fireFileProcessedEvent() {
-            eventSupport.fireEvent(EventType.FILE_PROCESSED);
+            eventBus.fireEvent(EventType.FILE_PROCESSED);
         }
 
         private void fireAbortEvent() {
-            eventSupport.fireEvent(EventType.ABORTED);
+            eventBus.fireEvent(EventType.ABORTED);
         }
 
         private void fireFinishEvent() {
-            eventSupport.fireEvent(EventType.FILE_PROCESSED);
+            eventBus.fireEvent(EventType.FILE_PROCESSED);
         }
 
     }
 
 
-    private final Map<Path, PakFile> index = new HashMap<>();
+    /**
+     * Files that are extracted to the same directory, no matter which paks they come from. They are checked together,
+     * by the same thread, so the directory is listed only once.
+     */
+    @RequiredArgsConstructor
+    private static final class ScanPartition {
+        private final Path outputDir;
+        private final List<PakFile> pakFiles = new ArrayList<>();    // the pak of each file
+        private final List<Path> filePaths = new ArrayList<>();
+
+        private void add(PakFile pakFile, Path filePath) {
+            pakFiles.add(pakFile);
+            filePaths.add(filePath);
+        }
+    }
+
+
+    private static final int DEFAULT_SCAN_PARALLELISM = Runtime.getRuntime().availableProcessors();
+    private static final boolean LISTING_HAS_ATTRIBUTES = System.getProperty("os.name").startsWith("Windows");
+
+    private final Map<Path, PakFile> index = new ConcurrentHashMap<>();
 
     @Getter
     private final List<PakFile> pakFiles = new ArrayList<>();
 
     private final FileMetadataManager fileMetadataManager;
     private final DbdPathService dbdPathService;
+    private final PakIndexCache pakIndexCache;
     private final Path dbdAbsolutePath;
 
+    @Getter
+    @Setter
+    private int scanParallelism = DEFAULT_SCAN_PARALLELISM;
+
+    @Getter
+    @Setter
+    private boolean directoryListingScan = true;     // list each output directory once instead of checking each file
+
+    @Getter
+    @Setter
+    private boolean deepVerify;                      // hash the content of every file, even if it looks untouched
+
 
-    public DbdPakManager(FileMetadataManager fileMetadataManager, DbdPathService dbdPathService, Path dbdAbsolutePath)
-            throws InvalidDbdHomePathException {
+    public DbdPakManager(FileMetadataManager fileMetadataManager, DbdPathService dbdPathService,
+                         PakIndexCache pakIndexCache, Path dbdAbsolutePath) throws InvalidDbdHomePathException {
 
         this.fileMetadataManager = fileMetadataManager;
         this.dbdPathService = dbdPathService;
+        this.pakIndexCache = pakIndexCache;
         this.dbdAbsolutePath = dbdAbsolutePath;
 
         dbdPathService.verifyDbdHomePath(dbdAbsolutePath);
@@ -78,22 +127,69 @@ public class DbdPakManager {
     }
 
 
+    /**
+     * Paks are independent from each other, so their indexes are loaded in parallel (in the common fork-join pool).
+     * The list keeps the order of the paks anyway.
+     */
     private void instantiatePakFiles() {
-        dbdPathService.getAvailablePakFilenames(dbdAbsolutePath).forEach(f -> {
-            var file = dbdPathService.getPakFilePath(dbdAbsolutePath, f).toFile();
-            pakFiles.add(new PakFile(file));
-        });
+        pakFiles.addAll(dbdPathService.getAvailablePakFilenames(dbdAbsolutePath).parallelStream()
+                .map(f -> dbdPathService.getPakFilePath(dbdAbsolutePath, f).toFile())
+                .map(file -> new PakFile(file, pakIndexCache.getPak(file)))
+                .collect(toList()));
     }
 
+    /**
+     * When the same file is packed in several paks, the one that comes last wins, as if the paks had been indexed
+     * one after the other.
+     */
     private void reindexPaks() {
         index.clear();
-        pakFiles.forEach(this::reindexPak);
+
+        // positions are looked up on every collision, so they are worked out up front
+        Map<PakFile, Integer> pakPositions = new IdentityHashMap<>();
+        for (int i = 0; i < pakFiles.size(); i++) {
+            pakPositions.put(pakFiles.get(i), i);
+        }
+
+        IntStream.range(0, pakFiles.size()).parallel().forEach(pakPosition -> {
+            PakFile pakFile = pakFiles.get(pakPosition);
+            pakFile.getFilePaths().forEach(filePath -> index.merge(filePath, pakFile, (existing, candidate) ->
+                    pakPositions.get(existing) > pakPosition ? existing : candidate));
+        });
     }
 
-    private void reindexPak(PakFile pakFile) {
-        pakFile.getFilePaths().forEach(filePath -> index.put(filePath, pakFile));
+
+    /**
+     * Every file of the installation, each one from the pak that wins it (see {@link #reindexPaks()}).
+     * Copies overridden by a later pak are left out: they would be overwritten anyway, and when paks are extracted
+     * in parallel there would be no telling which copy ends up on disk.
+     */
+    public MultiPakSelection selectEffectiveFiles() {
+        MultiPakSelection selection = new MultiPakSelection();
+
+        for (var pakFile : pakFiles) {
+            SinglePakSelection pakSelection = new SinglePakSelection(pakFile);
+
+            for (Path filePath : pakFile.getFilePaths()) {
+                if (isEffective(pakFile, filePath)) {
+                    pakSelection.addFile(filePath);
+                }
+            }
+
+            if (pakSelection.getTotalFiles() > 0) {
+                selection.addSinglePakSelection(pakSelection);
+            }
+        }
+
+        return selection;
     }
 
+    /**
+     * @return whether the file is extracted from this pak, rather than from a later one that overrides it.
+     */
+    private boolean isEffective(PakFile pakFile, Path filePath) {
+        return index.get(filePath) == pakFile;
+    }
 
     public MultiPakSelection selectAllFiles() {
 
@@ -103,21 +199,25 @@ public class DbdPakManager {
     }
 
 
+    /**
+     * Checking a file takes a few syscalls, so files are checked concurrently by {@link #scanParallelism} threads.
+     * Files are partitioned by output directory, so that each thread works on its own directories.
+     * Only the copy of the pak that wins is checked for files that several paks have, as that's the one on disk.
+     */
     public CompletableFuture<MultiPakSelection> selectMissingAndUnverified(PakSelectionMonitor progressMonitor) {
 
         return CompletableFuture.supplyAsync(() -> {
-            progressMonitor.fireBeginEvent(index.size());
+            List<ScanPartition> partitions = partitionByOutputDirectory();
+            progressMonitor.fireBeginEvent(partitions.stream().mapToInt(p -> p.filePaths.size()).sum());
+
+            Map<PakFile, Set<Path>> selectedFiles = scanInParallel(partitions, progressMonitor);
             var multiPakSelection = new MultiPakSelection();
 
             for (var pakFile : pakFiles) {
-                SinglePakSelection singlePakSelection;
-                try {
-                    singlePakSelection = selectMissingAndUnverified(pakFile, progressMonitor);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-                if (singlePakSelection.getTotalFiles() > 0) {
-                    multiPakSelection.addSinglePakSelection(singlePakSelection);
+                Set<Path> pakSelectedFiles = selectedFiles.get(pakFile);
+
+                if (pakSelectedFiles != null) {
+                    multiPakSelection.addSinglePakSelection(createSinglePakSelection(pakFile, pakSelectedFiles));
                 }
             }
             progressMonitor.fireFinishEvent();
@@ -126,41 +226,234 @@ public class DbdPakManager {
         });
     }
 
+    /**
+     * Paks usually share the output directory, and so do their directories, so partitions are shared among paks.
+     */
+    private List<ScanPartition> partitionByOutputDirectory() {
+        Map<Path, Map<Path, ScanPartition>> partitionsByPakDir = new HashMap<>();
+        List<ScanPartition> partitions = new ArrayList<>();
+
+        for (var pakFile : pakFiles) {
+            Path pakDir = pakFile.getFile().getParentFile().toPath();
+            Map<Path, ScanPartition> pakDirPartitions = partitionsByPakDir.computeIfAbsent(pakDir, d -> new HashMap<>());
+
+            for (Path filePath : pakFile.getFilePaths()) {
+                if (!isEffective(pakFile, filePath)) {
+                    continue;
+                }
+
+                ScanPartition partition = pakDirPartitions.get(filePath.getParent());
+
+                if (partition == null) {
+                    partition = new ScanPartition(toTargetPath(pakFile, filePath).getParent());
+                    pakDirPartitions.put(filePath.getParent(), partition);
+                    partitions.add(partition);
+                }
+                partition.add(pakFile, filePath);
+            }
+        }
 
-    private SinglePakSelection selectMissingAndUnverified(PakFile pakFile, PakSelectionMonitor progressMonitor)
-            throws OperationAbortedException, IOException {
+        return partitions;
+    }
 
-        Path mountPoint = pakFile.getIndex().getMountPoint();
-        var singlePakSelection = new SinglePakSelection(pakFile);
+    private Map<PakFile, Set<Path>> scanInParallel(List<ScanPartition> partitions, PakSelectionMonitor progressMonitor) {
+        ExecutorService executor = Executors.newFixedThreadPool(scanParallelism);
+        PakChannels pakChannels = new PakChannels();
 
-        for (var pakEntry : pakFile.getIndex().getEntries()) {
+        try {
+            List<Future<List<Integer>>> futures = partitions.stream()
+                    .map(partition -> executor.submit(() -> scanPartition(partition, pakChannels, progressMonitor)))
+                    .collect(toList());
+
+            Map<PakFile, Set<Path>> selectedFiles = new HashMap<>();
+
+            for (int i = 0; i < partitions.size(); i++) {
+                ScanPartition partition = partitions.get(i);
+
+                for (int fileNumber : awaitScan(futures.get(i))) {
+                    selectedFiles.computeIfAbsent(partition.pakFiles.get(fileNumber), p -> new HashSet<>())
+                            .add(partition.filePaths.get(fileNumber));
+                }
+            }
+
+            return selectedFiles;
+
+        } finally {
+            executor.shutdownNow();
+            pakChannels.close();
+        }
+    }
+
+    /**
+     * @return the numbers (within the partition) of the files that are missing or unverified.
+     */
+    private List<Integer> scanPartition(ScanPartition partition, PakChannels pakChannels,
+                                        PakSelectionMonitor progressMonitor) throws IOException {
+
+        List<Integer> selectedFiles = new ArrayList<>();
+        Map<Path, BasicFileAttributes> outputFiles = directoryListingScan ? listOutputDirectory(partition) : null;
+
+        for (int i = 0; i < partition.filePaths.size(); i++) {
 
             if (progressMonitor.abort) {
                 throw new OperationAbortedException();
             }
 
-            Path filePath = mountPoint.resolve(pakEntry.getFilePath());
+            PakFile pakFile = partition.pakFiles.get(i);
+            Path filePath = partition.filePaths.get(i);
+            BasicFileAttributes attributes = outputFiles != null
+                    ? outputFiles.get(filePath.getFileName())
+                    : readAttributes(toTargetPath(pakFile, filePath));
 
-            if (isFileMissingOrUnverified(pakFile, filePath)) {
-                singlePakSelection.addFile(filePath);
+            if (isFileMissingOrUnverified(pakFile, filePath, attributes, pakChannels)) {
+                selectedFiles.add(i);
             }
 
             progressMonitor.fireFileProcessedEvent();
         }
 
-        return singlePakSelection;
+        return selectedFiles;
+    }
+
+    /**
+     * Reads the output directory of the partition in one go.
+     * On Windows, the directory listing already carries the attributes of each file, and the file tree walker hands
+     * them over without one more stat per file. Elsewhere, the listing only has names, so each file of the partition
+     * that is in the directory is still stat'ed, but the files that are not in the partition (like the ones the user
+     * put there) are skipped without reading them.
+     *
+     * @return the attributes of the regular files of the partition that are in the directory, by file name.
+     */
+    private Map<Path, BasicFileAttributes> listOutputDirectory(ScanPartition partition) throws IOException {
+        Map<Path, BasicFileAttributes> fileAttributes = new HashMap<>();
+
+        if (!Files.isDirectory(partition.outputDir)) {
+            return fileAttributes;
+        }
+
+        Set<Path> fileNames = partition.filePaths.stream().map(Path::getFileName).collect(toSet());
+
+        if (LISTING_HAS_ATTRIBUTES) {
+            Files.walkFileTree(partition.outputDir, EnumSet.noneOf(FileVisitOption.class), 1, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                    if (attributes.isRegularFile() && fileNames.contains(file.getFileName())) {
+                        fileAttributes.put(file.getFileName(), attributes);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    // deleted while listing, so it's missing
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+
+            return fileAttributes;
+        }
+
+        try (DirectoryStream<Path> directoryStream = Files.newDirectoryStream(partition.outputDir)) {
+            for (Path file : directoryStream) {
+                if (!fileNames.contains(file.getFileName())) {
+                    continue;
+                }
+
+                BasicFileAttributes attributes = readAttributes(file);
+
+                if (attributes != null && attributes.isRegularFile()) {
+                    fileAttributes.put(file.getFileName(), attributes);
+                }
+            }
+        }
+
+        return fileAttributes;
     }
 
-    private boolean isFileMissingOrUnverified(PakFile pakFile, Path relativeTargetFilePath) throws IOException {
-        Path targetFilePath = pakFile.getFile().getParentFile().toPath().resolve(relativeTargetFilePath).normalize();
+    private List<Integer> awaitScan(Future<List<Integer>> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperationAbortedException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
 
-        if (!targetFilePath.toFile().exists()) {
+    /**
+     * @return null if the file does not exist.
+     */
+    private BasicFileAttributes readAttributes(Path targetFilePath) throws IOException {
+        try {
+            return Files.readAttributes(targetFilePath, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    /**
+     * The check is done in tiers, from cheapest to most expensive:
+     * <ol>
+     *     <li>the file must exist and have the size of the entry,</li>
+     *     <li>its metadata must say that it was extracted from this very entry,</li>
+     *     <li>if its size and modification time are still the ones it had when it was extracted, we trust it.
+     *     Otherwise (or always, in deep verify mode), its content is hashed and compared with the entry.</li>
+     * </ol>
+     * Files extracted by older versions have no size and time in their metadata. Those are trusted as before,
+     * unless in deep verify mode.
+     *
+     * @param attributes null if the file does not exist.
+     */
+    private boolean isFileMissingOrUnverified(PakFile pakFile, Path relativeTargetFilePath, BasicFileAttributes attributes,
+                                              PakChannels pakChannels) {
+        if (attributes == null || attributes.size() != pakFile.getFileSize(relativeTargetFilePath)) {
             return true;
         }
 
-        String hash = fileMetadataManager.readHash(targetFilePath);
+        Path targetFilePath = toTargetPath(pakFile, relativeTargetFilePath);
+        FileMetadata metadata = fileMetadataManager.readMetadata(targetFilePath);
+
+        if (metadata == null || !pakFile.getFileHash(relativeTargetFilePath).equals(metadata.getHash())) {
+            return true;
+        }
+
+        if (!deepVerify && (metadata.matches(attributes) || !metadata.hasFileStat())) {
+            return false;
+        }
+
+        return !isContentIntact(pakFile, relativeTargetFilePath, targetFilePath, pakChannels);
+    }
+
+    /**
+     * If the content turns out to be fine, the metadata is refreshed, so that next time we can take the fast path.
+     */
+    private boolean isContentIntact(PakFile pakFile, Path relativeTargetFilePath, Path targetFilePath,
+                                    PakChannels pakChannels) {
+        PakEntry entry = pakFile.getEntry(relativeTargetFilePath);
+
+        try {
+            if (!PakEntryHasher.hashFile(targetFilePath).equals(PakEntryHasher.hashContent(pakChannels.get(pakFile), entry))) {
+                return false;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (DataFormatException e) {
+            throw new RuntimeException("Failed to inflate: " + entry.getFilePath(), e);
+        }
+
+        fileMetadataManager.writeHash(targetFilePath, entry.getHash());
+
+        return true;
+    }
 
-        return hash == null || !pakFile.getFileHash(relativeTargetFilePath).equals(hash);
+    private Path toTargetPath(PakFile pakFile, Path relativeTargetFilePath) {
+        return pakFile.getFile().getParentFile().toPath().resolve(relativeTargetFilePath).normalize();
     }
 
 
@@ -68,7 +68,7 @@ public class DbdPathService {
 
     public boolean isValidDbdHomePath(Path path) {
         return path.toFile().isDirectory()
-                && path.resolve(DBD_EXE_FILE).toFile().exists()
+                && getExeFilePath(path).toFile().exists()
                 && !getAvailablePakFilenames(path).isEmpty();
     }
 
@@ -104,6 +104,10 @@ public class DbdPathService {
         return dbdHomePath.resolve(PAKS_RELATIVE_PATH).resolve(filename);
     }
 
+    public Path getExeFilePath(Path dbdHomePath) {
+        return dbdHomePath.resolve(DBD_EXE_FILE);
+    }
+
     public List<PakFile> sortPakFiles(Collection<PakFile> pakFiles) {
         return pakFiles.stream()
                 .sorted(comparing(pf -> parsePakFilename(pf.getFile().getName()).left()))
@@ -2,17 +2,27 @@ package net.dbd.demode.service;
 
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import net.dbd.demode.pak.EntryOutputFile;
+import net.dbd.demode.pak.ExtractionOptions;
 import net.dbd.demode.pak.ExtractionStats;
 import net.dbd.demode.pak.PakExtractor;
+import net.dbd.demode.pak.PakFile;
 import net.dbd.demode.service.DbdPakManager.PakSelectionMonitor;
+import net.dbd.demode.service.FileVerifier.VerifyMonitor;
+import net.dbd.demode.util.event.EventBus;
 import net.dbd.demode.util.event.EventListener;
-import net.dbd.demode.util.event.EventSupport;
+import net.dbd.demode.util.event.ProgressChannel;
 import net.dbd.demode.util.lang.OperationAbortedException;
 
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.concurrent.CompletableFuture;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 import java.util.zip.DataFormatException;
 
@@ -27,11 +37,10 @@ public class DbdUnpacker {
         FILE_SELECT__BEGIN,
         FILE_SELECT__FILE_PROCESSED,
         FILE_SELECT__FINISH,
+        UNPACK_RESUMED,
 
         UNPACK_BEGIN,
         PAK_EXTRACT_BEGIN,
-        FILE_EXTRACTED,
-        BYTES_EXTRACTED,
         PAK_EXTRACT_FINISH,
         UNPACK_FINISH,
         ABORTED
@@ -40,25 +49,43 @@ public class DbdUnpacker {
     private static final long MiB = 1024 * 1024;
     private static final long GiB = 1024 * MiB;
     private static final long MIN_FREE_DISK_SPACE = 5 * GiB;
+    private static final int DEFAULT_PARALLELISM = 1;
 
     private final FileMetadataManager fileMetadataManager;
     private final DbdPathService dbdPathService;
     private final DbdPakManager dbdPakManager;
-    private final EventSupport eventSupport = new EventSupport();
+    private final FileVerifier fileVerifier;
+    private final EventBus<EventType> eventBus = new EventBus<>(EventType.class);
+
+    /**
+     * Max number of paks extracted at the same time. With 1, paks are extracted one after another.
+     */
+    @Getter
+    @Setter
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    @Getter
+    private final ExtractionOptions extractionOptions = new ExtractionOptions();
 
 
     public static final class UnpackMonitor {
-        private final EventSupport eventSupport = new EventSupport();
+        private final EventBus<EventType> eventBus = new EventBus<>(EventType.class);
+        /* when extracting in parallel, this holds the stats of the pak that started most recently. */
         @Getter
-        private final ExtractionStats currentPakStats = new ExtractionStats();
+        private volatile ExtractionStats currentPakStats = new ExtractionStats();
         @Getter
         private final ExtractionStats totalStats = new ExtractionStats();
-        @Getter
-        private int currentPak;
+        /* the stats of every pak that has been started, in the order in which they started */
+        private final Map<PakFile, ExtractionStats> pakStats = Collections.synchronizedMap(new LinkedHashMap<>());
+        /* files and bytes extracted, published at a fixed rate instead of on every file */
+        private final ProgressChannel progressChannel = new ProgressChannel();
+        private final AtomicInteger currentPak = new AtomicInteger();
         @Getter
         private int totalPaks;
-        private PakSelectionMonitor pakSelectionMonitor;
-        private PakExtractor pakExtractor;
+        private volatile PakSelectionMonitor pakSelectionMonitor;
+        private final Set<PakExtractor> pakExtractors = ConcurrentHashMap.newKeySet();
+        private volatile ExtractionJournal journal;
+        private volatile boolean abort;
         private Supplier<CompletableFuture<Void>> startAction;
 
 
@@ -67,9 +94,9 @@ public class DbdUnpacker {
             pakSelectionMonitor.registerListener(PakSelectionMonitor.EventType.BEGIN,
                     e -> fireEvent(EventType.FILE_SELECT__BEGIN, e.getValue()));
             pakSelectionMonitor.registerListener(PakSelectionMonitor.EventType.FILE_PROCESSED,
-                    e -> fireEvent(EventType.FILE_SELECT__FILE_PROCESSED));
+                    () -> fireEvent(EventType.FILE_SELECT__FILE_PROCESSED));
             pakSelectionMonitor.registerListener(PakSelectionMonitor.EventType.ABORTED,
-                    e -> fireEvent(EventType.ABORTED));
+                    () -> fireEvent(EventType.ABORTED));
         }
 
         private void setStartAction(Supplier<CompletableFuture<Void>> startAction) {
@@ -81,26 +108,47 @@ public class DbdUnpacker {
         }
 
         public void abort() {
+            PakSelectionMonitor pakSelectionMonitor = this.pakSelectionMonitor;
+
             if (pakSelectionMonitor != null) {
                 pakSelectionMonitor.abort();
                 return;
             }
-            if (pakExtractor != null) {
-                pakExtractor.abort();
+            abort = true;
+            pakExtractors.forEach(PakExtractor::abort);
+        }
+
+        public int getCurrentPak() {
+            return currentPak.get();
+        }
+
+        public Map<PakFile, ExtractionStats> getPakStats() {
+            synchronized (pakStats) {
+                return new LinkedHashMap<>(pakStats);
             }
         }
 
         public UnpackMonitor registerListener(EventType eventType, EventListener eventListener) {
-            eventSupport.registerListener(eventType, eventListener);
+            eventBus.registerListener(eventType, eventListener);
+            return this;
+        }
+
+        public UnpackMonitor registerListener(EventType eventType, Runnable listener) {
+            eventBus.registerListener(eventType, listener);
+            return this;
+        }
+
+        public UnpackMonitor registerProgressListener(ProgressChannel.ProgressListener progressListener) {
+            progressChannel.registerListener(progressListener);
             return this;
         }
 
-        public void fireEvent(Object eventType) {
-            eventSupport.fireEvent(eventType);
+        public void fireEvent(EventType eventType) {
+            eventBus.fireEvent(eventType);
         }
 
-        public void fireEvent(Object eventType, Object eventValue) {
-            eventSupport.fireEvent(eventType, eventValue);
+        public void fireEvent(EventType eventType, Object eventValue) {
+            eventBus.fireEvent(eventType, eventValue);
         }
     }
 
@@ -112,10 +160,20 @@ public class DbdUnpacker {
         return monitor;
     }
 
+    /**
+     * If the previous unpack was interrupted, it's resumed instead: only the files it didn't get to are extracted.
+     */
     private CompletableFuture<Void> unpackAll(Path outputPath, UnpackMonitor monitor) {
         return CompletableFuture.runAsync(() -> {
             monitor.pakSelectionMonitor = null;
-            var selection = dbdPakManager.selectAllFiles();
+            MultiPakSelection selection = recoverInterruptedUnpack(outputPath);
+
+            if (selection != null) {
+                monitor.fireEvent(EventType.UNPACK_RESUMED, selection);
+                monitor.fireEvent(EventType.FILE_SELECT__FINISH, selection);
+            } else {
+                selection = dbdPakManager.selectEffectiveFiles();
+            }
             try {
                 unpackSelection(selection, outputPath, monitor);
             } catch (DataFormatException | IOException e) {
@@ -132,9 +190,19 @@ public class DbdUnpacker {
         return monitor;
     }
 
+    /**
+     * If the previous unpack was interrupted, the files it didn't get to are all that's left to do, so there's
+     * no need to check every file.
+     */
     private CompletableFuture<Void> unpackMissingAndUnverified(Path outputPath, UnpackMonitor unpackMonitor) {
 
-        return dbdPakManager.selectMissingAndUnverified(unpackMonitor.pakSelectionMonitor).thenAccept(selection -> {
+        return CompletableFuture.supplyAsync(() -> recoverInterruptedUnpack(outputPath)).thenCompose(pendingSelection -> {
+            if (pendingSelection != null) {
+                unpackMonitor.fireEvent(EventType.UNPACK_RESUMED, pendingSelection);
+                return CompletableFuture.completedFuture(pendingSelection);
+            }
+            return dbdPakManager.selectMissingAndUnverified(unpackMonitor.pakSelectionMonitor);
+        }).thenAccept(selection -> {
             unpackMonitor.pakSelectionMonitor = null;
             unpackMonitor.fireEvent(EventType.FILE_SELECT__FINISH, selection);
             try {
@@ -145,6 +213,103 @@ public class DbdUnpacker {
         });
     }
 
+
+    /**
+     * Hashes every extracted file and compares it with the paks, without trusting the stored metadata.
+     * Files that several paks have are compared with the pak that wins, as that's the copy that is extracted.
+     * The selection it completes with can be passed to {@link #unpackSelection(MultiPakSelection, Path)} to extract
+     * the missing and corrupted files again.
+     */
+    public VerifyMonitor verify(Path outputPath) {
+        return fileVerifier.verify(dbdPakManager.selectEffectiveFiles(), outputPath);
+    }
+
+
+    /**
+     * If the previous unpack was interrupted, the files it didn't get to are extracted too.
+     */
+    public UnpackMonitor unpackSelection(MultiPakSelection selection, Path outputPath) {
+        UnpackMonitor monitor = new UnpackMonitor();
+        monitor.setStartAction(() -> CompletableFuture.runAsync(() -> {
+            monitor.pakSelectionMonitor = null;
+            MultiPakSelection pendingSelection = recoverInterruptedUnpack(outputPath);
+            MultiPakSelection fullSelection = selection;
+
+            if (pendingSelection != null) {
+                monitor.fireEvent(EventType.UNPACK_RESUMED, pendingSelection);
+                fullSelection = merge(selection, pendingSelection);
+            }
+            try {
+                unpackSelection(fullSelection, outputPath, monitor);
+            } catch (DataFormatException | IOException e) {
+                throw new RuntimeException(e);
+            }
+        }));
+
+        return monitor;
+    }
+
+    /**
+     * Deletes what the interrupted unpack (if any) may have left half-written. With atomic output, that's just the
+     * temporary files: the files themselves are either the ones from before or complete new ones, so they are kept.
+     * Otherwise, the files it didn't finish are deleted too.
+     *
+     * @return the files that are left to unpack; or null if there's nothing to resume.
+     */
+    private MultiPakSelection recoverInterruptedUnpack(Path outputPath) {
+        if (!ExtractionJournal.exists(outputPath)) {
+            return null;
+        }
+
+        Path paksOutputPath = outputPath.resolve(dbdPathService.getPaksRelativePath());
+
+        try {
+            ExtractionJournal.Recovery recovery = ExtractionJournal.recover(outputPath, dbdPakManager.getPakFiles());
+
+            if (recovery == null) {
+                ExtractionJournal.delete(outputPath);
+                return null;
+            }
+
+            log.info("Found an interrupted unpack with {} files left.", recovery.getPendingFiles().size());
+
+            for (Path filePath : recovery.getPendingFiles()) {
+                Path targetFilePath = paksOutputPath.resolve(filePath).normalize();
+
+                if (!recovery.isAtomicOutput() && Files.deleteIfExists(targetFilePath)) {
+                    fileMetadataManager.removeHash(targetFilePath);
+                }
+                Files.deleteIfExists(EntryOutputFile.tempFileOf(targetFilePath));
+            }
+            fileMetadataManager.flush();
+            ExtractionJournal.delete(outputPath);
+
+            return recovery.getPendingSelection();
+
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to recover interrupted unpack.", e);
+        }
+    }
+
+    /**
+     * @return the files of both selections, each only once.
+     */
+    private MultiPakSelection merge(MultiPakSelection selection, MultiPakSelection otherSelection) {
+        Map<PakFile, Set<Path>> filePaths = new LinkedHashMap<>();
+
+        for (MultiPakSelection multiPakSelection : List.of(selection, otherSelection)) {
+            for (SinglePakSelection pakSelection : multiPakSelection) {
+                filePaths.computeIfAbsent(pakSelection.getPakFile(), p -> new LinkedHashSet<>())
+                        .addAll(pakSelection.getFilePaths());
+            }
+        }
+
+        MultiPakSelection mergedSelection = new MultiPakSelection();
+        filePaths.forEach((pakFile, paths) -> mergedSelection.addSinglePakSelection(new SinglePakSelection(pakFile, paths)));
+
+        return mergedSelection;
+    }
+
     private void unpackSelection(MultiPakSelection selection, Path outputPath, UnpackMonitor unpackMonitor)
             throws DataFormatException, IOException {
 
@@ -157,47 +322,149 @@ public class DbdUnpacker {
         unpackMonitor.totalPaks = selection.getSinglePakSelections().size();
         unpackMonitor.totalStats.start(selection.getTotalFiles(), selection.getTotalBytes());
         unpackMonitor.fireEvent(EventType.UNPACK_BEGIN);
+        unpackMonitor.progressChannel.start();
 
-        for (SinglePakSelection singlePakSelection : selection) {
+        Path paksOutputPath = outputPath.resolve(dbdPathService.getPaksRelativePath());
+        ExtractionJournal journal = ExtractionJournal.create(outputPath, selection, extractionOptions.isAtomicOutput());
+        unpackMonitor.journal = journal;
 
-            if (!unpackPak(singlePakSelection, outputPath.resolve(dbdPathService.getPaksRelativePath()), unpackMonitor)) {
-                return;
+        try {
+            if (parallelism > 1 && unpackMonitor.totalPaks > 1) {
+                unpackPaksInParallel(selection, paksOutputPath, unpackMonitor);
+            } else {
+                for (SinglePakSelection singlePakSelection : selection) {
+                    unpackPak(singlePakSelection, paksOutputPath, unpackMonitor, new ExtractionStats());
+                }
             }
+        } catch (OperationAbortedException e) {
+            // TODO: improve: just let this exception be handled upstream as an exception and not an event
+            unpackMonitor.currentPakStats.stop();
+            unpackMonitor.totalStats.stop();
+            unpackMonitor.fireEvent(EventType.ABORTED);
+            return;
+        } finally {
+            unpackMonitor.progressChannel.stop();
+            fileMetadataManager.flush();
+            unpackMonitor.journal = null;
+            journal.close();
         }
 
+        ExtractionJournal.delete(outputPath);
         unpackMonitor.totalStats.stop();
         unpackMonitor.fireEvent(EventType.UNPACK_FINISH);
     }
 
-    private boolean unpackPak(SinglePakSelection pakSelection, Path outputPath, UnpackMonitor unpackMonitor)
+    /**
+     * Each pak is extracted by its own {@link PakExtractor} on a bounded pool of workers.
+     * If one of them fails or is aborted, the rest are aborted too. Either way, this doesn't return until every worker
+     * has stopped, since the journal and the metadata are closed right after.
+     */
+    private void unpackPaksInParallel(MultiPakSelection selection, Path outputPath, UnpackMonitor unpackMonitor)
             throws DataFormatException, IOException {
 
-        unpackMonitor.currentPak++;
-        unpackMonitor.currentPakStats.start(pakSelection.getTotalFiles(), pakSelection.getTotalBytes());
-        unpackMonitor.fireEvent(EventType.PAK_EXTRACT_BEGIN, pakSelection.getPakFile());
-
-        PakExtractor pakExtractor = new PakExtractor();
-        pakExtractor.registerListener(PakExtractor.EventType.FILE_EXTRACTED,
-                e -> handleFileExtractedEvent(unpackMonitor, (PakExtractor.ExtractedFileInfo) e.getValue()));
-        pakExtractor.registerListener(PakExtractor.EventType.BYTES_EXTRACTED,
-                e -> handleBytesExtractedEvent(unpackMonitor, (long) e.getValue()));
-        pakExtractor.registerListener(PakExtractor.EventType.PAK_EXTRACTED,
-                e -> handlePakExtractedEvent(unpackMonitor));
-        pakExtractor.registerListener(PakExtractor.EventType.ABORTED,
-                e -> handleExtractAbort());
-        unpackMonitor.pakExtractor = pakExtractor;
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, unpackMonitor.totalPaks));
+        List<Future<Void>> futures = new ArrayList<>();
+        boolean completed = false;
 
         try {
-            pakExtractor.extract(pakSelection.getPakFile(), pakSelection.getFilePaths(), outputPath);
-        } catch (OperationAbortedException e) {
-            // TODO: improve: just let this exception be handled upstream as an exception and not an event
-            unpackMonitor.currentPakStats.stop();
-            unpackMonitor.totalStats.stop();
-            unpackMonitor.fireEvent(EventType.ABORTED);
-            return false;
+            for (SinglePakSelection singlePakSelection : selection) {
+                futures.add(executor.submit(() -> {
+                    unpackPak(singlePakSelection, outputPath, unpackMonitor, new ExtractionStats());
+                    return null;
+                }));
+            }
+
+            for (Future<Void> future : futures) {
+                awaitPakExtraction(future, unpackMonitor);
+            }
+            completed = true;
+        } finally {
+            if (!completed) {
+                unpackMonitor.abort();
+            }
+            executor.shutdownNow();
+            awaitTermination(executor);
         }
+    }
+
+    private void awaitTermination(ExecutorService executor) {
+        boolean interrupted = false;
 
-        return true;
+        while (true) {
+            try {
+                if (executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                    break;
+                }
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void awaitPakExtraction(Future<Void> future, UnpackMonitor unpackMonitor)
+            throws DataFormatException, IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            unpackMonitor.abort();
+            throw new OperationAbortedException();
+        } catch (ExecutionException e) {
+            unpackMonitor.abort();
+            Throwable cause = e.getCause();
+
+            if (cause instanceof DataFormatException) {
+                throw (DataFormatException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private void unpackPak(SinglePakSelection pakSelection, Path outputPath, UnpackMonitor unpackMonitor,
+                           ExtractionStats pakStats) throws DataFormatException, IOException {
+
+        PakExtractor pakExtractor = new PakExtractor(extractionOptions);
+        unpackMonitor.pakExtractors.add(pakExtractor);
+
+        try {
+            if (unpackMonitor.abort) {
+                throw new OperationAbortedException();
+            }
+
+            unpackMonitor.currentPak.incrementAndGet();
+            pakStats.start(pakSelection.getTotalFiles(), pakSelection.getTotalBytes());
+            unpackMonitor.currentPakStats = pakStats;
+            unpackMonitor.pakStats.put(pakSelection.getPakFile(), pakStats);
+            unpackMonitor.fireEvent(EventType.PAK_EXTRACT_BEGIN, pakSelection.getPakFile());
+
+            pakExtractor.registerValueListener(PakExtractor.EventType.FILE_EXTRACTED,
+                    extractedFileInfo -> handleFileExtractedEvent(unpackMonitor, pakStats, pakSelection.getPakFile(),
+                            extractedFileInfo));
+            pakExtractor.registerLongListener(PakExtractor.EventType.BYTES_EXTRACTED,
+                    bytes -> handleBytesExtractedEvent(unpackMonitor, pakStats, bytes));
+            pakExtractor.registerListener(PakExtractor.EventType.PAK_EXTRACTED,
+                    () -> handlePakExtractedEvent(unpackMonitor, pakStats));
+            pakExtractor.registerListener(PakExtractor.EventType.ABORTED,
+                    this::handleExtractAbort);
+
+            pakExtractor.extract(pakSelection.getPakFile(), pakSelection.getFilePaths(), outputPath);
+
+            if (extractionOptions.isPipelined()) {
+                log.info("Pipeline stats for {}: {}", pakSelection.getPakFile().getFile().getName(), pakExtractor.getPipelineStats());
+            }
+        } finally {
+            unpackMonitor.pakExtractors.remove(pakExtractor);
+        }
     }
 
 
@@ -207,22 +474,29 @@ public class DbdUnpacker {
         }
     }
 
-    private void handleFileExtractedEvent(UnpackMonitor unpackMonitor, PakExtractor.ExtractedFileInfo extractedFileInfo) {
-        unpackMonitor.currentPakStats.incrementFilesExtracted();
+    private void handleFileExtractedEvent(UnpackMonitor unpackMonitor, ExtractionStats pakStats, PakFile pakFile,
+                                          PakExtractor.ExtractedFileInfo extractedFileInfo) {
+        pakStats.incrementFilesExtracted();
         unpackMonitor.totalStats.incrementFilesExtracted();
         fileMetadataManager.writeHash(extractedFileInfo.getFile().toPath(), extractedFileInfo.getHash());
-        unpackMonitor.fireEvent(EventType.FILE_EXTRACTED);
+
+        try {
+            unpackMonitor.journal.markDone(pakFile, extractedFileInfo.getRelativeFilePath());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write to extraction journal.", e);
+        }
+        unpackMonitor.progressChannel.addItems(1);
     }
 
-    private void handleBytesExtractedEvent(UnpackMonitor unpackMonitor, long bytes) {
-        unpackMonitor.currentPakStats.incrementBytesExtracted(bytes);
+    private void handleBytesExtractedEvent(UnpackMonitor unpackMonitor, ExtractionStats pakStats, long bytes) {
+        pakStats.incrementBytesExtracted(bytes);
         unpackMonitor.totalStats.incrementBytesExtracted(bytes);
-        unpackMonitor.fireEvent(EventType.BYTES_EXTRACTED);
+        unpackMonitor.progressChannel.addBytes(bytes);
     }
 
-    private void handlePakExtractedEvent(UnpackMonitor unpackMonitor) {
-        unpackMonitor.currentPakStats.stop();
-        unpackMonitor.fireEvent(EventType.PAK_EXTRACT_FINISH, unpackMonitor.currentPakStats.elapsed());
+    private void handlePakExtractedEvent(UnpackMonitor unpackMonitor, ExtractionStats pakStats) {
+        pakStats.stop();
+        unpackMonitor.fireEvent(EventType.PAK_EXTRACT_FINISH, pakStats.elapsed());
     }
 
     private void handleExtractAbort() {
@@ -230,7 +504,7 @@ public class DbdUnpacker {
     }
 
     private void fireEvent(EventType eventType) {
-        eventSupport.fireEvent(eventType);
+        eventBus.fireEvent(eventType);
     }
 
 }
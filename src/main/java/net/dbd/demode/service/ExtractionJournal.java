@@ -0,0 +1,299 @@
+package net.dbd.demode.service;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import net.dbd.demode.pak.EntryOutputFile;
+import net.dbd.demode.pak.PakFile;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Durable record of an extraction in progress, so that an interrupted extraction can be resumed where it stopped.
+ * <p>
+ * It's an append-only file in the output directory with:
+ * <ul>
+ *     <li>the plan: whether the files are written atomically, the paks (with their size and modification time) and
+ *     the paths of the selected entries,</li>
+ *     <li>a (pak, entry) record for every entry that has been completely extracted, appended in batches. Entries are
+ *     identified by their number in the plan.</li>
+ * </ul>
+ * The journal is deleted when the extraction finishes. If it's still there on the next run, the extraction was
+ * interrupted: the entries that are not marked as done are the only ones that need to be extracted again, so there's
+ * no need to scan the output directory. Entries are marked as done after their file is closed, so half-written files
+ * are never marked as done. A torn record at the end (because the app was killed while writing it) is just ignored.
+ * <p>
+ * The plan has the paths, rather than the positions of the entries in the pak indexes, so that the files that were not
+ * done can still be found (and deleted, as they may be half-written) after a pak has changed or disappeared.
+ * <p>
+ * There can only be one journal per output directory: a new one cannot be created until the previous one has been
+ * recovered and deleted, so an interrupted extraction is never forgotten.
+ * <p>
+ * Marking entries as done is thread-safe.
+ *
+ * @author Nicky Ramone
+ */
+class ExtractionJournal implements Closeable {
+
+    static final String FILENAME = "demode-unpack.journal";
+
+    private static final int MAGIC = 0x444d4a4c;    // "DMJL"
+    private static final int FORMAT_VERSION = 3;
+    private static final int BATCH_SIZE = 256;      // in done records
+    private static final long MAX_BATCH_AGE_NANOS = 1_000_000_000L;   // so that big files don't delay the batch forever
+    private static final int DONE_RECORD_SIZE = 2 * Integer.BYTES;
+
+
+    /**
+     * What was left of an interrupted extraction.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    static final class Recovery {
+        /* whether the files were written through temporary files, in which case only those can be half-written */
+        private final boolean atomicOutput;
+        /* the entries that were not done yet; null if any of the paks changed since, as the plan is no longer valid */
+        private final MultiPakSelection pendingSelection;
+        /* the paths of the entries that were not done yet, some of which may be half-written, including the ones of
+           the paks that changed */
+        private final List<Path> pendingFiles;
+    }
+
+
+    private final FileChannel channel;
+    private final Map<PakFile, Integer> pakNumbers = new HashMap<>();
+    private final Map<PakFile, Map<Path, Integer>> entryNumbers = new HashMap<>();
+    private final ByteBuffer batch = ByteBuffer.allocate(BATCH_SIZE * DONE_RECORD_SIZE);
+    private long lastFlushTime = System.nanoTime();
+
+
+    private ExtractionJournal(FileChannel channel) {
+        this.channel = channel;
+    }
+
+
+    /**
+     * Starts a new journal for the given selection.
+     * The plan is forced to disk before returning, so it's there before the first file is extracted.
+     *
+     * @param atomicOutput whether the files are written to temporary files first (see {@link EntryOutputFile}).
+     * @throws FileAlreadyExistsException if there's a journal already, which has to be recovered first.
+     */
+    static ExtractionJournal create(Path rootDir, MultiPakSelection selection, boolean atomicOutput) throws IOException {
+        Path file = rootDir.resolve(FILENAME);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        ExtractionJournal journal = new ExtractionJournal(channel);
+
+        try {
+            journal.writePlan(selection, atomicOutput);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            Files.deleteIfExists(file);
+            throw e;
+        }
+
+        return journal;
+    }
+
+    static boolean exists(Path rootDir) {
+        return Files.exists(rootDir.resolve(FILENAME));
+    }
+
+    static void delete(Path rootDir) throws IOException {
+        Files.deleteIfExists(rootDir.resolve(FILENAME));
+    }
+
+
+    private void writePlan(MultiPakSelection selection, boolean atomicOutput) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeBoolean(atomicOutput);
+        out.writeInt(selection.getSinglePakSelections().size());
+
+        for (SinglePakSelection pakSelection : selection) {
+            PakFile pakFile = pakSelection.getPakFile();
+            List<Path> filePaths = pakSelection.getFilePaths();
+            Map<Path, Integer> numbers = new HashMap<>(filePaths.size() * 2);
+
+            out.writeUTF(pakFile.getFile().getName());
+            out.writeLong(pakFile.getFile().length());
+            out.writeLong(pakFile.getFile().lastModified());
+            out.writeInt(filePaths.size());
+
+            for (Path filePath : filePaths) {
+                out.writeUTF(filePath.toString());
+                numbers.put(filePath, numbers.size());
+            }
+
+            pakNumbers.put(pakFile, pakNumbers.size());
+            entryNumbers.put(pakFile, numbers);
+        }
+
+        write(ByteBuffer.wrap(bytes.toByteArray()));
+        channel.force(false);
+    }
+
+    /**
+     * To be called once the file of the entry has been completely written.
+     */
+    synchronized void markDone(PakFile pakFile, Path filePath) throws IOException {
+        Integer pakNumber = pakNumbers.get(pakFile);
+        Integer entryNumber = pakNumber != null ? entryNumbers.get(pakFile).get(filePath) : null;
+
+        if (entryNumber == null) {
+            throw new IllegalArgumentException("File is not in the journal: " + filePath);
+        }
+
+        batch.putInt(pakNumber).putInt(entryNumber);
+
+        if (!batch.hasRemaining() || System.nanoTime() - lastFlushTime > MAX_BATCH_AGE_NANOS) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes and syncs the done records that are still in memory.
+     */
+    synchronized void flush() throws IOException {
+        if (batch.position() == 0) {
+            return;
+        }
+
+        batch.flip();
+        write(batch);
+        batch.clear();
+        channel.force(false);
+        lastFlushTime = System.nanoTime();
+    }
+
+    /**
+     * Keeps the journal, so that the extraction can be resumed. Delete it when the extraction is finished.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+
+    /**
+     * Reads the journal left by an interrupted extraction.
+     *
+     * @param pakFiles the paks as they are now.
+     * @return null if the journal is unreadable.
+     */
+    static Recovery recover(Path rootDir, List<PakFile> pakFiles) throws IOException {
+        Path file = rootDir.resolve(FILENAME);
+        Map<String, PakFile> pakFilesByName = new HashMap<>();
+        pakFiles.forEach(pakFile -> pakFilesByName.put(pakFile.getFile().getName(), pakFile));
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file.toFile())))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                return null;
+            }
+
+            boolean atomicOutput = in.readBoolean();
+            int numPaks = in.readInt();
+            List<PakFile> plannedPakFiles = new ArrayList<>(numPaks);   // null for paks that changed
+            List<Path[]> plannedPaths = new ArrayList<>(numPaks);
+
+            for (int i = 0; i < numPaks; i++) {
+                PakFile pakFile = pakFilesByName.get(in.readUTF());
+                long length = in.readLong();
+                long lastModified = in.readLong();
+                Path[] filePaths = new Path[in.readInt()];
+
+                for (int j = 0; j < filePaths.length; j++) {
+                    filePaths[j] = Path.of(in.readUTF());
+                }
+
+                boolean unchanged = pakFile != null
+                        && pakFile.getFile().length() == length && pakFile.getFile().lastModified() == lastModified;
+                plannedPakFiles.add(unchanged ? pakFile : null);
+                plannedPaths.add(filePaths);
+            }
+
+            List<BitSet> doneEntries = readDoneRecords(in, plannedPaths);
+
+            return createRecovery(atomicOutput, plannedPakFiles, plannedPaths, doneEntries);
+
+        } catch (EOFException e) {
+            // the plan is synced before extracting anything, so nothing was extracted if it's incomplete
+            return null;
+        }
+    }
+
+    private static List<BitSet> readDoneRecords(DataInputStream in, List<Path[]> plannedPaths) throws IOException {
+        List<BitSet> doneEntries = new ArrayList<>(plannedPaths.size());
+        for (int i = 0; i < plannedPaths.size(); i++) {
+            doneEntries.add(new BitSet());
+        }
+
+        try {
+            while (true) {
+                int pakNumber = in.readInt();
+                int entryNumber = in.readInt();
+
+                if (pakNumber < 0 || pakNumber >= plannedPaths.size()
+                        || entryNumber < 0 || entryNumber >= plannedPaths.get(pakNumber).length) {
+                    throw new IOException("Corrupted extraction journal.");
+                }
+                doneEntries.get(pakNumber).set(entryNumber);
+            }
+        } catch (EOFException e) {
+            // end of the journal, or a torn record at the end of it
+        }
+
+        return doneEntries;
+    }
+
+    private static Recovery createRecovery(boolean atomicOutput, List<PakFile> plannedPakFiles,
+                                           List<Path[]> plannedPaths, List<BitSet> doneEntries) {
+
+        MultiPakSelection pendingSelection = new MultiPakSelection();
+        List<Path> pendingFiles = new ArrayList<>();
+        boolean resumable = true;
+
+        for (int i = 0; i < plannedPakFiles.size(); i++) {
+            PakFile pakFile = plannedPakFiles.get(i);
+            Path[] filePaths = plannedPaths.get(i);
+            BitSet done = doneEntries.get(i);
+            SinglePakSelection pakSelection = pakFile != null ? new SinglePakSelection(pakFile) : null;
+
+            for (int j = done.nextClearBit(0); j < filePaths.length; j = done.nextClearBit(j + 1)) {
+                pendingFiles.add(filePaths[j]);
+
+                if (pakSelection != null) {
+                    pakSelection.addFile(filePaths[j]);
+                }
+            }
+
+            if (pakFile == null) {
+                resumable = false;
+            } else if (pakSelection.getTotalFiles() > 0) {
+                pendingSelection.addSinglePakSelection(pakSelection);
+            }
+        }
+
+        return new Recovery(atomicOutput, resumable ? pendingSelection : null, pendingFiles);
+    }
+
+}
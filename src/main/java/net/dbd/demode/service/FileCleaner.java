@@ -2,8 +2,8 @@ package net.dbd.demode.service;
 
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
+import net.dbd.demode.util.event.EventBus;
 import net.dbd.demode.util.event.EventListener;
-import net.dbd.demode.util.event.EventSupport;
 import net.dbd.demode.util.lang.OperationAbortedException;
 
 import java.io.File;
@@ -28,7 +28,7 @@ public class FileCleaner {
     }
 
     public static final class CleanerMonitor {
-        private final EventSupport eventSupport = new EventSupport();
+        private final EventBus<EventType> eventBus = new EventBus<>(EventType.class);
         private Supplier<CompletableFuture<Void>> action;
         @Getter
         private int totalFiles;
@@ -36,7 +36,7 @@ public class FileCleaner {
         private int filesDeleted;
         @Getter
         private long bytesFreed;
-        private boolean abort;
+        private volatile boolean abort;
 
 
         public CompletableFuture<Void> start() {
@@ -48,11 +48,15 @@ public class FileCleaner {
         }
 
         public void registerListener(EventType eventType, EventListener eventListener) {
-            eventSupport.registerListener(eventType, eventListener);
+            eventBus.registerListener(eventType, eventListener);
+        }
+
+        public void registerListener(EventType eventType, Runnable listener) {
+            eventBus.registerListener(eventType, listener);
         }
 
         private void fireEvent(EventType eventType) {
-            eventSupport.fireEvent(eventType);
+            eventBus.fireEvent(eventType);
         }
     }
 
@@ -101,6 +105,8 @@ public class FileCleaner {
 
             } catch (IOException e) {
                 throw new RuntimeException(e);
+            } finally {
+                fileMetadataManager.flush();
             }
         });
     }
@@ -111,11 +117,12 @@ public class FileCleaner {
         }
 
         monitor.totalFiles++;
-        if (fileMetadataManager.readHash(filePath) != null) {
+        if (fileMetadataManager.isTracked(filePath)) {
             File file = filePath.toFile();
             long fileSize = file.length();
 
             if (file.delete()) {
+                fileMetadataManager.removeHash(filePath);
                 monitor.filesDeleted++;
                 monitor.bytesFreed += fileSize;
             }
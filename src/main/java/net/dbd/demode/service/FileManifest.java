@@ -0,0 +1,389 @@
+package net.dbd.demode.service;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import net.dbd.demode.util.io.MappedFileReader;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A single database with the size, modification time and SHA-1 of every file we extracted under a root directory.
+ * It's an alternative to storing the hash of each file in its extended attributes, which takes several syscalls per
+ * file and is not supported by every filesystem.
+ * <p>
+ * It's made of two files:
+ * <ul>
+ *     <li>a compacted table: an open-addressing hash table keyed by relative path, which is memory-mapped,</li>
+ *     <li>an append-only log with the changes made since the table was written.</li>
+ * </ul>
+ * When the manifest is opened, the log is merged into a new table. Changes made afterwards are appended to the log
+ * and kept in memory, so they are visible right away. A torn record at the end of the log (because the app was killed
+ * while writing it) is just ignored.
+ * <p>
+ * Lookups and updates are thread-safe.
+ *
+ * @author Nicky Ramone
+ */
+class FileManifest implements Closeable {
+
+    static final String TABLE_FILENAME = "demode-manifest.db";
+    static final String LOG_FILENAME = "demode-manifest.log";
+
+    private static final int MAGIC = 0x444d4e46;    // "DMNF"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 4 * Integer.BYTES;
+    private static final int HASH_SIZE = 20;
+    private static final int SLOT_SIZE = Long.BYTES + 2 * Integer.BYTES + 2 * Long.BYTES + HASH_SIZE;
+    private static final int EMPTY_SLOT = -1;
+    private static final int MIN_SLOTS = 16;
+    private static final byte OP_PUT = 1;
+    private static final byte OP_REMOVE = 2;
+
+
+    @Getter
+    @RequiredArgsConstructor
+    static final class Record {
+        private final long size;
+        private final long lastModified;
+        private final byte[] hash;
+    }
+
+    private static final Record REMOVED = new Record(-1, -1, null);
+
+
+    @Getter
+    private final Path rootDir;
+    private final Path logFile;
+    private final MappedFileReader table;
+    private final int numSlots;
+    private final long keysStart;
+    private final Map<String, Record> changes = new ConcurrentHashMap<>();
+    private DataOutputStream log;
+
+
+    private FileManifest(Path rootDir, MappedFileReader table) {
+        this.rootDir = rootDir;
+        this.logFile = rootDir.resolve(LOG_FILENAME);
+        this.table = table;
+        this.numSlots = table.getInt(Integer.BYTES * 2);
+        this.keysStart = HEADER_SIZE + (long) numSlots * SLOT_SIZE;
+    }
+
+
+    /**
+     * Opens the manifest of the given directory, creating it if it doesn't exist yet.
+     */
+    static FileManifest open(Path rootDir) throws IOException {
+        Path tableFile = rootDir.resolve(TABLE_FILENAME);
+        Path logFile = rootDir.resolve(LOG_FILENAME);
+
+        if (!Files.exists(tableFile) || Files.exists(logFile) && Files.size(logFile) > 0) {
+            compact(rootDir);
+        }
+
+        FileManifest manifest = new FileManifest(rootDir, openTable(tableFile));
+        manifest.log = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile.toFile(), true)));
+
+        return manifest;
+    }
+
+    private static MappedFileReader openTable(Path tableFile) throws IOException {
+        MappedFileReader table = new MappedFileReader(tableFile.toFile());
+
+        if (table.getFileSize() < HEADER_SIZE || table.getInt(0) != MAGIC || table.getInt(Integer.BYTES) != FORMAT_VERSION) {
+            table.close();
+            throw new IOException("Invalid manifest: " + tableFile);
+        }
+
+        return table;
+    }
+
+
+    /**
+     * @return the record of the file, or null if the file is not in the manifest.
+     */
+    Record get(Path file) {
+        String key = toKey(file);
+
+        if (key == null) {
+            return null;
+        }
+
+        Record record = changes.get(key);
+        if (record != null) {
+            return record == REMOVED ? null : record;
+        }
+
+        return lookup(key);
+    }
+
+    void put(Path file, long size, long lastModified, byte[] hash) {
+        String key = requireKey(file);
+        Record record = new Record(size, lastModified, hash.clone());
+
+        synchronized (this) {
+            appendToLog(OP_PUT, key, record);
+            changes.put(key, record);
+        }
+    }
+
+    void remove(Path file) {
+        String key = requireKey(file);
+
+        synchronized (this) {
+            appendToLog(OP_REMOVE, key, null);
+            changes.put(key, REMOVED);
+        }
+    }
+
+    /**
+     * Makes sure that every change is in the log file, so that it survives a crash.
+     */
+    synchronized void flush() throws IOException {
+        log.flush();
+    }
+
+    /**
+     * Does not compact the log: that's done the next time the manifest is opened.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        log.close();
+        table.close();
+    }
+
+
+    /**
+     * Keys are the paths relative to the root, with '/' as separator, so they don't depend on the platform.
+     *
+     * @return null if the file is not inside the root directory.
+     */
+    private String toKey(Path file) {
+        Path relativePath = rootDir.relativize(file.toAbsolutePath().normalize());
+
+        if (relativePath.getNameCount() == 0 || relativePath.startsWith("..")) {
+            return null;
+        }
+
+        StringJoiner key = new StringJoiner("/");
+        relativePath.forEach(name -> key.add(name.toString()));
+
+        return key.toString();
+    }
+
+    private String requireKey(Path file) {
+        String key = toKey(file);
+
+        if (key == null) {
+            throw new IllegalArgumentException("File is outside of the manifest directory: " + file);
+        }
+        return key;
+    }
+
+    private void appendToLog(byte op, String key, Record record) {
+        try {
+            log.writeByte(op);
+            writeKey(log, key);
+
+            if (op == OP_PUT) {
+                writeRecord(log, record);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write to manifest: " + logFile, e);
+        }
+    }
+
+
+    private Record lookup(String key) {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long keyHash = hash(keyBytes);
+        int mask = numSlots - 1;
+
+        for (int slot = slotOf(keyHash, mask); ; slot = (slot + 1) & mask) {
+            long slotPosition = HEADER_SIZE + (long) slot * SLOT_SIZE;
+            int keyOffset = table.getInt(slotPosition + Long.BYTES);
+
+            if (keyOffset == EMPTY_SLOT) {
+                return null;
+            }
+            if (table.getLong(slotPosition) == keyHash && keyMatches(slotPosition, keyOffset, keyBytes)) {
+                return readRecord(table, slotPosition + Long.BYTES + 2 * Integer.BYTES);
+            }
+        }
+    }
+
+    private boolean keyMatches(long slotPosition, int keyOffset, byte[] keyBytes) {
+        int keyLength = table.getInt(slotPosition + Long.BYTES + Integer.BYTES);
+
+        if (keyLength != keyBytes.length) {
+            return false;
+        }
+
+        byte[] storedKey = new byte[keyLength];
+        table.read(keysStart + keyOffset, storedKey, 0, keyLength);
+
+        return Arrays.equals(storedKey, keyBytes);
+    }
+
+    private static Record readRecord(MappedFileReader table, long position) {
+        byte[] hash = new byte[HASH_SIZE];
+        table.read(position + 2 * Long.BYTES, hash, 0, HASH_SIZE);
+
+        return new Record(table.getLong(position), table.getLong(position + Long.BYTES), hash);
+    }
+
+
+    /**
+     * Merges the current table and the log into a new table, and deletes the log.
+     * The new table is written to a temporary file and then renamed, so the manifest is never left half-written.
+     */
+    private static void compact(Path rootDir) throws IOException {
+        Path tableFile = rootDir.resolve(TABLE_FILENAME);
+        Path logFile = rootDir.resolve(LOG_FILENAME);
+        Map<String, Record> records = new LinkedHashMap<>();
+
+        if (Files.exists(tableFile)) {
+            try (MappedFileReader table = openTable(tableFile)) {
+                readTable(table, records);
+            }
+        }
+        if (Files.exists(logFile)) {
+            replayLog(logFile, records);
+        }
+
+        Path tempFile = Files.createTempFile(rootDir, TABLE_FILENAME, ".tmp");
+        try {
+            writeTable(tempFile, records);
+            Files.move(tempFile, tableFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+        Files.deleteIfExists(logFile);
+    }
+
+    private static void readTable(MappedFileReader table, Map<String, Record> records) {
+        int numSlots = table.getInt(Integer.BYTES * 2);
+        long keysStart = HEADER_SIZE + (long) numSlots * SLOT_SIZE;
+
+        for (int slot = 0; slot < numSlots; slot++) {
+            long slotPosition = HEADER_SIZE + (long) slot * SLOT_SIZE;
+            int keyOffset = table.getInt(slotPosition + Long.BYTES);
+
+            if (keyOffset != EMPTY_SLOT) {
+                byte[] key = new byte[table.getInt(slotPosition + Long.BYTES + Integer.BYTES)];
+                table.read(keysStart + keyOffset, key, 0, key.length);
+                records.put(new String(key, StandardCharsets.UTF_8),
+                        readRecord(table, slotPosition + Long.BYTES + 2 * Integer.BYTES));
+            }
+        }
+    }
+
+    private static void replayLog(Path logFile, Map<String, Record> records) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile.toFile())))) {
+            while (true) {
+                byte op = in.readByte();
+                String key = in.readUTF();
+
+                if (op == OP_PUT) {
+                    long size = in.readLong();
+                    long lastModified = in.readLong();
+                    byte[] hash = new byte[HASH_SIZE];
+                    in.readFully(hash);
+                    records.put(key, new Record(size, lastModified, hash));
+                } else if (op == OP_REMOVE) {
+                    records.remove(key);
+                } else {
+                    throw new IOException("Corrupted manifest log: " + logFile);
+                }
+            }
+        } catch (EOFException e) {
+            // end of the log, or a torn record at the end of it
+        }
+    }
+
+    private static void writeTable(Path file, Map<String, Record> records) throws IOException {
+        int numSlots = MIN_SLOTS;
+        while (numSlots < records.size() * 2) {
+            numSlots *= 2;
+        }
+
+        int mask = numSlots - 1;
+        long[] slotHashes = new long[numSlots];
+        String[] slotKeys = new String[numSlots];
+
+        for (String key : records.keySet()) {
+            long keyHash = hash(key.getBytes(StandardCharsets.UTF_8));
+            int slot = slotOf(keyHash, mask);
+
+            while (slotKeys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            slotHashes[slot] = keyHash;
+            slotKeys[slot] = key;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile())))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(numSlots);
+            out.writeInt(records.size());
+
+            ByteArrayOutputStream keys = new ByteArrayOutputStream();
+
+            for (int slot = 0; slot < numSlots; slot++) {
+                if (slotKeys[slot] == null) {
+                    out.writeLong(0);
+                    out.writeInt(EMPTY_SLOT);
+                    out.writeInt(0);
+                    out.write(new byte[2 * Long.BYTES + HASH_SIZE]);
+                    continue;
+                }
+
+                byte[] key = slotKeys[slot].getBytes(StandardCharsets.UTF_8);
+                out.writeLong(slotHashes[slot]);
+                out.writeInt(keys.size());
+                out.writeInt(key.length);
+                writeRecord(out, records.get(slotKeys[slot]));
+                keys.write(key);
+            }
+
+            keys.writeTo(out);
+        }
+    }
+
+
+    private static void writeKey(DataOutputStream out, String key) throws IOException {
+        out.writeUTF(key);
+    }
+
+    private static void writeRecord(DataOutputStream out, Record record) throws IOException {
+        out.writeLong(record.size);
+        out.writeLong(record.lastModified);
+        out.write(record.hash);
+    }
+
+    /**
+     * 64-bit FNV-1a.
+     */
+    private static long hash(byte[] bytes) {
+        long hash = 0xcbf29ce484222325L;
+
+        for (byte b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+
+        return hash;
+    }
+
+    private static int slotOf(long keyHash, int mask) {
+        return (int) (keyHash ^ (keyHash >>> 32)) & mask;
+    }
+
+}
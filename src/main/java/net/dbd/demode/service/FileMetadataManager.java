@@ -1,5 +1,7 @@
 package net.dbd.demode.service;
 
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
 import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.binary.Hex;
 
@@ -7,51 +9,207 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.UserDefinedFileAttributeView;
+import java.util.List;
 
 /**
+ * Keeps track of the files we extracted, and of their hashes.
+ * <p>
+ * By default, this info is stored in extended attributes of each file. Alternatively, it can be stored in a
+ * {@link FileManifest} at the root of the output directory (see {@link #setManifestRoot(Path)}), which is faster and
+ * works on any filesystem. Files outside of the manifest root still use extended attributes.
+ *
  * @author Nicky Ramone
  */
 public class FileMetadataManager {
 
     private static final String FILE_ATTR__ORIGINAL = "user.demode.original";
     private static final String FILE_ATTR__HASH = "user.demode.hash";
+    private static final String FILE_ATTR__STAT = "user.demode.stat";
     private static final int HASH_SIZE = 20;
+    private static final int STAT_SIZE = 2 * Long.BYTES;
 
-    private final byte[] hashBuffer = new byte[HASH_SIZE];
-    private final ByteBuffer hashByteBuffer = ByteBuffer.allocate(HASH_SIZE);
+
+    /**
+     * What we know about a file we extracted: its hash, and its size and modification time right after extracting it.
+     * The size and time are unknown for files extracted by older versions.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static final class FileMetadata {
+        public static final long UNKNOWN = -1;
+
+        private final String hash;
+        private final long size;
+        private final long lastModified;
+
+        public boolean hasFileStat() {
+            return size != UNKNOWN;
+        }
+
+        /**
+         * @return whether the file still has the same size and modification time as when it was extracted.
+         */
+        public boolean matches(BasicFileAttributes attributes) {
+            return hasFileStat() && attributes.size() == size && attributes.lastModifiedTime().toMillis() == lastModified;
+        }
+    }
+
+    private volatile FileManifest manifest;
+
+
+    /**
+     * @param rootDir directory where the manifest is kept; or null to go back to extended attributes.
+     */
+    public synchronized void setManifestRoot(Path rootDir) {
+        FileManifest currentManifest = manifest;
+
+        if (currentManifest != null && rootDir != null && currentManifest.getRootDir().equals(rootDir.toAbsolutePath().normalize())) {
+            return;
+        }
+
+        try {
+            manifest = null;
+            if (currentManifest != null) {
+                currentManifest.close();
+            }
+            if (rootDir != null) {
+                manifest = FileManifest.open(rootDir.toAbsolutePath().normalize());
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open file manifest in: " + rootDir, e);
+        }
+    }
+
+    /**
+     * Makes sure that all the metadata written so far is persisted.
+     */
+    public void flush() {
+        FileManifest manifest = this.manifest;
+
+        if (manifest != null) {
+            try {
+                manifest.flush();
+            } catch (IOException e) {
+                throw new RuntimeException("Failed to write file manifest.", e);
+            }
+        }
+    }
 
 
     public void writeHash(Path filePath, String hash) {
+        FileManifest manifest = this.manifest;
+
+        if (manifest != null && isInManifestRoot(manifest, filePath)) {
+            writeHashToManifest(manifest, filePath, hash);
+            return;
+        }
 
         UserDefinedFileAttributeView attributeView = Files.getFileAttributeView(filePath, UserDefinedFileAttributeView.class);
         try {
+            BasicFileAttributes fileAttributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+            FileTime lastModifiedTime = fileAttributes.lastModifiedTime();
+            ByteBuffer statByteBuffer = ByteBuffer.allocate(STAT_SIZE)
+                    .putLong(fileAttributes.size())
+                    .putLong(lastModifiedTime.toMillis())
+                    .flip();
+
             attributeView.write(FILE_ATTR__ORIGINAL, ByteBuffer.allocate(0));
             ByteBuffer hashByteBuffer = ByteBuffer.wrap(Hex.decodeHex(hash));
             attributeView.write(FILE_ATTR__HASH, hashByteBuffer);
+            attributeView.write(FILE_ATTR__STAT, statByteBuffer);
+
+            // on Windows, the attributes are alternate data streams, and writing them touches the file
+            Files.setLastModifiedTime(filePath, lastModifiedTime);
         } catch (IOException | DecoderException e) {
-            throw new RuntimeException("Failed to write metadata to file: " + filePath);
+            throw new RuntimeException("Failed to write metadata to file: " + filePath, e);
         }
     }
 
+    /**
+     * Thread-safe, so that files can be checked concurrently.
+     */
     public String readHash(Path filePath) {
+        FileMetadata metadata = readMetadata(filePath);
+
+        return metadata != null ? metadata.getHash() : null;
+    }
+
+    /**
+     * Thread-safe, so that files can be checked concurrently.
+     *
+     * @return null if the file was not extracted by us.
+     */
+    public FileMetadata readMetadata(Path filePath) {
+        FileManifest manifest = this.manifest;
+
+        if (manifest != null && isInManifestRoot(manifest, filePath)) {
+            FileManifest.Record record = manifest.get(filePath);
+
+            return record == null ? null
+                    : new FileMetadata(Hex.encodeHexString(record.getHash()), record.getSize(), record.getLastModified());
+        }
+
         UserDefinedFileAttributeView attributeView = Files.getFileAttributeView(filePath, UserDefinedFileAttributeView.class);
 
         try {
-            if (!attributeView.list().contains(FILE_ATTR__ORIGINAL) || !attributeView.list().contains(FILE_ATTR__HASH)) {
+            List<String> attributes = attributeView.list();
+
+            if (!attributes.contains(FILE_ATTR__ORIGINAL) || !attributes.contains(FILE_ATTR__HASH)) {
                 return null;
             }
 
-            hashByteBuffer.clear();
+            byte[] hash = new byte[HASH_SIZE];
+            ByteBuffer hashByteBuffer = ByteBuffer.wrap(hash);
             attributeView.read(FILE_ATTR__HASH, hashByteBuffer);
-            hashByteBuffer.flip();
-            hashByteBuffer.get(hashBuffer);
 
-            return Hex.encodeHexString(hashBuffer);
+            if (!attributes.contains(FILE_ATTR__STAT)) {
+                return new FileMetadata(Hex.encodeHexString(hash), FileMetadata.UNKNOWN, FileMetadata.UNKNOWN);
+            }
+
+            ByteBuffer statByteBuffer = ByteBuffer.allocate(STAT_SIZE);
+            attributeView.read(FILE_ATTR__STAT, statByteBuffer);
+            statByteBuffer.flip();
+
+            return new FileMetadata(Hex.encodeHexString(hash), statByteBuffer.getLong(), statByteBuffer.getLong());
 
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * @return whether the file was extracted by us, even if it was modified afterwards.
+     */
+    public boolean isTracked(Path filePath) {
+        return readMetadata(filePath) != null;
+    }
+
+    /**
+     * To be called when a file we extracted gets deleted.
+     */
+    public void removeHash(Path filePath) {
+        FileManifest manifest = this.manifest;
+
+        if (manifest != null && isInManifestRoot(manifest, filePath)) {
+            manifest.remove(filePath);
+        }
+    }
+
+
+    private boolean isInManifestRoot(FileManifest manifest, Path filePath) {
+        return filePath.toAbsolutePath().normalize().startsWith(manifest.getRootDir());
+    }
+
+    private void writeHashToManifest(FileManifest manifest, Path filePath, String hash) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(filePath, BasicFileAttributes.class);
+            manifest.put(filePath, attributes.size(), attributes.lastModifiedTime().toMillis(), Hex.decodeHex(hash));
+        } catch (IOException | DecoderException e) {
+            throw new RuntimeException("Failed to write metadata to file: " + filePath, e);
+        }
+    }
+
 }
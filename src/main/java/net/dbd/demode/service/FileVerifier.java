@@ -0,0 +1,258 @@
+package net.dbd.demode.service;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import net.dbd.demode.pak.PakChannels;
+import net.dbd.demode.pak.PakEntryHasher;
+import net.dbd.demode.pak.PakFile;
+import net.dbd.demode.pak.domain.PakEntry;
+import net.dbd.demode.util.event.EventBus;
+import net.dbd.demode.util.event.EventListener;
+import net.dbd.demode.util.event.ProgressChannel;
+import net.dbd.demode.util.lang.OperationAbortedException;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.zip.DataFormatException;
+
+/**
+ * Checks the content of extracted files against the paks, no matter what their metadata says.
+ * <p>
+ * Every file is hashed and compared with the hash of its pak entry, in parallel. Files whose size is not the one of
+ * the entry are corrupted for sure, so they are not hashed. Files that are missing or whose content doesn't match are
+ * returned as a {@link MultiPakSelection}, which can be extracted again right away.
+ *
+ * @author Nicky Ramone
+ */
+@RequiredArgsConstructor
+public class FileVerifier {
+
+    public enum EventType {
+        BEGIN,
+        FINISH
+    }
+
+    private static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+    private static final double MB = 1000 * 1000;
+
+
+    public static final class VerifyMonitor {
+        private final EventBus<EventType> eventBus = new EventBus<>(EventType.class);
+        private Supplier<CompletableFuture<MultiPakSelection>> action;
+        @Getter
+        private int totalFiles;
+        @Getter
+        private long totalBytes;
+        /* files verified and bytes hashed, published at a fixed rate instead of on every file */
+        private final ProgressChannel progressChannel = new ProgressChannel();
+        private final AtomicInteger filesMissing = new AtomicInteger();
+        private final AtomicInteger filesCorrupted = new AtomicInteger();
+        private volatile Instant startTime;
+        private volatile Instant endTime;
+        private volatile boolean abort;
+
+
+        public CompletableFuture<MultiPakSelection> start() {
+            return action.get();
+        }
+
+        public void abort() {
+            abort = true;
+        }
+
+        public void registerListener(EventType eventType, EventListener eventListener) {
+            eventBus.registerListener(eventType, eventListener);
+        }
+
+        public void registerListener(EventType eventType, Runnable listener) {
+            eventBus.registerListener(eventType, listener);
+        }
+
+        public void registerProgressListener(ProgressChannel.ProgressListener progressListener) {
+            progressChannel.registerListener(progressListener);
+        }
+
+        public int getFilesVerified() {
+            return (int) progressChannel.snapshot().getItems();
+        }
+
+        public long getBytesVerified() {
+            return progressChannel.snapshot().getBytes();
+        }
+
+        public int getFilesMissing() {
+            return filesMissing.get();
+        }
+
+        public int getFilesCorrupted() {
+            return filesCorrupted.get();
+        }
+
+        public long getElapsedMillis() {
+            Instant start = startTime;
+            if (start == null) {
+                return 0;
+            }
+
+            return Duration.between(start, endTime != null ? endTime : Instant.now()).toMillis();
+        }
+
+        /**
+         * @return MB/s hashed so far.
+         */
+        public double getThroughput() {
+            long elapsedMillis = getElapsedMillis();
+
+            return elapsedMillis == 0 ? 0 : getBytesVerified() / MB / (elapsedMillis / 1000.0);
+        }
+
+        private void fireEvent(EventType eventType) {
+            eventBus.fireEvent(eventType);
+        }
+
+        private void fireEvent(EventType eventType, Object value) {
+            eventBus.fireEvent(eventType, value);
+        }
+    }
+
+
+    private final DbdPathService dbdPathService;
+
+    /**
+     * Number of files hashed at the same time.
+     */
+    @Getter
+    @Setter
+    private int parallelism = DEFAULT_PARALLELISM;
+
+
+    /**
+     * @param outputPath the directory where the files were extracted to (the DBD home, normally).
+     */
+    public VerifyMonitor verify(MultiPakSelection selection, Path outputPath) {
+        var monitor = new VerifyMonitor();
+        monitor.action = () -> CompletableFuture.supplyAsync(() -> verifyFiles(selection, outputPath, monitor));
+
+        return monitor;
+    }
+
+    private MultiPakSelection verifyFiles(MultiPakSelection selection, Path outputPath, VerifyMonitor monitor) {
+        Path paksOutputPath = outputPath.resolve(dbdPathService.getPaksRelativePath());
+        Set<Path> failedFiles = ConcurrentHashMap.newKeySet();
+
+        monitor.totalFiles = selection.getTotalFiles();
+        monitor.totalBytes = selection.getTotalBytes();
+        monitor.startTime = Instant.now();
+        monitor.fireEvent(EventType.BEGIN, monitor.totalFiles);
+        monitor.progressChannel.start();
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism);
+        PakChannels pakChannels = new PakChannels();
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+
+            for (SinglePakSelection pakSelection : selection) {
+                for (Path filePath : pakSelection.getFilePaths()) {
+                    futures.add(executor.submit(() -> {
+                        if (!verifyFile(pakSelection.getPakFile(), filePath, paksOutputPath, pakChannels, monitor)) {
+                            failedFiles.add(filePath);
+                        }
+                    }));
+                }
+            }
+
+            for (Future<?> future : futures) {
+                await(future);
+            }
+        } finally {
+            executor.shutdownNow();
+            pakChannels.close();
+            monitor.endTime = Instant.now();
+            monitor.progressChannel.stop();
+        }
+
+        MultiPakSelection result = new MultiPakSelection();
+
+        for (SinglePakSelection pakSelection : selection) {
+            var failedPakSelection = new SinglePakSelection(pakSelection.getPakFile());
+            pakSelection.getFilePaths().stream()
+                    .filter(failedFiles::contains)
+                    .forEach(failedPakSelection::addFile);
+
+            if (failedPakSelection.getTotalFiles() > 0) {
+                result.addSinglePakSelection(failedPakSelection);
+            }
+        }
+        monitor.fireEvent(EventType.FINISH, result);
+
+        return result;
+    }
+
+    /**
+     * @return whether the file is there and its content is the same as in the pak.
+     */
+    private boolean verifyFile(PakFile pakFile, Path filePath, Path paksOutputPath, PakChannels pakChannels,
+                               VerifyMonitor monitor) {
+        if (monitor.abort) {
+            throw new OperationAbortedException();
+        }
+
+        Path targetFilePath = paksOutputPath.resolve(filePath).normalize();
+        PakEntry entry = pakFile.getEntry(filePath);
+        boolean intact;
+
+        try {
+            if (!Files.isRegularFile(targetFilePath)) {
+                monitor.filesMissing.incrementAndGet();
+                intact = false;
+            } else if (Files.size(targetFilePath) != entry.getSize()) {
+                monitor.filesCorrupted.incrementAndGet();
+                intact = false;
+            } else {
+                String expectedHash = PakEntryHasher.hashContent(pakChannels.get(pakFile), entry);
+                intact = PakEntryHasher.hashFile(targetFilePath).equals(expectedHash);
+                monitor.progressChannel.addBytes(entry.getSize());
+
+                if (!intact) {
+                    monitor.filesCorrupted.incrementAndGet();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (DataFormatException e) {
+            throw new RuntimeException("Failed to inflate: " + filePath, e);
+        }
+
+        monitor.progressChannel.addItems(1);
+
+        return intact;
+    }
+
+    private void await(Future<?> future) {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OperationAbortedException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+}
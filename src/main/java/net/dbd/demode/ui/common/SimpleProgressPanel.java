@@ -61,6 +61,11 @@ public class SimpleProgressPanel extends JPanel {
         refreshProgressBar();
     }
 
+    public void updatePartialValue(long partialValue) {
+        partialValueField.setCurrentValue(partialValue);
+        refreshProgressBar();
+    }
+
     private void refreshProgressBar() {
         int percentComplete = (int) (((double) partialValueField.getCurrentValue() / partialValueField.getTotalValue()) * 100);
         progressBar.setValue(percentComplete);
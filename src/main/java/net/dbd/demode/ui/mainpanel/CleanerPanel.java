@@ -5,6 +5,7 @@ import net.dbd.demode.config.UserSettings;
 import net.dbd.demode.service.DbdPathService;
 import net.dbd.demode.service.FileCleaner;
 import net.dbd.demode.service.FileCleaner.CleanerMonitor;
+import net.dbd.demode.service.FileMetadataManager;
 import net.dbd.demode.ui.common.LogPanel;
 import net.dbd.demode.ui.common.NameValueField;
 import net.dbd.demode.ui.common.UiHelper;
@@ -31,6 +32,7 @@ public class CleanerPanel extends JPanel {
     private final UserSettings userSettings;
     private final DbdPathService dbdPathService;
     private final FileCleaner fileCleaner;
+    private final FileMetadataManager fileMetadataManager;
 
     private NameValueField filesScannedField;
     private NameValueField filesDeletedField;
@@ -42,10 +44,12 @@ public class CleanerPanel extends JPanel {
     private CleanerMonitor monitor;
 
 
-    public CleanerPanel(UserSettings userSettings, DbdPathService dbdPathService, FileCleaner fileCleaner) {
+    public CleanerPanel(UserSettings userSettings, DbdPathService dbdPathService, FileCleaner fileCleaner,
+                        FileMetadataManager fileMetadataManager) {
         this.userSettings = userSettings;
         this.dbdPathService = dbdPathService;
         this.fileCleaner = fileCleaner;
+        this.fileMetadataManager = fileMetadataManager;
 
         setBackground(BG_COLOR);
         setBorder(strutBorder(Color.BLUE));
@@ -132,8 +136,9 @@ public class CleanerPanel extends JPanel {
             return;
         }
 
+        fileMetadataManager.setManifestRoot(userSettings.isFileManifestEnabled() ? dbdHome : null);
         monitor = fileCleaner.clean(dbdHome);
-        monitor.registerListener(FileCleaner.EventType.FILE_SCANNED, e -> invokeLater(this::handleFileScannedEvent));
+        monitor.registerListener(FileCleaner.EventType.FILE_SCANNED, () -> invokeLater(this::handleFileScannedEvent));
 
         logPanel.log("Started cleaning on target path: " + dbdHome);
         monitor.start()
@@ -4,10 +4,12 @@ import lombok.extern.slf4j.Slf4j;
 import net.dbd.demode.Factory;
 import net.dbd.demode.config.AppProperties;
 import net.dbd.demode.config.UserSettings;
+import net.dbd.demode.pak.CorruptedPakEntryException;
 import net.dbd.demode.pak.PakFile;
 import net.dbd.demode.service.*;
 import net.dbd.demode.service.DbdUnpacker.EventType;
 import net.dbd.demode.service.DbdUnpacker.UnpackMonitor;
+import net.dbd.demode.service.FileVerifier.VerifyMonitor;
 import net.dbd.demode.ui.ResourceFactory;
 import net.dbd.demode.ui.common.LogPanel;
 import net.dbd.demode.ui.common.SimpleProgressPanel;
@@ -39,6 +41,7 @@ public class UnpackerPanel extends JPanel {
 
     private JTextField dirInput;
     private JButton startButton;
+    private JButton verifyButton;
     private JButton stopButton;
     private JCheckBox fullExtractionCheckbox;
     private SimpleProgressPanel simpleProgressPanel;
@@ -46,6 +49,7 @@ public class UnpackerPanel extends JPanel {
     private LogPanel logPanel;
 
     private UnpackMonitor unpackMonitor;
+    private VerifyMonitor verifyMonitor;
 
 
     public UnpackerPanel(AppProperties appProperties, UserSettings userSettings) {
@@ -91,6 +95,13 @@ public class UnpackerPanel extends JPanel {
             startUnpacking();
         });
 
+        verifyButton = UiHelper.createButton("Verify Files");
+        verifyButton.setToolTipText("Check the content of every unpacked file and unpack again the ones that are " +
+                "missing or corrupted.");
+        verifyButton.addActionListener(e -> {
+            startVerifying();
+        });
+
         stopButton = UiHelper.createButton("Cancel");
         stopButton.addActionListener(e -> {
             abortUnpacking();
@@ -106,6 +117,7 @@ public class UnpackerPanel extends JPanel {
         buttonPanel.setBorder(strutBorder(Color.GREEN));
         buttonPanel.setLayout(new FlowLayout());
         buttonPanel.add(startButton);
+        buttonPanel.add(verifyButton);
         buttonPanel.add(stopButton);
         buttonPanel.add(fullExtractionCheckbox);
 
@@ -165,29 +177,61 @@ public class UnpackerPanel extends JPanel {
 
     public void startUnpacking() {
         startButton.setVisible(false);
+        verifyButton.setVisible(false);
         fullExtractionCheckbox.setVisible(false);
         logPanel.clear();
 
         try {
             Path dbdHomePath = Path.of(userSettings.getDbdHomePath());
-            unpackMonitor = getUnpackingMonitor(dbdHomePath);
+            DbdUnpacker unpacker = createUnpacker(dbdHomePath);
+
+            if (fullExtractionCheckbox.isSelected()) {
+                unpackMonitor = registerUnpackListeners(unpacker.unpackAll(dbdHomePath));
+            } else {
+                unpackMonitor = registerUnpackListeners(unpacker.unpackMissingAndUnverified(dbdHomePath));
+            }
             logPanel.log("Target path: " + dbdHomePath);
-            unpackMonitor.start()
-                    .thenRun(this::unpackingFinished)
-                    .exceptionally(throwable -> {
-                        Throwable cause = throwable.getCause();
+            startUnpackMonitor(unpackMonitor);
+
+        } catch (InvalidDbdHomePathException e) {
+            logPanel.log("Could not find DBD installed in the specified location. Cannot continue.");
+            unpackingFinished();
+        }
+    }
+
+    public void startVerifying() {
+        startButton.setVisible(false);
+        verifyButton.setVisible(false);
+        fullExtractionCheckbox.setVisible(false);
+        logPanel.clear();
 
-                        if (cause instanceof OperationAbortedException) {
-                            invokeLater(this::handleUnpackAbortEvent);
-                        } else if (cause instanceof InsufficientDiskSpaceException) {
-                            logPanel.log(String.format("Insufficient disk space. Need at least %s free bytes. Cannot continue.",
-                                    format(((InsufficientDiskSpaceException) cause).getRequiredSpaceInBytes())));
+        try {
+            Path dbdHomePath = Path.of(userSettings.getDbdHomePath());
+            DbdUnpacker unpacker = createUnpacker(dbdHomePath);
+            Factory.fileVerifier().setParallelism(userSettings.getScanParallelism());
+            verifyMonitor = unpacker.verify(dbdHomePath);
+            verifyMonitor.registerListener(FileVerifier.EventType.BEGIN,
+                    e -> invokeLater(() -> handleVerifyBeginEvent((int) e.getValue())));
+            verifyMonitor.registerProgressListener(
+                    snapshot -> invokeLater(() -> handleVerifyProgressEvent(snapshot.getItems())));
+
+            logPanel.log("Target path: " + dbdHomePath);
+            VerifyMonitor monitor = verifyMonitor;
+            monitor.start()
+                    .thenAccept(selection -> {
+                        verifyMonitor = null;
+                        invokeLater(() -> handleVerifyFinishEvent(monitor, selection));
+
+                        if (selection.getTotalFiles() > 0) {
+                            unpackMonitor = registerUnpackListeners(unpacker.unpackSelection(selection, dbdHomePath));
+                            startUnpackMonitor(unpackMonitor);
                         } else {
-                            log.error("Failed to unpack.", cause);
-                            logPanel.log("Encountered an error. Cannot continue.");
+                            invokeLater(this::unpackingFinished);
                         }
-                        unpackingFinished();
-
+                    })
+                    .exceptionally(throwable -> {
+                        verifyMonitor = null;
+                        handleFailure(throwable.getCause());
                         return null;
                     });
 
@@ -197,28 +241,60 @@ public class UnpackerPanel extends JPanel {
         }
     }
 
-    private UnpackMonitor getUnpackingMonitor(Path dbdHomePath) {
-        UnpackMonitor monitor;
-        DbdPakManager dbdPakManager = Factory.newDbdPakManager(dbdHomePath);
-        DbdUnpacker unpacker = Factory.newDbdUnpacker(dbdPakManager);
+    private void startUnpackMonitor(UnpackMonitor monitor) {
+        monitor.start()
+                .thenRun(this::unpackingFinished)
+                .exceptionally(throwable -> {
+                    handleFailure(throwable.getCause());
+                    return null;
+                });
+    }
 
-        if (fullExtractionCheckbox.isSelected()) {
-            monitor = unpacker.unpackAll(dbdHomePath);
+    private void handleFailure(Throwable cause) {
+        if (cause instanceof OperationAbortedException) {
+            invokeLater(this::handleUnpackAbortEvent);
+        } else if (cause instanceof InsufficientDiskSpaceException) {
+            logPanel.log(String.format("Insufficient disk space. Need at least %s free bytes. Cannot continue.",
+                    format(((InsufficientDiskSpaceException) cause).getRequiredSpaceInBytes())));
+        } else if (cause instanceof CorruptedPakEntryException) {
+            log.error("Failed to unpack.", cause);
+            logPanel.log(String.format("The data of '%s' is corrupted. Please verify the game files. Cannot continue.",
+                    ((CorruptedPakEntryException) cause).getFilePath()));
         } else {
-            monitor = unpacker.unpackMissingAndUnverified(dbdHomePath);
+            log.error("Failed to unpack.", cause);
+            logPanel.log("Encountered an error. Cannot continue.");
         }
+        unpackingFinished();
+    }
 
+    private DbdUnpacker createUnpacker(Path dbdHomePath) {
+        Factory.fileMetadataManager().setManifestRoot(userSettings.isFileManifestEnabled() ? dbdHomePath : null);
+        DbdPakManager dbdPakManager = Factory.newDbdPakManager(dbdHomePath);
+        dbdPakManager.setScanParallelism(userSettings.getScanParallelism());
+        dbdPakManager.setDirectoryListingScan(userSettings.isDirectoryListingScan());
+        dbdPakManager.setDeepVerify(userSettings.isDeepVerify());
+        DbdUnpacker unpacker = Factory.newDbdUnpacker(dbdPakManager);
+        unpacker.setParallelism(userSettings.getUnpackParallelism());
+        unpacker.getExtractionOptions().setParallelBlockDecompression(userSettings.isParallelBlockDecompression());
+        unpacker.getExtractionOptions().setMemoryMapped(userSettings.isMemoryMappedExtraction());
+        unpacker.getExtractionOptions().setPipelined(userSettings.isPipelinedExtraction());
+        unpacker.getExtractionOptions().setVerifyIntegrity(userSettings.isIntegrityVerification());
+
+        return unpacker;
+    }
+
+    private UnpackMonitor registerUnpackListeners(UnpackMonitor monitor) {
         /* the monitor is shared by the EDT thread and the background thread, so in many cases you probably don't want
            to send the monitor to the EDT handler method and send a copy of the required values instead, as by the time
            it reaches the handler in EDT, the value could have changed. */
         monitor
                 .registerListener(EventType.FILE_SELECT__BEGIN, e -> invokeLater(() -> handleFileSelectBeginEvent((int) e.getValue())))
-                .registerListener(EventType.FILE_SELECT__FILE_PROCESSED, e -> invokeLater(this::handleSelectFileScannedEvent))
+                .registerListener(EventType.FILE_SELECT__FILE_PROCESSED, () -> invokeLater(this::handleSelectFileScannedEvent))
                 .registerListener(EventType.FILE_SELECT__FINISH, e -> invokeLater(() -> handleSelectFinishEvent((MultiPakSelection) e.getValue())))
+                .registerListener(EventType.UNPACK_RESUMED, e -> invokeLater(this::handleUnpackResumedEvent))
                 .registerListener(EventType.UNPACK_BEGIN, e -> invokeLater(() -> handleUnpackBeginEvent(monitor)))
                 .registerListener(EventType.PAK_EXTRACT_BEGIN, e -> invokeLater(() -> handlePakExtractBeginEvent(monitor, (PakFile) e.getValue())))
-                .registerListener(EventType.FILE_EXTRACTED, e -> invokeLater(this::handleFileExtractedEvent))
-                .registerListener(EventType.BYTES_EXTRACTED, e -> invokeLater(this::handleBytesExtractedEvent))
+                .registerProgressListener(snapshot -> invokeLater(this::handleProgressEvent))
                 .registerListener(EventType.PAK_EXTRACT_FINISH, e -> {
                     int currentPak = monitor.getCurrentPak();
                     invokeLater(() -> handlePakExtractFinishEvent((int) e.getValue(), currentPak));
@@ -231,6 +307,11 @@ public class UnpackerPanel extends JPanel {
 
 
     private void abortUnpacking() {
+        VerifyMonitor verifyMonitor = this.verifyMonitor;
+
+        if (verifyMonitor != null) {
+            verifyMonitor.abort();
+        }
         if (unpackMonitor != null) {
             unpackMonitor.abort();
         }
@@ -241,6 +322,7 @@ public class UnpackerPanel extends JPanel {
         progressPanel.hidePartialProgress();
         simpleProgressPanel.setVisible(false);
         startButton.setVisible(true);
+        verifyButton.setVisible(true);
         fullExtractionCheckbox.setVisible(true);
         stopButton.setVisible(false);
     }
@@ -256,10 +338,41 @@ public class UnpackerPanel extends JPanel {
         simpleProgressPanel.updateTotalValue(totalFilesToScan);
     }
 
+    private void handleVerifyBeginEvent(int totalFilesToVerify) {
+        logPanel.log("Verifying the content of the unpacked files...");
+        stopButton.setVisible(true);
+        progressPanel.setVisible(false);
+        simpleProgressPanel.reset();
+        simpleProgressPanel.setVisible(true);
+        simpleProgressPanel.updateTotalValue(totalFilesToVerify);
+    }
+
+    private void handleVerifyFinishEvent(VerifyMonitor monitor, MultiPakSelection selection) {
+        logPanel.log(String.format("Verified %s files (%s bytes at %.1f MB/s): %s missing, %s corrupted.",
+                format(monitor.getFilesVerified()), format(monitor.getBytesVerified()), monitor.getThroughput(),
+                format(monitor.getFilesMissing()), format(monitor.getFilesCorrupted())));
+
+        if (selection.getTotalFiles() == 0) {
+            logPanel.log("All files are intact. Nothing to do.");
+        } else {
+            logPanel.log(String.format("Unpacking again %s files from %d packages.",
+                    format(selection.getTotalFiles()), selection.getSinglePakSelections().size()));
+        }
+        simpleProgressPanel.setVisible(false);
+    }
+
     private void handleSelectFileScannedEvent() {
         simpleProgressPanel.incrementPartialValue();
     }
 
+    private void handleVerifyProgressEvent(long filesVerified) {
+        simpleProgressPanel.updatePartialValue(filesVerified);
+    }
+
+    private void handleUnpackResumedEvent() {
+        logPanel.log("The previous unpacking was interrupted. Resuming it...");
+    }
+
     private void handleSelectFinishEvent(MultiPakSelection selection) {
         if (selection.getTotalFiles() == 0) {
             logPanel.log("All files seem to be already unpacked. Nothing to do.");
@@ -285,11 +398,8 @@ public class UnpackerPanel extends JPanel {
         progressPanel.startPackage(unpackMonitor.getCurrentPakStats(), unpackMonitor.getCurrentPak());
     }
 
-    private void handleFileExtractedEvent() {
+    private void handleProgressEvent() {
         progressPanel.refreshFilesExtracted();
-    }
-
-    private void handleBytesExtractedEvent() {
         progressPanel.refreshBytesExtracted();
     }
 
@@ -0,0 +1,117 @@
+package net.dbd.demode.util.event;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * A typed alternative to {@link EventSupport} for events that are fired very often, like once per extracted file.
+ * <p>
+ * Listeners are kept in arrays indexed by the ordinal of the event type, which are replaced (copy-on-write) when a
+ * listener is registered, so firing an event takes no locks and allocates nothing:
+ * <ul>
+ *     <li>{@link Runnable} listeners don't get any value,</li>
+ *     <li>value listeners get the value as it was fired,</li>
+ *     <li>long listeners get long values without boxing them.</li>
+ * </ul>
+ * Plain {@link EventListener}s are supported too, but they cost an {@link Event} per call, so they are better kept
+ * for events that are not fired often.
+ *
+ * @author Nicky Ramone
+ */
+public final class EventBus<E extends Enum<E>> {
+
+    private static final Runnable[] NO_RUNNABLES = new Runnable[0];
+    private static final Consumer<?>[] NO_CONSUMERS = new Consumer<?>[0];
+    private static final LongConsumer[] NO_LONG_CONSUMERS = new LongConsumer[0];
+
+    /* the outer arrays are replaced too, so that a single volatile read gives a consistent view */
+    private volatile Runnable[][] runnables;
+    private volatile Consumer<?>[][] valueListeners;
+    private volatile LongConsumer[][] longListeners;
+
+
+    public EventBus(Class<E> eventTypeClass) {
+        int numTypes = eventTypeClass.getEnumConstants().length;
+
+        runnables = new Runnable[numTypes][];
+        valueListeners = new Consumer<?>[numTypes][];
+        longListeners = new LongConsumer[numTypes][];
+        Arrays.fill(runnables, NO_RUNNABLES);
+        Arrays.fill(valueListeners, NO_CONSUMERS);
+        Arrays.fill(longListeners, NO_LONG_CONSUMERS);
+    }
+
+
+    public synchronized void registerListener(E eventType, Runnable listener) {
+        runnables = append(runnables, eventType.ordinal(), listener);
+    }
+
+    /**
+     * The listener gets the values of the events of this type, which must be of type T. Long values are boxed for
+     * these listeners (see {@link #fireLongEvent(Enum, long)}).
+     */
+    public synchronized <T> void registerValueListener(E eventType, Consumer<T> listener) {
+        valueListeners = append(valueListeners, eventType.ordinal(), listener);
+    }
+
+    public synchronized void registerLongListener(E eventType, LongConsumer listener) {
+        longListeners = append(longListeners, eventType.ordinal(), listener);
+    }
+
+    public void registerListener(E eventType, EventListener listener) {
+        registerValueListener(eventType, value -> listener.eventFired(new Event(eventType, value)));
+    }
+
+
+    public void fireEvent(E eventType) {
+        fireEvent(eventType, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void fireEvent(E eventType, Object value) {
+        int ordinal = eventType.ordinal();
+
+        for (Runnable listener : runnables[ordinal]) {
+            listener.run();
+        }
+        for (Consumer<?> listener : valueListeners[ordinal]) {
+            ((Consumer<Object>) listener).accept(value);
+        }
+    }
+
+    /**
+     * Long listeners only get the values fired with this method.
+     */
+    @SuppressWarnings("unchecked")
+    public void fireLongEvent(E eventType, long value) {
+        int ordinal = eventType.ordinal();
+
+        for (Runnable listener : runnables[ordinal]) {
+            listener.run();
+        }
+        for (LongConsumer listener : longListeners[ordinal]) {
+            listener.accept(value);
+        }
+
+        Consumer<?>[] valueListeners = this.valueListeners[ordinal];
+        if (valueListeners.length > 0) {
+            Long boxedValue = value;
+
+            for (Consumer<?> listener : valueListeners) {
+                ((Consumer<Object>) listener).accept(boxedValue);
+            }
+        }
+    }
+
+
+    private static <T> T[][] append(T[][] listeners, int ordinal, T listener) {
+        T[][] newListeners = listeners.clone();
+        T[] typeListeners = Arrays.copyOf(listeners[ordinal], listeners[ordinal].length + 1);
+        typeListeners[typeListeners.length - 1] = listener;
+        newListeners[ordinal] = typeListeners;
+
+        return newListeners;
+    }
+
+}
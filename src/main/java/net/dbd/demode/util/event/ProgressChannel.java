@@ -0,0 +1,117 @@
+package net.dbd.demode.util.event;
+
+import lombok.Value;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Progress counters that many threads can increment without locking, and whose values are published to the listeners
+ * as snapshots at a fixed rate, rather than on every increment. So the work done by the listeners (usually, updating
+ * the UI) doesn't grow with the number of items processed.
+ * <p>
+ * Listeners are called from the publisher thread, and only when something changed since the last snapshot.
+ * A last snapshot is always published when the channel is stopped.
+ *
+ * @author Nicky Ramone
+ */
+public class ProgressChannel {
+
+    public static final long DEFAULT_PERIOD_MILLIS = 50;   // 20 Hz
+
+    @Value
+    public static class Snapshot {
+        long items;
+        long bytes;
+    }
+
+    public interface ProgressListener {
+        void progressUpdated(Snapshot snapshot);
+    }
+
+
+    private final long periodMillis;
+    private final LongAdder items = new LongAdder();
+    private final LongAdder bytes = new LongAdder();
+    private final List<ProgressListener> listeners = new CopyOnWriteArrayList<>();
+    private ScheduledExecutorService publisher;
+    private Snapshot lastSnapshot;
+
+
+    public ProgressChannel() {
+        this(DEFAULT_PERIOD_MILLIS);
+    }
+
+    public ProgressChannel(long periodMillis) {
+        this.periodMillis = periodMillis;
+    }
+
+
+    public void registerListener(ProgressListener listener) {
+        listeners.add(listener);
+    }
+
+    public void addItems(long count) {
+        items.add(count);
+    }
+
+    public void addBytes(long count) {
+        bytes.add(count);
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(items.sum(), bytes.sum());
+    }
+
+
+    public synchronized void start() {
+        if (publisher != null) {
+            return;
+        }
+
+        publisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "progress-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        publisher.scheduleAtFixedRate(this::publish, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        ScheduledExecutorService publisher;
+
+        synchronized (this) {
+            publisher = this.publisher;
+            this.publisher = null;
+        }
+
+        if (publisher != null) {
+            publisher.shutdown();
+            try {
+                publisher.awaitTermination(periodMillis * 10, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        publish();
+    }
+
+    private synchronized void publish() {
+        Snapshot snapshot = snapshot();
+
+        if (Objects.equals(snapshot, lastSnapshot)) {
+            return;
+        }
+        lastSnapshot = snapshot;
+
+        for (ProgressListener listener : listeners) {
+            listener.progressUpdated(snapshot);
+        }
+    }
+
+}
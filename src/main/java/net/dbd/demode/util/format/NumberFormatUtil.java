@@ -3,6 +3,7 @@ package net.dbd.demode.util.format;
 import lombok.experimental.UtilityClass;
 
 import java.text.NumberFormat;
+import java.util.Locale;
 
 @UtilityClass
 public class NumberFormatUtil {
@@ -13,4 +14,25 @@ public class NumberFormatUtil {
     public static String format(long num) {
         return numberFormat.format(num);
     }
+
+    /**
+     * @param size a number of bytes, optionally followed by K, M or G (powers of 1024); e.g.: "64K", "1.5G".
+     * @throws NumberFormatException if the size is not in that format.
+     */
+    public static long parseByteSize(String size) {
+        if (size.isBlank()) {
+            throw new NumberFormatException("Empty size.");
+        }
+
+        String upperCaseSize = size.toUpperCase(Locale.ROOT);
+        long multiplier = switch (upperCaseSize.charAt(upperCaseSize.length() - 1)) {
+            case 'K' -> 1024L;
+            case 'M' -> 1024L * 1024;
+            case 'G' -> 1024L * 1024 * 1024;
+            default -> 1;
+        };
+        String number = multiplier == 1 ? upperCaseSize : upperCaseSize.substring(0, upperCaseSize.length() - 1);
+
+        return Math.round(Double.parseDouble(number) * multiplier);
+    }
 }
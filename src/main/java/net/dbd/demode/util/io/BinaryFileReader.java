@@ -0,0 +1,42 @@
+package net.dbd.demode.util.io;
+
+import java.io.IOException;
+
+/**
+ * Sequential binary reader over a file, with the convenience methods needed for parsing pak metadata.
+ *
+ * @author Nicky Ramone
+ */
+public interface BinaryFileReader extends AutoCloseable {
+
+    /**
+     * A negative position is relative to the current position.
+     */
+    void seek(long pos) throws IOException;
+
+    void eof() throws IOException;
+
+    void skip(int length) throws IOException;
+
+    byte read() throws IOException;
+
+    byte[] read(int length) throws IOException;
+
+    void read(byte[] bytes, int size) throws IOException;
+
+    String readString(int length) throws IOException;
+
+    String readHexString(int length) throws IOException;
+
+    int readInt() throws IOException;
+
+    long readLong() throws IOException;
+
+    long getPosition() throws IOException;
+
+    long getFileSize();
+
+    @Override
+    void close() throws IOException;
+
+}
@@ -0,0 +1,262 @@
+package net.dbd.demode.util.io;
+
+import org.apache.commons.codec.binary.Hex;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import static java.lang.Math.min;
+
+/**
+ * A reader that memory-maps the whole file, so reads are served straight from the page cache without any syscall.
+ * Since a single mapping cannot be bigger than 2 GiB, the file is mapped in windows of {@value #WINDOW_SIZE} bytes.
+ * <p>
+ * The sequential methods (the ones from {@link BinaryFileReader}) keep a position and are not thread-safe.
+ * The positional ones ({@link #read(long, byte[], int, int)}, {@link #slice(long, int)}, etc.) don't touch any shared
+ * state and can be used from several threads at the same time.
+ * <p>
+ * Buffers returned by {@link #slice(long, int)} must not be used after closing the reader, as the file gets unmapped.
+ *
+ * @author Nicky Ramone
+ */
+public class MappedFileReader implements BinaryFileReader {
+
+    private static final long WINDOW_SIZE = 1L << 30;
+    private static final int WINDOW_SHIFT = 30;
+    private static final int WINDOW_MASK = (int) (WINDOW_SIZE - 1);
+
+    private final MappedByteBuffer[] windows;
+    private final long fileSize;
+    private final boolean littleEndian;
+    private final byte[] buffer = new byte[Long.BYTES];
+    private long position;
+
+
+    public MappedFileReader(File file) throws IOException {
+        this(file, false);
+    }
+
+    public MappedFileReader(File file, boolean littleEndian) throws IOException {
+        this.littleEndian = littleEndian;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            fileSize = channel.size();
+            windows = new MappedByteBuffer[(int) ((fileSize + WINDOW_SIZE - 1) >>> WINDOW_SHIFT)];
+
+            for (int i = 0; i < windows.length; i++) {
+                long windowStart = (long) i << WINDOW_SHIFT;
+                windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, min(WINDOW_SIZE, fileSize - windowStart));
+                windows[i].order(littleEndian ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN);
+            }
+        }
+    }
+
+
+    public byte get(long pos) {
+        return windows[(int) (pos >>> WINDOW_SHIFT)].get((int) (pos & WINDOW_MASK));
+    }
+
+    public int getInt(long pos) {
+        int offset = (int) (pos & WINDOW_MASK);
+        MappedByteBuffer window = windows[(int) (pos >>> WINDOW_SHIFT)];
+
+        if (offset + Integer.BYTES <= window.limit()) {
+            return window.getInt(offset);
+        }
+
+        byte[] bytes = new byte[Integer.BYTES];
+        read(pos, bytes, 0, Integer.BYTES);
+
+        return ByteBuffer.wrap(bytes).order(window.order()).getInt();
+    }
+
+    public long getLong(long pos) {
+        int offset = (int) (pos & WINDOW_MASK);
+        MappedByteBuffer window = windows[(int) (pos >>> WINDOW_SHIFT)];
+
+        if (offset + Long.BYTES <= window.limit()) {
+            return window.getLong(offset);
+        }
+
+        byte[] bytes = new byte[Long.BYTES];
+        read(pos, bytes, 0, Long.BYTES);
+
+        return ByteBuffer.wrap(bytes).order(window.order()).getLong();
+    }
+
+    /**
+     * Copies {@code length} bytes starting at {@code pos} into {@code bytes}, crossing window boundaries if needed.
+     */
+    public void read(long pos, byte[] bytes, int offset, int length) {
+        if (pos + length > fileSize) {
+            throw new IndexOutOfBoundsException("Read past the end of the file.");
+        }
+
+        while (length > 0) {
+            MappedByteBuffer window = windows[(int) (pos >>> WINDOW_SHIFT)];
+            int windowOffset = (int) (pos & WINDOW_MASK);
+            int count = min(length, window.limit() - windowOffset);
+            window.get(windowOffset, bytes, offset, count);
+
+            pos += count;
+            offset += count;
+            length -= count;
+        }
+    }
+
+    /**
+     * @return a read-only view of the mapped bytes; or a copy of them in the rare case where they span two windows.
+     */
+    public ByteBuffer slice(long pos, int length) {
+        MappedByteBuffer window = windows[(int) (pos >>> WINDOW_SHIFT)];
+        int windowOffset = (int) (pos & WINDOW_MASK);
+
+        if (windowOffset + length <= window.limit()) {
+            return window.slice(windowOffset, length).asReadOnlyBuffer();
+        }
+
+        byte[] bytes = new byte[length];
+        read(pos, bytes, 0, length);
+
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+
+    @Override
+    public void seek(long pos) {
+        if (pos >= 0) {
+            position = min(pos, fileSize);
+        } else {
+            position = Math.max(position + pos, 0);
+        }
+    }
+
+    @Override
+    public void eof() {
+        position = fileSize;
+    }
+
+    @Override
+    public void skip(int length) {
+        position = min(position + length, fileSize);
+    }
+
+    @Override
+    public byte read() {
+        if (position >= fileSize) {
+            return -1;
+        }
+        return get(position++);
+    }
+
+    @Override
+    public byte[] read(int length) {
+        byte[] bytes = new byte[length];
+        read(bytes, length);
+
+        return bytes;
+    }
+
+    @Override
+    public void read(byte[] bytes, int size) {
+        read(position, bytes, 0, size);
+        position += size;
+    }
+
+    @Override
+    public String readString(int length) {
+        byte[] bytes = read(length);
+
+        return new String(bytes, 0, length, StandardCharsets.US_ASCII);
+    }
+
+    @Override
+    public String readHexString(int length) {
+        return Hex.encodeHexString(read(length));
+    }
+
+    @Override
+    public int readInt() {
+        int value = getInt(position);
+        position += Integer.BYTES;
+
+        return value;
+    }
+
+    @Override
+    public long readLong() {
+        long value = getLong(position);
+        position += Long.BYTES;
+
+        return value;
+    }
+
+    @Override
+    public long getPosition() {
+        return position;
+    }
+
+    @Override
+    public long getFileSize() {
+        return fileSize;
+    }
+
+    /**
+     * Releases the mappings right away instead of waiting for the GC.
+     * Otherwise, on Windows, the pak file could not be modified for a while after reading it.
+     */
+    @Override
+    public void close() {
+        for (int i = 0; i < windows.length; i++) {
+            Unmapper.unmap(windows[i]);
+            windows[i] = null;
+        }
+    }
+
+
+    /**
+     * There is no public API for unmapping a buffer, so we use {@code sun.misc.Unsafe.invokeCleaner} when available.
+     * If it isn't, the mapping is simply released whenever the buffer gets garbage collected.
+     */
+    private static final class Unmapper {
+
+        private static final Object UNSAFE;
+        private static final Method INVOKE_CLEANER;
+
+        static {
+            Object unsafe = null;
+            Method invokeCleaner = null;
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafe = field.get(null);
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // not available
+            }
+            UNSAFE = unsafe;
+            INVOKE_CLEANER = invokeCleaner;
+        }
+
+        static void unmap(MappedByteBuffer buffer) {
+            if (buffer == null || INVOKE_CLEANER == null) {
+                return;
+            }
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, buffer);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // the GC will take care of it
+            }
+        }
+    }
+
+}
@@ -17,7 +17,7 @@ import static net.dbd.demode.util.ByteUtil.*;
  *
  * @author Nicky Ramone
  */
-public class RandomAccessFileReader implements AutoCloseable {
+public class RandomAccessFileReader implements BinaryFileReader {
 
     private static final int BUFFER_SIZE = 8192;
 
@@ -43,6 +43,7 @@ public class RandomAccessFileReader implements AutoCloseable {
     }
 
 
+    @Override
     public void seek(long pos) throws IOException {
         long correctedPos;
 
@@ -55,6 +56,7 @@ public class RandomAccessFileReader implements AutoCloseable {
         file.seek(correctedPos);
     }
 
+    @Override
     public void eof() throws IOException {
         file.seek(file.length());
     }
@@ -68,6 +70,7 @@ public class RandomAccessFileReader implements AutoCloseable {
         return search(bytesToSearch);
     }
 
+    @Override
     public void skip(int length) throws IOException {
         file.skip(length);
     }
@@ -88,10 +91,12 @@ public class RandomAccessFileReader implements AutoCloseable {
     }
 
 
+    @Override
     public byte read() throws IOException {
         return (byte) file.read();
     }
 
+    @Override
     public byte[] read(int length) throws IOException {
         byte[] buffer = new byte[length];
         read(buffer, length);
@@ -99,6 +104,7 @@ public class RandomAccessFileReader implements AutoCloseable {
         return buffer;
     }
 
+    @Override
     public String readString(int length) throws IOException {
         byte[] buffer;
         if (BUFFER_SIZE >= length) {
@@ -111,12 +117,14 @@ public class RandomAccessFileReader implements AutoCloseable {
         return new String(buffer, 0, length, StandardCharsets.US_ASCII);
     }
 
+    @Override
     public String readHexString(int length) throws IOException {
         byte[] buffer = read(length);
 
         return Hex.encodeHexString(buffer);
     }
 
+    @Override
     public void read(byte[] bytes, int size) throws IOException {
         int read = 0;
 
@@ -126,26 +134,31 @@ public class RandomAccessFileReader implements AutoCloseable {
         while (read != 0 && read < size);
     }
 
+    @Override
     public int readInt() throws IOException {
         read(buffer, Integer.BYTES);
 
         return littleEndian ? fromLEByteArrayToInt(buffer) : fromByteArrayToInt(buffer);
     }
 
+    @Override
     public long readLong() throws IOException {
         read(buffer, Long.BYTES);
 
         return littleEndian ? fromLEByteArrayToLong(buffer) : fromByteArrayToLong(buffer);
     }
 
+    @Override
     public long getPosition() throws IOException {
         return file.getPosition();
     }
 
+    @Override
     public long getFileSize() {
         return fileSize;
     }
 
+    @Override
     public void close() throws IOException {
         file.close();
     }
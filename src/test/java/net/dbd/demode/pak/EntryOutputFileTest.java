@@ -0,0 +1,104 @@
+package net.dbd.demode.pak;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Nicky Ramone
+ */
+public class EntryOutputFileTest {
+
+    private static final byte[] OLD_DATA = {1, 2, 3, 4, 5, 6, 7, 8};
+    private static final byte[] NEW_DATA = {9, 8, 7};
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File file;
+    private Path tempFile;
+
+
+    @Before
+    public void setUp() throws Exception {
+        file = tempFolder.newFile("entry.uasset");
+        Files.write(file.toPath(), OLD_DATA);
+        tempFile = EntryOutputFile.tempFileOf(file.toPath());
+    }
+
+
+    @Test
+    public void abortedFileLeavesTheOldOneUntouched() throws Exception {
+        try (EntryOutputFile outputFile = EntryOutputFile.open(file, NEW_DATA.length, atomic(false))) {
+            outputFile.getStream().write(NEW_DATA, 0, 1);
+            assertTrue(Files.exists(tempFile));
+        }
+
+        assertArrayEquals(OLD_DATA, Files.readAllBytes(file.toPath()));
+        assertFalse(Files.exists(tempFile));
+    }
+
+    @Test
+    public void committedFileReplacesTheOldOne() throws Exception {
+        try (EntryOutputFile outputFile = EntryOutputFile.open(file, NEW_DATA.length, atomic(false))) {
+            outputFile.getStream().write(NEW_DATA);
+            outputFile.commit();
+        }
+
+        assertArrayEquals(NEW_DATA, Files.readAllBytes(file.toPath()));
+        assertFalse(Files.exists(tempFile));
+    }
+
+    @Test
+    public void preallocatedFileIsTruncatedToWhatWasWritten() throws Exception {
+        try (EntryOutputFile outputFile = EntryOutputFile.open(file, 1024, atomic(true))) {
+            assertEquals(1024, Files.size(tempFile));
+            outputFile.getStream().write(NEW_DATA);
+            outputFile.commit();
+        }
+
+        assertArrayEquals(NEW_DATA, Files.readAllBytes(file.toPath()));
+        assertFalse(Files.exists(tempFile));
+    }
+
+    @Test
+    public void abortedPreallocatedFileIsDeleted() throws Exception {
+        try (EntryOutputFile outputFile = EntryOutputFile.open(file, 1024, atomic(true))) {
+            outputFile.getStream().write(NEW_DATA);
+        }
+
+        assertArrayEquals(OLD_DATA, Files.readAllBytes(file.toPath()));
+        assertFalse(Files.exists(tempFile));
+    }
+
+    @Test
+    public void nonAtomicFileIsWrittenInPlace() throws Exception {
+        ExtractionOptions options = new ExtractionOptions();
+        options.setAtomicOutput(false);
+
+        try (EntryOutputFile outputFile = EntryOutputFile.open(file, NEW_DATA.length, options)) {
+            outputFile.getStream().write(NEW_DATA);
+            assertFalse(Files.exists(tempFile));
+            outputFile.commit();
+        }
+
+        assertArrayEquals(NEW_DATA, Files.readAllBytes(file.toPath()));
+    }
+
+
+    private static ExtractionOptions atomic(boolean preallocate) {
+        ExtractionOptions options = new ExtractionOptions();
+        options.setAtomicOutput(true);
+        options.setPreallocateOutput(preallocate);
+
+        return options;
+    }
+
+}
@@ -0,0 +1,167 @@
+package net.dbd.demode.pak;
+
+import net.dbd.demode.pak.domain.PakEntry;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.*;
+
+/**
+ * Reads through entry channels and streams must return the same bytes as the extracted files.
+ *
+ * @author Nicky Ramone
+ */
+public class PakEntryChannelTest {
+
+    private static final int NUM_ENTRIES = 200;
+    private static final int NUM_SAMPLED_ENTRIES = 30;
+    private static final int READS_PER_ENTRY = 40;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final Random random = new Random(0);
+    private PakFile pakFile;
+    private Path outputPath;
+    private List<Path> sampledFiles;
+
+
+    @Before
+    public void setUp() throws Exception {
+        PakGeneratorOptions generatorOptions = TestPaks.options(NUM_ENTRIES);
+        generatorOptions.setMountPoint("Content/");
+        pakFile = new PakFile(TestPaks.generate(tempFolder.newFile("pakchunk0-WindowsNoEditor.pak"), generatorOptions, 0));
+
+        outputPath = tempFolder.newFolder("output").toPath();
+        new PakExtractor(new ExtractionOptions()).extract(pakFile, new ArrayList<>(pakFile.getFilePaths()), outputPath);
+
+        // the entries with the most blocks, plus some random ones
+        List<Path> filePaths = new ArrayList<>(pakFile.getFilePaths());
+        filePaths.sort(Comparator.comparingInt((Path filePath) -> pakFile.getEntry(filePath).getBlockCount()).reversed());
+        sampledFiles = new ArrayList<>(filePaths.subList(0, NUM_SAMPLED_ENTRIES / 2));
+        Collections.shuffle(filePaths, random);
+        filePaths.stream()
+                .filter(filePath -> !sampledFiles.contains(filePath))
+                .limit(NUM_SAMPLED_ENTRIES / 2)
+                .forEach(sampledFiles::add);
+
+        assertTrue(pakFile.getEntry(sampledFiles.get(0)).getBlockCount() > 1);
+    }
+
+
+    @Test
+    public void randomReadsMatchTheExtractedFile() throws Exception {
+        for (Path filePath : sampledFiles) {
+            byte[] expected = Files.readAllBytes(outputPath.resolve(filePath));
+
+            try (PakEntryChannel channel = pakFile.openChannel(filePath)) {
+                assertEquals(expected.length, channel.size());
+                assertRandomReads(expected, channel);
+            }
+        }
+    }
+
+    @Test
+    public void randomReadsMatchTheExtractedFileWithAPrivateChannel() throws Exception {
+        for (Path filePath : sampledFiles) {
+            byte[] expected = Files.readAllBytes(outputPath.resolve(filePath));
+            PakEntry entry = pakFile.getEntry(filePath);
+
+            try (PakEntryChannel channel = PakEntryChannel.open(pakFile.getFile(), entry)) {
+                assertRandomReads(expected, channel);
+            }
+        }
+    }
+
+    @Test
+    public void sequentialReadMatchesTheExtractedFile() throws Exception {
+        for (Path filePath : sampledFiles) {
+            byte[] expected = Files.readAllBytes(outputPath.resolve(filePath));
+
+            try (InputStream in = pakFile.openInputStream(filePath)) {
+                assertArrayEquals(filePath.toString(), expected, in.readAllBytes());
+                assertEquals(-1, in.read());
+            }
+        }
+    }
+
+    @Test
+    public void streamSkipsAndResets() throws Exception {
+        List<Path> filesWithData = sampledFiles.stream()
+                .filter(filePath -> pakFile.getEntry(filePath).getSize() > 2)
+                .collect(toList());
+
+        for (Path filePath : filesWithData) {
+            byte[] expected = Files.readAllBytes(outputPath.resolve(filePath));
+
+            try (InputStream in = pakFile.openInputStream(filePath)) {
+                assertTrue(in.markSupported());
+
+                int skip = random.nextInt(expected.length - 1);
+                assertEquals(skip, in.skip(skip));
+                in.mark(0);
+                assertEquals(expected[skip] & 0xff, in.read());
+                assertEquals(expected.length - skip - 1, in.available());
+
+                in.reset();
+                byte[] rest = in.readAllBytes();
+                assertArrayEquals(Arrays.copyOfRange(expected, skip, expected.length), rest);
+
+                in.reset();
+                assertEquals(expected.length - skip, in.skip(Long.MAX_VALUE));
+                assertEquals(0, in.skip(1));
+                assertEquals(-1, in.read());
+            }
+        }
+    }
+
+
+    private void assertRandomReads(byte[] expected, PakEntryChannel channel) throws Exception {
+        for (int i = 0; i < READS_PER_ENTRY; i++) {
+            int position = random.nextInt(expected.length + 1);
+            int length = random.nextInt(64 * 1024) + 1;
+            ByteBuffer buffer = ByteBuffer.allocate(length);
+
+            channel.position(position);
+            int read = readFully(channel, buffer);
+
+            if (position == expected.length) {
+                assertEquals(-1, read);
+                continue;
+            }
+            int expectedLength = Math.min(length, expected.length - position);
+            assertEquals(expectedLength, read);
+            assertEquals(position + expectedLength, channel.position());
+            assertArrayEquals(Arrays.copyOfRange(expected, position, position + expectedLength),
+                    Arrays.copyOf(buffer.array(), read));
+        }
+    }
+
+    /**
+     * @return the number of bytes read until the buffer was full or the end was reached, or -1 if it was already at
+     * the end.
+     */
+    private static int readFully(PakEntryChannel channel, ByteBuffer buffer) throws Exception {
+        int total = 0;
+
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                return total == 0 ? -1 : total;
+            }
+            total += read;
+        }
+
+        return total;
+    }
+
+}
@@ -0,0 +1,125 @@
+package net.dbd.demode.pak;
+
+import net.dbd.demode.pak.PakReadScheduler.ReadBatch;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.*;
+
+/**
+ * Every way of extracting must write the same bytes as the plain sequential one: one entry at a time, in the order
+ * of the selection.
+ *
+ * @author Nicky Ramone
+ */
+public class PakExtractorTest {
+
+    private static final int NUM_ENTRIES = 400;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private PakFile pakFile;
+    private List<Path> selectedFiles;
+    private Path sequentialOutput;
+
+
+    @Before
+    public void setUp() throws Exception {
+        PakGeneratorOptions generatorOptions = TestPaks.options(NUM_ENTRIES);
+        generatorOptions.setMountPoint("Content/");
+        pakFile = new PakFile(TestPaks.generate(tempFolder.newFile("pakchunk0-WindowsNoEditor.pak"), generatorOptions, 0));
+
+        // most of the files, shuffled, so that sorting and merging have something to do
+        selectedFiles = new ArrayList<>(pakFile.getFilePaths());
+        Collections.shuffle(selectedFiles, new Random(0));
+        selectedFiles = selectedFiles.subList(0, NUM_ENTRIES * 3 / 4);
+
+        sequentialOutput = extract("sequential", options -> options.setOffsetOrdered(false));
+    }
+
+
+    @Test
+    public void schedulerMergesReads() {
+        List<ReadBatch> batches = PakReadScheduler.schedule(
+                selectedFiles.stream().map(pakFile::getEntry).collect(toList()), true);
+
+        assertTrue(batches.stream().anyMatch(ReadBatch::isMerged));
+        assertEquals(selectedFiles.size(), batches.stream().mapToInt(batch -> batch.getEntries().size()).sum());
+    }
+
+    @Test
+    public void mergedReadsWriteTheSameBytes() throws Exception {
+        assertSameFiles(sequentialOutput, extract("merged", options -> options.setOffsetOrdered(true)));
+    }
+
+    @Test
+    public void mergedReadsWithIntegrityCheckWriteTheSameBytes() throws Exception {
+        assertSameFiles(sequentialOutput, extract("merged-verified", options -> options.setVerifyIntegrity(true)));
+    }
+
+    @Test
+    public void memoryMappedWritesTheSameBytes() throws Exception {
+        assertSameFiles(sequentialOutput, extract("mapped", options -> options.setMemoryMapped(true)));
+    }
+
+    @Test
+    public void parallelBlocksWriteTheSameBytes() throws Exception {
+        assertSameFiles(sequentialOutput, extract("parallel-blocks", options -> {
+            options.setOffsetOrdered(false);
+            options.setParallelBlockDecompression(true);
+        }));
+    }
+
+    @Test
+    public void pipelineWritesTheSameBytes() throws Exception {
+        assertSameFiles(sequentialOutput, extract("pipelined", options -> {
+            options.setPipelined(true);
+            options.setInflateWorkers(3);
+            options.setPipelineQueueCapacity(4);
+            options.setVerifyIntegrity(true);
+        }));
+    }
+
+
+    private Path extract(String name, Consumer<ExtractionOptions> optionsCustomizer) throws Exception {
+        Path outputPath = tempFolder.newFolder(name).toPath();
+        ExtractionOptions options = new ExtractionOptions();
+        optionsCustomizer.accept(options);
+
+        new PakExtractor(options).extract(pakFile, selectedFiles, outputPath);
+
+        return outputPath;
+    }
+
+    private void assertSameFiles(Path expectedDir, Path actualDir) throws Exception {
+        List<Path> expectedFiles = listFiles(expectedDir);
+
+        assertEquals(selectedFiles.size(), expectedFiles.size());
+        assertEquals(expectedFiles, listFiles(actualDir));
+
+        for (Path file : expectedFiles) {
+            assertArrayEquals(file.toString(),
+                    Files.readAllBytes(expectedDir.resolve(file)), Files.readAllBytes(actualDir.resolve(file)));
+        }
+    }
+
+    /**
+     * @return the relative paths of the files, temporary ones included.
+     */
+    private static List<Path> listFiles(Path dir) throws Exception {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(Files::isRegularFile).map(dir::relativize).sorted().collect(toList());
+        }
+    }
+
+}
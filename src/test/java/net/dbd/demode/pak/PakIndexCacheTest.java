@@ -0,0 +1,148 @@
+package net.dbd.demode.pak;
+
+import net.dbd.demode.pak.domain.CompactPakIndex;
+import net.dbd.demode.pak.domain.Pak;
+import net.dbd.demode.pak.domain.PakConstants;
+import net.dbd.demode.pak.domain.PakInfo;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.Assert.*;
+
+/**
+ * @author Nicky Ramone
+ */
+public class PakIndexCacheTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File pakFile;
+    private Path cacheDir;
+
+
+    @Before
+    public void setUp() throws Exception {
+        pakFile = TestPaks.generate(tempFolder.newFile(String.format(TestPaks.PAK_FILENAME_FORMAT, 0)), 300, 0);
+        cacheDir = tempFolder.newFolder("cache").toPath();
+    }
+
+
+    @Test
+    public void cachedIndexEqualsParsedIndex() throws Exception {
+        Pak parsed = PakMetaReader.parse(pakFile);
+
+        Pak fresh = new PakIndexCache(cacheDir).getPak(pakFile);
+        assertEquals(1, listCacheFiles().size());
+        Pak cached = new PakIndexCache(cacheDir).getPak(pakFile);
+
+        for (Pak pak : List.of(fresh, cached)) {
+            assertTrue(pak.getIndex() instanceof CompactPakIndex);
+            assertEquals(parsed.getInfo(), pak.getInfo());
+            assertEquals(parsed.getIndex().getMountPoint(), pak.getIndex().getMountPoint());
+            TestPaks.assertEntriesEqual(parsed.getIndex().getEntries(), pak.getIndex().getEntries());
+        }
+
+        // the cached index can be looked up by path too
+        List<Path> filePaths = new ArrayList<>(new PakFile(pakFile).getFilePaths());
+        PakFile cachedPakFile = new PakFile(pakFile, cached);
+        assertEquals(filePaths, new ArrayList<>(cachedPakFile.getFilePaths()));
+        filePaths.forEach(filePath -> assertNotNull(cachedPakFile.getEntry(filePath)));
+    }
+
+    @Test
+    public void cacheIsIgnoredWhenThePakChanges() throws Exception {
+        new PakIndexCache(cacheDir).getPak(pakFile);
+
+        TestPaks.generate(pakFile, 150, 1);
+        assertTrue(pakFile.setLastModified(pakFile.lastModified() + 2000));
+        Pak pak = new PakIndexCache(cacheDir).getPak(pakFile);
+
+        TestPaks.assertEntriesEqual(PakMetaReader.parse(pakFile).getIndex().getEntries(), pak.getIndex().getEntries());
+    }
+
+    @Test
+    public void staleCacheIsIgnoredEvenIfThePakHasTheSameSizeAndTime() throws Exception {
+        new PakIndexCache(cacheDir).getPak(pakFile);
+        long lastModified = pakFile.lastModified();
+
+        // a different index hash, as if the pak had been rewritten in place within the same second
+        try (RandomAccessFile raf = new RandomAccessFile(pakFile, "rw")) {
+            long hashPosition = raf.length() + PakConstants.PAK_INFO_OFFSET_FROM_EOF + 24;
+            raf.seek(hashPosition);
+            int hashByte = raf.read();
+            raf.seek(hashPosition);
+            raf.write(hashByte ^ 0xff);
+        }
+        assertTrue(pakFile.setLastModified(lastModified));
+        PakInfo pakInfo = PakMetaReader.parseInfo(pakFile);
+
+        assertEquals(pakInfo, new PakIndexCache(cacheDir).getPak(pakFile).getInfo());
+        assertEquals(pakInfo, new PakIndexCache(cacheDir).getPak(pakFile).getInfo());
+        assertEquals(1, listCacheFiles().size());
+    }
+
+    @Test
+    public void paksWithTheSameNameInOtherDirectoriesAreCachedApart() throws Exception {
+        File otherPakFile = TestPaks.generate(new File(tempFolder.newFolder("other"), pakFile.getName()), 120, 2);
+
+        Pak pak = new PakIndexCache(cacheDir).getPak(pakFile);
+        Pak otherPak = new PakIndexCache(cacheDir).getPak(otherPakFile);
+        assertEquals(2, listCacheFiles().size());
+
+        TestPaks.assertEntriesEqual(pak.getIndex().getEntries(),
+                new PakIndexCache(cacheDir).getPak(pakFile).getIndex().getEntries());
+        TestPaks.assertEntriesEqual(otherPak.getIndex().getEntries(),
+                new PakIndexCache(cacheDir).getPak(otherPakFile).getIndex().getEntries());
+        assertEquals(120, otherPak.getIndex().getEntries().size());
+    }
+
+    @Test
+    public void cacheWithTrailingDataIsReplaced() throws Exception {
+        new PakIndexCache(cacheDir).getPak(pakFile);
+        Path cacheFile = listCacheFiles().get(0);
+        long cacheSize = Files.size(cacheFile);
+
+        try (RandomAccessFile raf = new RandomAccessFile(cacheFile.toFile(), "rw")) {
+            raf.seek(cacheSize);
+            raf.writeLong(0);
+        }
+        Pak pak = new PakIndexCache(cacheDir).getPak(pakFile);
+
+        TestPaks.assertEntriesEqual(PakMetaReader.parse(pakFile).getIndex().getEntries(), pak.getIndex().getEntries());
+        assertEquals(cacheSize, Files.size(cacheFile));
+    }
+
+    @Test
+    public void corruptedCacheIsReplaced() throws Exception {
+        new PakIndexCache(cacheDir).getPak(pakFile);
+        Path cacheFile = listCacheFiles().get(0);
+
+        try (RandomAccessFile raf = new RandomAccessFile(cacheFile.toFile(), "rw")) {
+            raf.setLength(raf.length() / 2);
+        }
+        Pak pak = new PakIndexCache(cacheDir).getPak(pakFile);
+
+        TestPaks.assertEntriesEqual(PakMetaReader.parse(pakFile).getIndex().getEntries(), pak.getIndex().getEntries());
+        TestPaks.assertEntriesEqual(pak.getIndex().getEntries(),
+                new PakIndexCache(cacheDir).getPak(pakFile).getIndex().getEntries());
+    }
+
+
+    private List<Path> listCacheFiles() throws Exception {
+        try (var files = Files.list(cacheDir)) {
+            return files.collect(toList());
+        }
+    }
+
+}
@@ -0,0 +1,65 @@
+package net.dbd.demode.pak;
+
+import lombok.experimental.UtilityClass;
+import net.dbd.demode.pak.domain.PakEntry;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Small generated paks for the tests (see {@link PakGenerator}): a mix of raw and compressed entries, some of them
+ * spanning several compression blocks.
+ *
+ * @author Nicky Ramone
+ */
+@UtilityClass
+public class TestPaks {
+
+    public static final String PAK_FILENAME_FORMAT = "pakchunk%d-WindowsNoEditor.pak";
+
+
+    public PakGeneratorOptions options(int numEntries) {
+        PakGeneratorOptions options = new PakGeneratorOptions();
+        options.setNumEntries(numEntries);
+        options.setMedianEntrySize(8 * 1024);
+        options.setEntrySizeSpread(1.5);
+        options.setMaxEntrySize(512 * 1024);
+
+        return options;
+    }
+
+    public File generate(File file, int numEntries, long seed) throws IOException {
+        return generate(file, options(numEntries), seed);
+    }
+
+    public File generate(File file, PakGeneratorOptions options, long seed) throws IOException {
+        new PakGenerator(options).generate(file, seed);
+        return file;
+    }
+
+    /**
+     * Compares every property, since entries of a compact index are views that don't equal regular entries.
+     */
+    public void assertEntriesEqual(List<PakEntry> expected, List<PakEntry> actual) {
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            PakEntry expectedEntry = expected.get(i);
+            PakEntry actualEntry = actual.get(i);
+
+            assertEquals(expectedEntry.getFilePath(), actualEntry.getFilePath());
+            assertEquals(expectedEntry.getOffset(), actualEntry.getOffset());
+            assertEquals(expectedEntry.getCompressedSize(), actualEntry.getCompressedSize());
+            assertEquals(expectedEntry.getSize(), actualEntry.getSize());
+            assertEquals(expectedEntry.isCompressed(), actualEntry.isCompressed());
+            assertEquals(expectedEntry.isEncrypted(), actualEntry.isEncrypted());
+            assertEquals(expectedEntry.getHash(), actualEntry.getHash());
+            assertEquals(expectedEntry.getBlockSize(), actualEntry.getBlockSize());
+            assertEquals(expectedEntry.getBlocks(), actualEntry.getBlocks());
+        }
+    }
+
+}
@@ -0,0 +1,122 @@
+package net.dbd.demode.pak.domain;
+
+import net.dbd.demode.pak.PakFile;
+import net.dbd.demode.pak.PakMetaReader;
+import net.dbd.demode.pak.TestPaks;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Nicky Ramone
+ */
+public class CompactPakIndexTest {
+
+    private static final int NUM_ENTRIES = 300;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private File file;
+    private PakIndex regularIndex;
+    private CompactPakIndex compactIndex;
+
+
+    @Before
+    public void setUp() throws Exception {
+        file = TestPaks.generate(tempFolder.newFile(String.format(TestPaks.PAK_FILENAME_FORMAT, 0)), NUM_ENTRIES, 0);
+        regularIndex = PakMetaReader.parse(file, Path.of("./"), false).getIndex();
+        compactIndex = (CompactPakIndex) PakMetaReader.parse(file).getIndex();
+    }
+
+
+    @Test
+    public void parsedIndexEqualsRegularIndex() {
+        assertFalse(regularIndex instanceof CompactPakIndex);
+        assertEquals(regularIndex.getMountPoint(), compactIndex.getMountPoint());
+        TestPaks.assertEntriesEqual(regularIndex.getEntries(), compactIndex.getEntries());
+        TestPaks.assertEntriesEqual(regularIndex.getEntries(), CompactPakIndex.copyOf(regularIndex).getEntries());
+    }
+
+    @Test
+    public void everyEntryIsFoundByPath() {
+        for (int i = 0; i < NUM_ENTRIES; i++) {
+            PakEntry entry = regularIndex.getEntries().get(i);
+            assertEquals(compactIndex.getSlot(i), compactIndex.findSlot(entry.getFilePath()));
+        }
+
+        Path filePath = regularIndex.getEntries().get(0).getFilePath();
+        assertEquals(CompactPakIndex.NO_SLOT, compactIndex.findSlot(filePath.resolveSibling("missing.uasset")));
+        assertEquals(CompactPakIndex.NO_SLOT, compactIndex.findSlot(Path.of("missing").resolve(filePath)));
+        assertEquals(CompactPakIndex.NO_SLOT, compactIndex.findSlot(filePath.getFileName()));
+    }
+
+    @Test
+    public void pakFileFindsEntriesUnderTheMountPoint() {
+        PakFile pakFile = new PakFile(file);
+        List<Path> filePaths = new ArrayList<>(pakFile.getFilePaths());
+
+        assertEquals(NUM_ENTRIES, filePaths.size());
+        for (int i = 0; i < NUM_ENTRIES; i++) {
+            Path filePath = filePaths.get(i);
+            assertTrue(pakFile.getFilePaths().contains(filePath));
+            assertEquals(regularIndex.getEntries().get(i).getOffset(), pakFile.getEntry(filePath).getOffset());
+        }
+
+        Path entryPath = regularIndex.getEntries().get(0).getFilePath();
+        assertNull(pakFile.getEntry(entryPath));
+        assertNull(pakFile.getEntry(filePaths.get(0).getParent()));
+    }
+
+    @Test
+    public void renamedEntriesAreFoundByTheirNewPath() {
+        Path oldPath = compactIndex.getEntries().get(5).getFilePath();
+        Path newPath = oldPath.resolveSibling("renamed").resolve(oldPath.getFileName());
+        int slot = compactIndex.findSlot(oldPath);
+
+        compactIndex.getEntries().get(5).setFilePath(newPath);
+        assertEquals(CompactPakIndex.NO_SLOT, compactIndex.findSlot(oldPath));
+        assertEquals(slot, compactIndex.findSlot(newPath));
+
+        // the old name is dropped from the pool, and the other names are moved around
+        compactIndex.trimToSize();
+        assertEquals(newPath, compactIndex.getEntries().get(5).getFilePath());
+        assertEquals(slot, compactIndex.findSlot(newPath));
+        TestPaks.assertEntriesEqual(regularIndex.getEntries().subList(6, NUM_ENTRIES),
+                compactIndex.getEntries().subList(6, NUM_ENTRIES));
+    }
+
+    @Test
+    public void removedEntriesAreNotFound() {
+        PakEntry removed = compactIndex.getEntries().get(10);
+        Path filePath = removed.getFilePath();
+        assertNotEquals(CompactPakIndex.NO_SLOT, compactIndex.findSlot(filePath));
+
+        compactIndex.getEntries().removeAll(List.of(removed));
+
+        assertEquals(NUM_ENTRIES - 1, compactIndex.getEntries().size());
+        assertEquals(CompactPakIndex.NO_SLOT, compactIndex.findSlot(filePath));
+        assertEquals(filePath, removed.getFilePath());
+    }
+
+    @Test
+    public void lastEntryWithTheSamePathWins() {
+        PakEntry duplicate = new PakEntry();
+        duplicate.setFilePath(compactIndex.getEntries().get(0).getFilePath());
+        duplicate.setOffset(123);
+        duplicate.setHash("00".repeat(20));
+
+        compactIndex.addEntry(duplicate);
+
+        assertEquals(123, compactIndex.getEntryAtSlot(compactIndex.findSlot(duplicate.getFilePath())).getOffset());
+    }
+
+}
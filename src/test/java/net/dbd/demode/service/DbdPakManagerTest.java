@@ -0,0 +1,119 @@
+package net.dbd.demode.service;
+
+import net.dbd.demode.pak.PakIndexCache;
+import net.dbd.demode.pak.TestPaks;
+import net.dbd.demode.service.DbdPakManager.PakSelectionMonitor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Nicky Ramone
+ */
+public class DbdPakManagerTest {
+
+    private static final int NUM_PAKS = 2;
+    private static final int ENTRIES_PER_PAK = 80;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final DbdPathService dbdPathService = new DbdPathService();
+    private final FileMetadataManager fileMetadataManager = new FileMetadataManager();
+    private Path dbdHome;
+    private Path paksOutputPath;
+    private DbdPakManager dbdPakManager;
+
+
+    @Before
+    public void setUp() throws Exception {
+        dbdHome = tempFolder.newFolder("dbd").toPath();
+        paksOutputPath = dbdHome.resolve(dbdPathService.getPaksRelativePath());
+        Files.createDirectories(paksOutputPath);
+        Files.createFile(dbdPathService.getExeFilePath(dbdHome));
+
+        for (int i = 0; i < NUM_PAKS; i++) {
+            File pakFile = dbdPathService.getPakFilePath(dbdHome, String.format(TestPaks.PAK_FILENAME_FORMAT, i)).toFile();
+            TestPaks.generate(pakFile, ENTRIES_PER_PAK, i);
+        }
+
+        dbdPakManager = new DbdPakManager(fileMetadataManager, dbdPathService,
+                new PakIndexCache(tempFolder.newFolder("cache").toPath()), dbdHome);
+        new DbdUnpacker(fileMetadataManager, dbdPathService, dbdPakManager, new FileVerifier(dbdPathService))
+                .unpackAll(dbdHome).start().get();
+    }
+
+
+    @Test
+    public void nothingIsSelectedRightAfterUnpacking() throws Exception {
+        assertTrue(selectMissingAndUnverified(true).isEmpty());
+        assertTrue(selectMissingAndUnverified(false).isEmpty());
+    }
+
+    @Test
+    public void directoryListingSelectsTheSameFilesAsCheckingEachFile() throws Exception {
+        List<Path> filePaths = dbdPakManager.selectEffectiveFiles().iterator().next().getFilePaths();
+        Path deletedFile = filePaths.get(0);
+        Path resizedFile = filePaths.get(1);
+        Path replacedFile = filePaths.get(2);
+
+        Files.delete(toOutputFile(deletedFile));
+        Files.write(toOutputFile(resizedFile), new byte[]{1}, StandardOpenOption.APPEND);
+        Files.delete(toOutputFile(replacedFile));
+        Files.createDirectory(toOutputFile(replacedFile));
+        Files.createFile(toOutputFile(deletedFile).resolveSibling("stray.uasset"));
+
+        Set<Path> expected = Set.of(deletedFile, resizedFile, replacedFile);
+        assertEquals(expected, selectMissingAndUnverified(true));
+        assertEquals(expected, selectMissingAndUnverified(false));
+    }
+
+    @Test
+    public void deepVerifySelectsFilesWithTheSameSizeButAnotherContent() throws Exception {
+        dbdPakManager.setDeepVerify(true);
+        assertTrue(selectMissingAndUnverified(true).isEmpty());
+
+        Set<Path> expected = new HashSet<>();
+        for (SinglePakSelection pakSelection : dbdPakManager.selectEffectiveFiles()) {
+            for (Path filePath : pakSelection.getFilePaths().subList(0, 5)) {
+                byte[] content = Files.readAllBytes(toOutputFile(filePath));
+                if (content.length > 0) {
+                    content[content.length / 2]++;
+                    Files.write(toOutputFile(filePath), content);
+                    expected.add(filePath);
+                }
+            }
+        }
+
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, selectMissingAndUnverified(true));
+    }
+
+
+    private Set<Path> selectMissingAndUnverified(boolean directoryListingScan) throws Exception {
+        dbdPakManager.setDirectoryListingScan(directoryListingScan);
+        Set<Path> filePaths = new HashSet<>();
+
+        for (SinglePakSelection pakSelection : dbdPakManager.selectMissingAndUnverified(new PakSelectionMonitor()).get()) {
+            filePaths.addAll(pakSelection.getFilePaths());
+        }
+
+        return filePaths;
+    }
+
+    private Path toOutputFile(Path filePath) {
+        return paksOutputPath.resolve(filePath).normalize();
+    }
+
+}
@@ -0,0 +1,176 @@
+package net.dbd.demode.service;
+
+import net.dbd.demode.pak.EntryOutputFile;
+import net.dbd.demode.pak.PakFile;
+import net.dbd.demode.pak.PakIndexCache;
+import net.dbd.demode.pak.TestPaks;
+import net.dbd.demode.service.DbdUnpacker.UnpackMonitor;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Recovery of interrupted unpacks, end to end.
+ *
+ * @author Nicky Ramone
+ */
+public class DbdUnpackerTest {
+
+    private static final int NUM_PAKS = 2;
+    private static final int ENTRIES_PER_PAK = 60;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final DbdPathService dbdPathService = new DbdPathService();
+    private final FileMetadataManager fileMetadataManager = new FileMetadataManager();
+    private Path dbdHome;
+    private Path paksOutputPath;
+    private DbdPakManager dbdPakManager;
+    private DbdUnpacker unpacker;
+
+
+    @Before
+    public void setUp() throws Exception {
+        dbdHome = tempFolder.newFolder("dbd").toPath();
+        paksOutputPath = dbdHome.resolve(dbdPathService.getPaksRelativePath());
+        Files.createDirectories(paksOutputPath);
+        Files.createFile(dbdPathService.getExeFilePath(dbdHome));
+
+        for (int i = 0; i < NUM_PAKS; i++) {
+            File pakFile = dbdPathService.getPakFilePath(dbdHome, String.format(TestPaks.PAK_FILENAME_FORMAT, i)).toFile();
+            TestPaks.generate(pakFile, ENTRIES_PER_PAK, i);
+        }
+
+        dbdPakManager = new DbdPakManager(fileMetadataManager, dbdPathService,
+                new PakIndexCache(tempFolder.newFolder("cache").toPath()), dbdHome);
+        unpacker = new DbdUnpacker(fileMetadataManager, dbdPathService, dbdPakManager, new FileVerifier(dbdPathService));
+    }
+
+
+    @Test
+    public void unpackAllResumesWhereTheInterruptedUnpackStopped() throws Exception {
+        Map<Path, byte[]> pendingFiles = interruptUnpack(true);
+        Path tempFile = EntryOutputFile.tempFileOf(pendingFiles.keySet().iterator().next());
+        Files.write(tempFile, new byte[]{1, 2, 3});
+
+        assertEquals(pendingFiles.size(), run(unpacker.unpackAll(dbdHome)));
+
+        assertFalse(Files.exists(tempFile));
+        assertFalse(ExtractionJournal.exists(dbdHome));
+        assertContent(pendingFiles);
+    }
+
+    @Test
+    public void intactFilesAreKeptWhenTheUnpackCannotBeResumed() throws Exception {
+        Map<Path, byte[]> pendingFiles = interruptUnpack(true);
+        Path tempFile = EntryOutputFile.tempFileOf(pendingFiles.keySet().iterator().next());
+        Files.write(tempFile, new byte[]{1, 2, 3});
+        touchPak(0);
+
+        // the files of the interrupted unpack were written atomically, so they are complete and don't need extracting
+        assertEquals(0, run(unpacker.unpackMissingAndUnverified(dbdHome)));
+
+        assertFalse(Files.exists(tempFile));
+        assertFalse(ExtractionJournal.exists(dbdHome));
+        assertContent(pendingFiles);
+    }
+
+    @Test
+    public void unfinishedFilesAreDeletedIfTheOutputWasNotAtomic() throws Exception {
+        unpacker.getExtractionOptions().setAtomicOutput(false);
+        Map<Path, byte[]> pendingFiles = interruptUnpack(false);
+        touchPak(0);
+
+        // so they are all missing now
+        assertEquals(pendingFiles.size(), run(unpacker.unpackMissingAndUnverified(dbdHome)));
+
+        assertContent(pendingFiles);
+    }
+
+    @Test
+    public void selectionIncludesTheFilesOfTheInterruptedUnpack() throws Exception {
+        Map<Path, byte[]> pendingFiles = interruptUnpack(true);
+        SinglePakSelection doneSelection = findDoneFile(pendingFiles.keySet());
+
+        int filesExtracted = run(unpacker.unpackSelection(new MultiPakSelection(List.of(doneSelection)), dbdHome));
+
+        assertEquals(pendingFiles.size() + 1, filesExtracted);
+        assertFalse(ExtractionJournal.exists(dbdHome));
+    }
+
+
+    /**
+     * Unpacks everything, and then leaves a journal behind as if a second unpack had been killed after doing every
+     * other file.
+     *
+     * @return the content of the files that the interrupted unpack didn't get to, by absolute path.
+     */
+    private Map<Path, byte[]> interruptUnpack(boolean atomicOutput) throws Exception {
+        run(unpacker.unpackAll(dbdHome));
+        assertFalse(ExtractionJournal.exists(dbdHome));
+
+        MultiPakSelection selection = dbdPakManager.selectEffectiveFiles();
+        Map<Path, byte[]> pendingFiles = new LinkedHashMap<>();
+
+        try (ExtractionJournal journal = ExtractionJournal.create(dbdHome, selection, atomicOutput)) {
+            for (SinglePakSelection pakSelection : selection) {
+                List<Path> filePaths = pakSelection.getFilePaths();
+
+                for (int i = 0; i < filePaths.size(); i++) {
+                    if (i % 2 == 0) {
+                        journal.markDone(pakSelection.getPakFile(), filePaths.get(i));
+                    } else {
+                        Path file = toOutputFile(filePaths.get(i));
+                        pendingFiles.put(file, Files.readAllBytes(file));
+                    }
+                }
+            }
+        }
+
+        return pendingFiles;
+    }
+
+    private SinglePakSelection findDoneFile(Set<Path> pendingFiles) {
+        for (SinglePakSelection pakSelection : dbdPakManager.selectEffectiveFiles()) {
+            for (Path filePath : pakSelection.getFilePaths()) {
+                if (!pendingFiles.contains(toOutputFile(filePath))) {
+                    return new SinglePakSelection(pakSelection.getPakFile(), List.of(filePath));
+                }
+            }
+        }
+        throw new AssertionError("All files are pending.");
+    }
+
+    private void touchPak(int pakNumber) {
+        PakFile pakFile = dbdPakManager.getPakFiles().get(pakNumber);
+        assertTrue(pakFile.getFile().setLastModified(pakFile.getFile().lastModified() + 2000));
+    }
+
+    private Path toOutputFile(Path filePath) {
+        return paksOutputPath.resolve(filePath).normalize();
+    }
+
+    /**
+     * @return the number of files extracted.
+     */
+    private static int run(UnpackMonitor monitor) throws Exception {
+        monitor.start().get();
+        return monitor.getTotalStats().getFilesExtracted();
+    }
+
+    private static void assertContent(Map<Path, byte[]> files) throws Exception {
+        for (Map.Entry<Path, byte[]> file : files.entrySet()) {
+            assertArrayEquals(file.getKey().toString(), file.getValue(), Files.readAllBytes(file.getKey()));
+        }
+    }
+
+}
@@ -0,0 +1,182 @@
+package net.dbd.demode.service;
+
+import net.dbd.demode.pak.PakFile;
+import net.dbd.demode.pak.TestPaks;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Path;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Nicky Ramone
+ */
+public class ExtractionJournalTest {
+
+    private static final int ENTRIES_PER_PAK = 200;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private Path rootDir;
+    private List<PakFile> pakFiles;
+    private MultiPakSelection selection;
+
+
+    @Before
+    public void setUp() throws Exception {
+        rootDir = tempFolder.newFolder("output").toPath();
+        File paksDir = tempFolder.newFolder("paks");
+        pakFiles = new ArrayList<>();
+
+        for (int i = 0; i < 2; i++) {
+            File pakFile = new File(paksDir, String.format(TestPaks.PAK_FILENAME_FORMAT, i));
+            pakFiles.add(new PakFile(TestPaks.generate(pakFile, ENTRIES_PER_PAK, i)));
+        }
+
+        // every other file, so that plan numbers and index positions differ
+        selection = new MultiPakSelection();
+        for (PakFile pakFile : pakFiles) {
+            List<Path> filePaths = new ArrayList<>(pakFile.getFilePaths());
+            SinglePakSelection pakSelection = new SinglePakSelection(pakFile);
+
+            for (int i = 0; i < filePaths.size(); i += 2) {
+                pakSelection.addFile(filePaths.get(i));
+            }
+            selection.addSinglePakSelection(pakSelection);
+        }
+    }
+
+
+    @Test
+    public void recoversTheFilesThatWereNotDone() throws Exception {
+        Map<PakFile, List<Path>> pending = runPartially();
+
+        ExtractionJournal.Recovery recovery = ExtractionJournal.recover(rootDir, pakFiles);
+
+        assertNotNull(recovery.getPendingSelection());
+        assertEquals(pending, toMap(recovery.getPendingSelection()));
+        assertEquals(flatten(pending), recovery.getPendingFiles());
+        assertTrue(recovery.isAtomicOutput());
+    }
+
+    @Test
+    public void recoveryTellsWhetherTheOutputWasAtomic() throws Exception {
+        runPartially(false);
+
+        assertFalse(ExtractionJournal.recover(rootDir, pakFiles).isAtomicOutput());
+    }
+
+    @Test
+    public void leftoverJournalIsNeverReplaced() throws Exception {
+        Map<PakFile, List<Path>> pending = runPartially();
+
+        assertThrows(FileAlreadyExistsException.class, () -> ExtractionJournal.create(rootDir, selection, true));
+        assertEquals(pending, toMap(ExtractionJournal.recover(rootDir, pakFiles).getPendingSelection()));
+
+        ExtractionJournal.delete(rootDir);
+        ExtractionJournal.create(rootDir, selection, true).close();
+        assertEquals(toMap(selection), toMap(ExtractionJournal.recover(rootDir, pakFiles).getPendingSelection()));
+    }
+
+    @Test
+    public void everythingIsPendingIfNothingWasDone() throws Exception {
+        ExtractionJournal.create(rootDir, selection, true).close();
+
+        ExtractionJournal.Recovery recovery = ExtractionJournal.recover(rootDir, pakFiles);
+
+        assertEquals(toMap(selection), toMap(recovery.getPendingSelection()));
+        assertEquals(selection.getTotalFiles(), recovery.getPendingFiles().size());
+    }
+
+    @Test
+    public void changedPaksAreNotResumedButTheirFilesAreStillPending() throws Exception {
+        Map<PakFile, List<Path>> pending = runPartially();
+        File changedPak = pakFiles.get(0).getFile();
+        assertTrue(changedPak.setLastModified(changedPak.lastModified() + 2000));
+
+        ExtractionJournal.Recovery recovery = ExtractionJournal.recover(rootDir, pakFiles);
+
+        assertNull(recovery.getPendingSelection());
+        assertEquals(flatten(pending), recovery.getPendingFiles());
+    }
+
+    @Test
+    public void tornRecordAtTheEndIsIgnored() throws Exception {
+        Map<PakFile, List<Path>> pending = runPartially();
+
+        try (RandomAccessFile raf = new RandomAccessFile(rootDir.resolve(ExtractionJournal.FILENAME).toFile(), "rw")) {
+            raf.seek(raf.length());
+            raf.writeInt(1);    // half of a done record
+        }
+
+        assertEquals(pending, toMap(ExtractionJournal.recover(rootDir, pakFiles).getPendingSelection()));
+    }
+
+    @Test
+    public void incompletePlanIsUnreadable() throws Exception {
+        runPartially();
+
+        try (RandomAccessFile raf = new RandomAccessFile(rootDir.resolve(ExtractionJournal.FILENAME).toFile(), "rw")) {
+            raf.setLength(100);
+        }
+
+        assertNull(ExtractionJournal.recover(rootDir, pakFiles));
+    }
+
+
+    /**
+     * Marks a third of the files of each pak as done, as if the extraction had been killed.
+     *
+     * @return the files that were not done, by pak.
+     */
+    private Map<PakFile, List<Path>> runPartially() throws Exception {
+        return runPartially(true);
+    }
+
+    private Map<PakFile, List<Path>> runPartially(boolean atomicOutput) throws Exception {
+        Map<PakFile, List<Path>> pending = new LinkedHashMap<>();
+
+        try (ExtractionJournal journal = ExtractionJournal.create(rootDir, selection, atomicOutput)) {
+            for (SinglePakSelection pakSelection : selection) {
+                List<Path> pakPending = new ArrayList<>();
+
+                for (int i = 0; i < pakSelection.getFilePaths().size(); i++) {
+                    Path filePath = pakSelection.getFilePaths().get(i);
+
+                    if (i % 3 == 0) {
+                        journal.markDone(pakSelection.getPakFile(), filePath);
+                    } else {
+                        pakPending.add(filePath);
+                    }
+                }
+                pending.put(pakSelection.getPakFile(), pakPending);
+            }
+        }
+        assertTrue(ExtractionJournal.exists(rootDir));
+
+        return pending;
+    }
+
+    private static Map<PakFile, List<Path>> toMap(MultiPakSelection selection) {
+        Map<PakFile, List<Path>> files = new LinkedHashMap<>();
+        selection.forEach(pakSelection -> files.put(pakSelection.getPakFile(), pakSelection.getFilePaths()));
+
+        return files;
+    }
+
+    private static List<Path> flatten(Map<PakFile, List<Path>> files) {
+        List<Path> flattened = new ArrayList<>();
+        files.values().forEach(flattened::addAll);
+
+        return flattened;
+    }
+
+}
@@ -0,0 +1,134 @@
+package net.dbd.demode.service;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * @author Nicky Ramone
+ */
+public class FileManifestTest {
+
+    private static final int NUM_FILES = 500;
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private Path rootDir;
+
+
+    @Before
+    public void setUp() throws Exception {
+        rootDir = tempFolder.getRoot().toPath().toRealPath();
+    }
+
+
+    @Test
+    public void changesAreVisibleRightAway() throws Exception {
+        try (FileManifest manifest = FileManifest.open(rootDir)) {
+            manifest.put(file(1), 10, 100, hash(1));
+            manifest.put(file(2), 20, 200, hash(2));
+            manifest.put(file(1), 11, 101, hash(3));
+            manifest.remove(file(2));
+
+            assertRecord(manifest.get(file(1)), 11, 101, hash(3));
+            assertNull(manifest.get(file(2)));
+            assertNull(manifest.get(file(3)));
+            assertNull(manifest.get(rootDir.resolveSibling("outside")));
+        }
+    }
+
+    @Test
+    public void changesSurviveReopening() throws Exception {
+        try (FileManifest manifest = FileManifest.open(rootDir)) {
+            for (int i = 0; i < NUM_FILES; i++) {
+                manifest.put(file(i), i, 1000 + i, hash(i));
+            }
+        }
+
+        // the log is compacted into the table on open
+        try (FileManifest manifest = FileManifest.open(rootDir)) {
+            assertEquals(0, Files.size(rootDir.resolve(FileManifest.LOG_FILENAME)));
+
+            for (int i = 0; i < NUM_FILES; i += 2) {
+                manifest.remove(file(i));
+            }
+            manifest.put(file(1), 1, 1, hash(-1));
+        }
+
+        try (FileManifest manifest = FileManifest.open(rootDir)) {
+            for (int i = 0; i < NUM_FILES; i++) {
+                if (i == 1) {
+                    assertRecord(manifest.get(file(i)), 1, 1, hash(-1));
+                } else if (i % 2 == 0) {
+                    assertNull(manifest.get(file(i)));
+                } else {
+                    assertRecord(manifest.get(file(i)), i, 1000 + i, hash(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void tornRecordAtTheEndOfTheLogIsIgnored() throws Exception {
+        try (FileManifest manifest = FileManifest.open(rootDir)) {
+            manifest.put(file(1), 10, 100, hash(1));
+            manifest.put(file(2), 20, 200, hash(2));
+        }
+        try (FileManifest manifest = FileManifest.open(rootDir)) {
+            manifest.put(file(3), 30, 300, hash(3));
+            manifest.remove(file(1));
+        }
+
+        // as if the app had been killed in the middle of a put
+        Path logFile = rootDir.resolve(FileManifest.LOG_FILENAME);
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(logFile.toFile(), true))) {
+            out.writeByte(1);
+            out.writeUTF("dir/torn");
+            out.writeLong(40);
+        }
+
+        try (FileManifest manifest = FileManifest.open(rootDir)) {
+            assertNull(manifest.get(file(1)));
+            assertRecord(manifest.get(file(2)), 20, 200, hash(2));
+            assertRecord(manifest.get(file(3)), 30, 300, hash(3));
+            assertNull(manifest.get(rootDir.resolve("dir/torn")));
+
+            manifest.put(file(4), 40, 400, hash(4));
+        }
+
+        try (FileManifest manifest = FileManifest.open(rootDir)) {
+            assertRecord(manifest.get(file(4)), 40, 400, hash(4));
+        }
+    }
+
+
+    private Path file(int number) {
+        return rootDir.resolve("dir" + number % 7).resolve("file" + number + ".uasset");
+    }
+
+    private static byte[] hash(int seed) {
+        byte[] hash = new byte[20];
+        Arrays.fill(hash, (byte) seed);
+        hash[0] = (byte) (seed >> 8);
+
+        return hash;
+    }
+
+    private static void assertRecord(FileManifest.Record record, long size, long lastModified, byte[] hash) {
+        assertNotNull(record);
+        assertEquals(size, record.getSize());
+        assertEquals(lastModified, record.getLastModified());
+        assertArrayEquals(hash, record.getHash());
+    }
+
+}
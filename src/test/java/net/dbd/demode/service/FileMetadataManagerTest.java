@@ -0,0 +1,120 @@
+package net.dbd.demode.service;
+
+import net.dbd.demode.service.FileMetadataManager.FileMetadata;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.UserDefinedFileAttributeView;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * @author Nicky Ramone
+ */
+public class FileMetadataManagerTest {
+
+    private static final String HASH = "0123456789abcdef0123456789abcdef01234567";
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final FileMetadataManager fileMetadataManager = new FileMetadataManager();
+    private Path file;
+
+
+    @Before
+    public void setUp() throws Exception {
+        file = tempFolder.newFile("file.uasset").toPath();
+        Files.write(file, new byte[]{1, 2, 3});
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1_600_000_000_000L));
+    }
+
+    @After
+    public void tearDown() {
+        fileMetadataManager.setManifestRoot(null);
+    }
+
+
+    @Test
+    public void fileMatchesRightAfterWritingExtendedAttributes() throws Exception {
+        assumeExtendedAttributesSupported();
+
+        fileMetadataManager.writeHash(file, HASH);
+
+        assertMatches(fileMetadataManager.readMetadata(file));
+    }
+
+    @Test
+    public void fileMatchesRightAfterWritingTheManifest() throws Exception {
+        fileMetadataManager.setManifestRoot(tempFolder.getRoot().toPath());
+
+        fileMetadataManager.writeHash(file, HASH);
+
+        assertMatches(fileMetadataManager.readMetadata(file));
+    }
+
+    @Test
+    public void fileTouchedAfterExtractionDoesNotMatch() throws Exception {
+        assumeExtendedAttributesSupported();
+        fileMetadataManager.writeHash(file, HASH);
+
+        Files.setLastModifiedTime(file, FileTime.fromMillis(1_600_000_005_000L));
+
+        FileMetadata metadata = fileMetadataManager.readMetadata(file);
+        assertEquals(HASH, metadata.getHash());
+        assertFalse(metadata.matches(readAttributes()));
+    }
+
+    @Test
+    public void fileResizedAfterExtractionDoesNotMatch() throws Exception {
+        fileMetadataManager.setManifestRoot(tempFolder.getRoot().toPath());
+        fileMetadataManager.writeHash(file, HASH);
+        FileTime lastModifiedTime = Files.getLastModifiedTime(file);
+
+        Files.write(file, new byte[]{1, 2, 3, 4});
+        Files.setLastModifiedTime(file, lastModifiedTime);
+
+        assertFalse(fileMetadataManager.readMetadata(file).matches(readAttributes()));
+    }
+
+    @Test
+    public void fileFromAnOlderVersionHasNoStat() throws Exception {
+        assumeExtendedAttributesSupported();
+        UserDefinedFileAttributeView attributeView = Files.getFileAttributeView(file, UserDefinedFileAttributeView.class);
+        attributeView.write("user.demode.original", ByteBuffer.allocate(0));
+        attributeView.write("user.demode.hash", ByteBuffer.wrap(new byte[20]));
+
+        FileMetadata metadata = fileMetadataManager.readMetadata(file);
+
+        assertFalse(metadata.hasFileStat());
+        assertFalse(metadata.matches(readAttributes()));
+    }
+
+
+    private void assertMatches(FileMetadata metadata) throws IOException {
+        assertNotNull(metadata);
+        assertEquals(HASH, metadata.getHash());
+        assertTrue(metadata.hasFileStat());
+        assertTrue(metadata.matches(readAttributes()));
+        assertTrue(fileMetadataManager.isTracked(file));
+    }
+
+    private BasicFileAttributes readAttributes() throws IOException {
+        return Files.readAttributes(file, BasicFileAttributes.class);
+    }
+
+    private void assumeExtendedAttributesSupported() throws IOException {
+        assumeTrue(Files.getFileStore(file).supportsFileAttributeView(UserDefinedFileAttributeView.class));
+    }
+
+}